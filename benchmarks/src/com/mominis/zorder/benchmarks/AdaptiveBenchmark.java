@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mominis.zorder.AdaptiveZCollection;
+import com.mominis.zorder.ZSortable;
+import com.mominis.zorder.benchmarks.ZCollectionBenchmark.ChurnState;
+
+/**
+ * Benchmarks whole frames - marking a window of elements, committing and visiting
+ * the collection - so {@link AdaptiveZCollection} can be compared with the collection
+ * it should pick for every distribution. The adaptive collection is given enough
+ * frames to settle before measuring. For example:
+ * 
+ *     gradle :benchmarks:jmh -PjmhArgs="AdaptiveBenchmark -p impl=FIXED_POINT,SPARSE,ADAPTIVE"
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AdaptiveBenchmark {
+	
+	/* --- Constants --- */
+	
+	/** Number of frames run before measuring, enough to pick a strategy and migrate to it */
+	private static final int SETTLE_FRAMES = 1000;
+	
+	/* --- States --- */
+	
+	/**
+	 * A populated collection, run for a while
+	 */
+	public static class FrameState extends ChurnState {
+		
+		/** Sum of the Z-orders visited */
+		public long visitedZ;
+		
+		/** Visits an element */
+		public final Consumer<ZSortable> visitor = object -> visitedZ += object.getZOrder();
+		
+		@Override
+		protected void prepare() {
+			super.prepare();
+			for (int i = 0 ; i < SETTLE_FRAMES ; ++i) {
+				frame();
+			}
+		}
+		
+		/**
+		 * Runs a frame
+		 * @return Sum of the Z-orders visited
+		 */
+		public long frame() {
+			for (int i = 0 ; i < churnCount ; ++i) {
+				BenchObject object = element(i);
+				object.setZOrder(frameZ(i, 0));
+				collection.markDirty(object);
+			}
+			collection.commit();
+			advance();
+			
+			visitedZ = 0;
+			collection.forEachBackToFront(visitor);
+			return visitedZ;
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public long frame(FrameState state) {
+		return state.frame();
+	}
+}
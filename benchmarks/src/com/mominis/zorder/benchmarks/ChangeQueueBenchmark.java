@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mominis.zorder.ZChangeQueue;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+import com.mominis.zorder.benchmarks.ZCollectionBenchmark.ChurnState;
+
+/**
+ * Benchmarks a frame of changes going through a {@link ZChangeQueue}, against
+ * calling change() directly, as in ZCollectionBenchmark.changeRepeatedly.
+ * 
+ * Every element of the frame is changed several times. The queue coalesces the
+ * changes, so its allocation per operation is only the links of a single move
+ * per element - the queue itself allocates nothing. For example:
+ * 
+ *     gradle :benchmarks:jmh -PjmhArgs="ChangeQueueBenchmark -p impl=SIMPLE -p distribution=PIVOT_ALIGNED"
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChangeQueueBenchmark {
+	
+	/* --- Constants --- */
+	
+	/** Number of times every element is changed per frame */
+	private static final int CHANGES_PER_FRAME = 3;
+	
+	/* --- States --- */
+	
+	/**
+	 * A populated collection with a queue large enough for a frame
+	 */
+	public static class QueueState extends ChurnState {
+		
+		/** Queue under test */
+		public ZChangeQueue queue;
+		
+		@Override
+		protected void prepare() {
+			super.prepare();
+			queue = new ZChangeQueue(collection, churnCount * CHANGES_PER_FRAME);
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public void changeDirectly(ChurnState state) {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			BenchObject object = state.element(i);
+			for (int j = 0 ; j < CHANGES_PER_FRAME ; ++j) {
+				object.setZOrder(state.frameZ(i, j));
+				state.collection.change(object);
+			}
+		}
+		state.advance();
+	}
+	
+	@Benchmark
+	public int changeQueued(QueueState state) throws AlreadyInCollectionException {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			BenchObject object = state.element(i);
+			for (int j = 0 ; j < CHANGES_PER_FRAME ; ++j) {
+				object.setZOrder(state.frameZ(i, j));
+				state.queue.offerChange(object);
+			}
+		}
+		state.advance();
+		return state.queue.drainAndApply();
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.mominis.zorder.ConcurrentZCollection;
+import com.mominis.zorder.SimpleZCollection;
+import com.mominis.zorder.ZCollection;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Benchmarks change() throughput with 1 to 32 threads changing a shared
+ * collection at once, as a simulation updating entities from a thread pool would.
+ * 
+ * Every thread owns an equal share of the elements, and changes them round-robin
+ * to random Z-orders. LOCKED is a {@link SimpleZCollection} behind a single lock,
+ * CONCURRENT a {@link ConcurrentZCollection}. Scores are total changes per
+ * microsecond across all threads. For example:
+ * 
+ *     gradle :benchmarks:jmh -PjmhArgs="ConcurrentChangeBenchmark -p maxZ=1000"
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConcurrentChangeBenchmark {
+	
+	/* --- States --- */
+	
+	/**
+	 * How the shared collection is guarded
+	 */
+	public enum Guard {
+		
+		/** {@link SimpleZCollection} behind a single lock */
+		LOCKED,
+		
+		/** {@link ConcurrentZCollection} */
+		CONCURRENT
+	}
+	
+	/**
+	 * The collection shared by all threads
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedState {
+		
+		/** Seed for the initial Z-orders, fixed so runs are comparable */
+		private static final long SEED = 42;
+		
+		@Param({"LOCKED", "CONCURRENT"})
+		public Guard guard;
+		
+		@Param({"100000"})
+		public int elementCount;
+		
+		@Param({"10", "1000"})
+		public int maxZ;
+		
+		/** Collection under test */
+		public ZCollection collection;
+		
+		/** Elements, all in the collection after setup */
+		public BenchObject[] elements;
+		
+		@Setup(Level.Trial)
+		public void populate() throws AlreadyInCollectionException {
+			Random rand = new Random(SEED);
+			collection = guard == Guard.LOCKED ? new SimpleZCollection(maxZ) : new ConcurrentZCollection(maxZ);
+			elements = new BenchObject[elementCount];
+			for (int i = 0 ; i < elementCount ; ++i) {
+				elements[i] = new BenchObject(rand.nextInt(maxZ + 1));
+				collection.add(elements[i]);
+			}
+		}
+		
+		/**
+		 * Changes an element, under the global lock if the collection isn't thread-safe
+		 * @param object Element whose Z-order was set
+		 */
+		public void change(BenchObject object) {
+			if (guard == Guard.LOCKED) {
+				synchronized (collection) {
+					collection.change(object);
+				}
+			} else {
+				collection.change(object);
+			}
+		}
+	}
+	
+	/**
+	 * A thread's share of the elements
+	 */
+	@State(Scope.Thread)
+	public static class ThreadState {
+		
+		/** First element owned by the thread */
+		public int first;
+		
+		/** Number of elements owned by the thread */
+		public int count;
+		
+		/** Index of the next element to change, within the thread's share */
+		public int next;
+		
+		/** Random source for Z-orders */
+		public Random rand;
+		
+		@Setup(Level.Trial)
+		public void partition(SharedState shared, ThreadParams params) {
+			count = shared.elementCount / params.getThreadCount();
+			first = params.getThreadIndex() * count;
+			rand = new Random(params.getThreadIndex());
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	@Threads(1)
+	public void change01(SharedState shared, ThreadState state) {
+		change(shared, state);
+	}
+	
+	@Benchmark
+	@Threads(2)
+	public void change02(SharedState shared, ThreadState state) {
+		change(shared, state);
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public void change04(SharedState shared, ThreadState state) {
+		change(shared, state);
+	}
+	
+	@Benchmark
+	@Threads(8)
+	public void change08(SharedState shared, ThreadState state) {
+		change(shared, state);
+	}
+	
+	@Benchmark
+	@Threads(16)
+	public void change16(SharedState shared, ThreadState state) {
+		change(shared, state);
+	}
+	
+	@Benchmark
+	@Threads(32)
+	public void change32(SharedState shared, ThreadState state) {
+		change(shared, state);
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Changes the thread's next element to a random Z-order
+	 * @param shared Shared collection
+	 * @param state Thread's share
+	 */
+	private static void change(SharedState shared, ThreadState state) {
+		BenchObject object = shared.elements[state.first + state.next];
+		state.next = state.next + 1 == state.count ? 0 : state.next + 1;
+		object.setZOrder(state.rand.nextInt(shared.maxZ + 1));
+		shared.change(object);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mominis.zorder.ZCollection;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Benchmarks creating short-lived collections, such as per-panel or
+ * per-particle-system ones: an empty collection, and one that holds a
+ * handful of elements for a single traversal.
+ * 
+ * Run with the GC profiler, gc.alloc.rate.norm is the footprint of a new
+ * collection.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConstructionBenchmark {
+	
+	/* --- States --- */
+	
+	/**
+	 * A few elements, detached before every invocation
+	 */
+	@State(Scope.Thread)
+	public static class PanelState {
+		
+		/** Seed for the generated Z-orders, fixed so runs are comparable */
+		private static final long SEED = 42;
+		
+		/** Number of elements in a panel */
+		private static final int ELEMENTS = 16;
+		
+		@Param({"SIMPLE", "FIXED_POINT"})
+		public Implementation impl;
+		
+		@Param({"10", "1000", "100000"})
+		public int maxZ;
+		
+		/** Panel's elements */
+		public BenchObject[] elements;
+		
+		@Setup(Level.Trial)
+		public void generate() {
+			Random rand = new Random(SEED);
+			elements = new BenchObject[ELEMENTS];
+			for (int i = 0 ; i < ELEMENTS ; ++i) {
+				elements[i] = new BenchObject(impl.toZ(ZDistribution.PIVOT_ALIGNED.next(rand, maxZ), maxZ));
+			}
+		}
+		
+		@Setup(Level.Invocation)
+		public void detach() {
+			for (BenchObject element : elements) {
+				element.setCurrentLink(null);
+			}
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public ZCollection construct(PanelState state) {
+		return state.impl.create(state.maxZ);
+	}
+	
+	@Benchmark
+	public ZCollection constructAndTraverse(PanelState state, Blackhole bh) throws AlreadyInCollectionException {
+		ZCollection collection = state.impl.create(state.maxZ);
+		for (BenchObject element : state.elements) {
+			collection.add(element);
+		}
+		collection.forEachBackToFront(bh::consume);
+		return collection;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+import com.mominis.zorder.IntHandleZCollection;
+import com.mominis.zorder.SimpleZCollection;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Measures the memory used per element by {@link SimpleZCollection} and by
+ * {@link IntHandleZCollection} with heap and off-heap links.
+ * 
+ * Run with: gradle :benchmarks:footprint [-PelementCount=N]
+ * 
+ * Element objects are created before the baseline is taken, so only the cost
+ * of keeping them in the collection is reported.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class FootprintReport {
+	
+	/* --- Constants --- */
+	
+	/** Max. Z-order of the measured collections */
+	private static final int MAX_Z = 1000;
+	
+	/* --- Main --- */
+	
+	public static void main(String[] args) throws AlreadyInCollectionException {
+		int elementCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		
+		System.out.printf("%d elements, maxZ=%d%n", elementCount, MAX_Z);
+		System.out.printf("%-30s %15s %15s %12s%n", "collection", "heap bytes", "direct bytes", "bytes/elem");
+		
+		BenchObject[] elements = new BenchObject[elementCount];
+		for (int i = 0 ; i < elementCount ; ++i) {
+			elements[i] = new BenchObject(i % (MAX_Z + 1));
+		}
+		
+		long heap = usedHeap();
+		long direct = usedDirect();
+		SimpleZCollection simple = new SimpleZCollection(MAX_Z);
+		for (BenchObject element : elements) {
+			simple.add(element);
+		}
+		report("SimpleZCollection", elementCount, heap, direct);
+		simple.forEachBackToFront(simple::remove);
+		simple = null;
+		
+		for (boolean offHeap : new boolean[] { false, true }) {
+			heap = usedHeap();
+			direct = usedDirect();
+			IntHandleZCollection handles = new IntHandleZCollection(MAX_Z, elementCount, offHeap);
+			for (int i = 0 ; i < elementCount ; ++i) {
+				handles.add(handles.allocate(), i % (MAX_Z + 1));
+			}
+			report(offHeap ? "IntHandleZCollection off-heap" : "IntHandleZCollection heap",
+				elementCount, heap, direct);
+			
+			// keep the collection reachable until measured
+			if (handles.getLinkBytes() < 0) {
+				System.out.println();
+			}
+		}
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Prints the heap and direct memory added since the given baselines
+	 */
+	private static void report(String name, int elementCount, long heap, long direct) {
+		long heapDelta = usedHeap() - heap;
+		long directDelta = usedDirect() - direct;
+		System.out.printf("%-30s %15d %15d %12.1f%n",
+			name, heapDelta, directDelta, (heapDelta + directDelta) / (double)elementCount);
+	}
+	
+	/**
+	 * @return Heap used after a full collection
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0 ; i < 3 ; ++i) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	/**
+	 * @return Direct buffer memory in use
+	 */
+	private static long usedDirect() {
+		long used = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				used += pool.getMemoryUsed();
+			}
+		}
+		return used;
+	}
+}
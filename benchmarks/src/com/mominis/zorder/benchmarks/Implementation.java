@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import com.mominis.zorder.AdaptiveZCollection;
+import com.mominis.zorder.ConcurrentZCollection;
+import com.mominis.zorder.FixedPointZCollection;
+import com.mominis.zorder.SimpleZCollection;
+import com.mominis.zorder.SparseZCollection;
+import com.mominis.zorder.ZCollection;
+
+/**
+ * The {@link ZCollection} implementations under benchmark.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public enum Implementation {
+	
+	/** {@link SimpleZCollection} */
+	SIMPLE {
+		@Override
+		public ZCollection create(int maxZ) {
+			return new SimpleZCollection(maxZ);
+		}
+
+		/**
+		 * {@link SimpleZCollection} only accepts natural Z-orders between 0 and maxZ,
+		 * so fixed-point values are truncated to their level and clamped into range.
+		 */
+		@Override
+		public int toZ(int fixedPointZ, int maxZ) {
+			int level = Math.floorDiv(fixedPointZ, FixedPointZCollection.PIVOT);
+			return Math.max(0, Math.min(maxZ, level));
+		}
+	},
+	
+	/** {@link FixedPointZCollection} */
+	FIXED_POINT {
+		@Override
+		public ZCollection create(int maxZ) {
+			return new FixedPointZCollection(maxZ);
+		}
+
+		@Override
+		public int toZ(int fixedPointZ, int maxZ) {
+			return fixedPointZ;
+		}
+	},
+	
+	/** {@link ConcurrentZCollection} */
+	CONCURRENT {
+		@Override
+		public ZCollection create(int maxZ) {
+			return new ConcurrentZCollection(maxZ);
+		}
+
+		@Override
+		public int toZ(int fixedPointZ, int maxZ) {
+			return SIMPLE.toZ(fixedPointZ, maxZ);
+		}
+	},
+	
+	/** {@link SparseZCollection} */
+	SPARSE {
+		@Override
+		public ZCollection create(int maxZ) {
+			return new SparseZCollection();
+		}
+
+		@Override
+		public int toZ(int fixedPointZ, int maxZ) {
+			return fixedPointZ;
+		}
+	},
+	
+	/** {@link AdaptiveZCollection} */
+	ADAPTIVE {
+		@Override
+		public ZCollection create(int maxZ) {
+			return new AdaptiveZCollection(maxZ);
+		}
+
+		@Override
+		public int toZ(int fixedPointZ, int maxZ) {
+			return fixedPointZ;
+		}
+	};
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Creates an empty collection
+	 * @param maxZ Max. (optimized) natural Z-order
+	 * @return New collection
+	 */
+	public abstract ZCollection create(int maxZ);
+	
+	/**
+	 * Converts a fixed-point Z-order, as generated by {@link ZDistribution}, to a
+	 * Z-order the implementation accepts.
+	 * 
+	 * @param fixedPointZ Fixed-point Z-order
+	 * @param maxZ Max. (optimized) natural Z-order
+	 * @return Z-order to use with this implementation
+	 */
+	public abstract int toZ(int fixedPointZ, int maxZ);
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mominis.zorder.IntHandleZCollection;
+import com.mominis.zorder.SimpleZCollection;
+import com.mominis.zorder.ZSortable;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Compares {@link IntHandleZCollection}, with heap or off-heap links, with
+ * {@link SimpleZCollection} on large collections, under churn (every invocation changes the Z-order of
+ * churn * elementCount elements) and for full traversals.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IntHandleZCollectionBenchmark {
+	
+	/* --- Constants --- */
+	
+	/** Seed for the generated Z-orders, fixed so runs are comparable */
+	private static final long SEED = 42;
+	
+	/* --- Parameters --- */
+	
+	@Param({"1000000"})
+	public int elementCount;
+	
+	@Param({"1000"})
+	public int maxZ;
+	
+	@Param({"0.01"})
+	public double churn;
+	
+	/** Whether {@link IntHandleZCollection} keeps its links off-heap */
+	@Param({"false", "true"})
+	public boolean offHeap;
+	
+	/* --- Fields --- */
+	
+	private SimpleZCollection simple;
+	private BenchObject[] simpleElements;
+	private Consumer<ZSortable> simpleConsumer;
+	
+	private IntHandleZCollection handles;
+	private IntConsumer handleConsumer;
+	
+	/** Pre-generated Z-orders to change elements to */
+	private int[] changeZ;
+	
+	/** Number of elements changed by every invocation */
+	private int churnCount;
+	
+	/** Start of the current window of changed elements */
+	private int start;
+	
+	/* --- Setup --- */
+	
+	@Setup(Level.Trial)
+	public void populate(final Blackhole bh) throws AlreadyInCollectionException {
+		Random rand = new Random(SEED);
+		simple = new SimpleZCollection(maxZ);
+		handles = new IntHandleZCollection(maxZ, elementCount, offHeap);
+		simpleElements = new BenchObject[elementCount];
+		changeZ = new int[elementCount];
+		
+		for (int i = 0 ; i < elementCount ; ++i) {
+			int z = rand.nextInt(maxZ + 1);
+			simpleElements[i] = new BenchObject(z);
+			simple.add(simpleElements[i]);
+			handles.add(handles.allocate(), z);
+			changeZ[i] = rand.nextInt(maxZ + 1);
+		}
+		
+		churnCount = Math.max(1, (int)(elementCount * churn));
+		simpleConsumer = bh::consume;
+		handleConsumer = bh::consume;
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public void simpleChange() {
+		for (int i = 0 ; i < churnCount ; ++i) {
+			int index = (start + i) % elementCount;
+			simpleElements[index].setZOrder(changeZ[index]);
+			simple.change(simpleElements[index]);
+		}
+		start = (start + churnCount) % elementCount;
+	}
+	
+	@Benchmark
+	public void handleChange() {
+		for (int i = 0 ; i < churnCount ; ++i) {
+			int index = (start + i) % elementCount;
+			handles.change(index, changeZ[index]);
+		}
+		start = (start + churnCount) % elementCount;
+	}
+	
+	@Benchmark
+	public void simpleForEach() {
+		simple.forEachBackToFront(simpleConsumer);
+	}
+	
+	@Benchmark
+	public void handleForEach() {
+		handles.forEachBackToFront(handleConsumer);
+	}
+}
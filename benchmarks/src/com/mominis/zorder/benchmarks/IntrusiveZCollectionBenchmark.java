@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mominis.zorder.IntrusiveZCollection;
+import com.mominis.zorder.SimpleZCollection;
+import com.mominis.zorder.ZSortable;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Compares {@link IntrusiveZCollection} with {@link SimpleZCollection} under churn
+ * (every invocation changes the Z-order of churn * elementCount elements) and
+ * for full traversals.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IntrusiveZCollectionBenchmark {
+	
+	/* --- Constants --- */
+	
+	/** Seed for the generated Z-orders, fixed so runs are comparable */
+	private static final long SEED = 42;
+	
+	/* --- Parameters --- */
+	
+	@Param({"1000", "100000"})
+	public int elementCount;
+	
+	@Param({"10", "1000"})
+	public int maxZ;
+	
+	@Param({"0.01", "0.1"})
+	public double churn;
+	
+	/* --- Fields --- */
+	
+	private SimpleZCollection simple;
+	private BenchObject[] simpleElements;
+	private Consumer<ZSortable> simpleConsumer;
+	
+	private IntrusiveZCollection<IntrusiveBenchObject> intrusive;
+	private IntrusiveBenchObject[] intrusiveElements;
+	private Consumer<IntrusiveBenchObject> intrusiveConsumer;
+	
+	/** Pre-generated Z-orders to change elements to */
+	private int[] changeZ;
+	
+	/** Number of elements changed by every invocation */
+	private int churnCount;
+	
+	/** Start of the current window of changed elements */
+	private int start;
+	
+	/* --- Setup --- */
+	
+	@Setup(Level.Trial)
+	public void populate(final Blackhole bh) throws AlreadyInCollectionException {
+		Random rand = new Random(SEED);
+		simple = new SimpleZCollection(maxZ);
+		intrusive = new IntrusiveZCollection<IntrusiveBenchObject>(maxZ);
+		simpleElements = new BenchObject[elementCount];
+		intrusiveElements = new IntrusiveBenchObject[elementCount];
+		changeZ = new int[elementCount];
+		
+		for (int i = 0 ; i < elementCount ; ++i) {
+			int z = rand.nextInt(maxZ + 1);
+			simpleElements[i] = new BenchObject(z);
+			intrusiveElements[i] = new IntrusiveBenchObject(z);
+			simple.add(simpleElements[i]);
+			intrusive.add(intrusiveElements[i]);
+			changeZ[i] = rand.nextInt(maxZ + 1);
+		}
+		
+		churnCount = Math.max(1, (int)(elementCount * churn));
+		simpleConsumer = bh::consume;
+		intrusiveConsumer = bh::consume;
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public void simpleChange() {
+		for (int i = 0 ; i < churnCount ; ++i) {
+			int index = (start + i) % elementCount;
+			simpleElements[index].setZOrder(changeZ[index]);
+			simple.change(simpleElements[index]);
+		}
+		start = (start + churnCount) % elementCount;
+	}
+	
+	@Benchmark
+	public void intrusiveChange() {
+		for (int i = 0 ; i < churnCount ; ++i) {
+			int index = (start + i) % elementCount;
+			intrusiveElements[index].setZOrder(changeZ[index]);
+			intrusive.change(intrusiveElements[index]);
+		}
+		start = (start + churnCount) % elementCount;
+	}
+	
+	@Benchmark
+	public void simpleForEach() {
+		simple.forEachBackToFront(simpleConsumer);
+	}
+	
+	@Benchmark
+	public void intrusiveForEach() {
+		intrusive.forEachBackToFront(intrusiveConsumer);
+	}
+}
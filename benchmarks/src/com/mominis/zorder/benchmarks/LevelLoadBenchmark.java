@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mominis.zorder.ZCollection;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Benchmarks loading a whole level of elements into an empty collection,
+ * one by one versus with {@link ZCollection#addAll(java.util.Collection)}.
+ * 
+ * Both benchmarks include creating the collection, so they are comparable
+ * to each other. A grouped level lists its elements layer by layer, as
+ * level files usually do.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LevelLoadBenchmark {
+	
+	/* --- States --- */
+	
+	/**
+	 * A level of elementCount elements, detached before every invocation
+	 */
+	@State(Scope.Thread)
+	public static class LevelState {
+		
+		/** Seed for the generated Z-orders, fixed so runs are comparable */
+		private static final long SEED = 42;
+		
+		@Param({"SIMPLE", "FIXED_POINT", "SPARSE"})
+		public Implementation impl;
+		
+		@Param({"1000", "100000"})
+		public int elementCount;
+		
+		@Param({"1000"})
+		public int maxZ;
+		
+		@Param({"PIVOT_ALIGNED", "SPARSE"})
+		public ZDistribution distribution;
+		
+		@Param({"false", "true"})
+		public boolean grouped;
+		
+		/** Level's elements */
+		public BenchObject[] elements;
+		
+		/** Level's elements, as a list */
+		public List<BenchObject> level;
+		
+		@Setup(Level.Trial)
+		public void generate() {
+			Random rand = new Random(SEED);
+			elements = new BenchObject[elementCount];
+			for (int i = 0 ; i < elementCount ; ++i) {
+				elements[i] = new BenchObject(impl.toZ(distribution.next(rand, maxZ), maxZ));
+			}
+			if (grouped) {
+				Arrays.sort(elements, Comparator.comparingInt(BenchObject::getZOrder));
+			}
+			level = Arrays.asList(elements);
+		}
+		
+		@Setup(Level.Invocation)
+		public void detach() {
+			for (BenchObject element : elements) {
+				element.setCurrentLink(null);
+			}
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public ZCollection addOneByOne(LevelState state) throws AlreadyInCollectionException {
+		ZCollection collection = state.impl.create(state.maxZ);
+		for (BenchObject element : state.elements) {
+			collection.add(element);
+		}
+		return collection;
+	}
+	
+	@Benchmark
+	public ZCollection addAll(LevelState state) throws AlreadyInCollectionException {
+		ZCollection collection = state.impl.create(state.maxZ);
+		collection.addAll(state.level);
+		return collection;
+	}
+}
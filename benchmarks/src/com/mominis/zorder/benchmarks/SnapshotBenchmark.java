@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mominis.zorder.SimpleZCollection;
+import com.mominis.zorder.ZSnapshot;
+import com.mominis.zorder.ZSortable;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Benchmarks handing a frame over to a render thread: copying the whole
+ * collection into a list, against {@link SimpleZCollection#publishSnapshot()}.
+ * 
+ * Every invocation is a frame - churn * elementCount elements are changed, and
+ * the frame is handed over. For example:
+ * 
+ *     gradle :benchmarks:jmh -PjmhArgs="SnapshotBenchmark -p maxZ=1000"
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SnapshotBenchmark {
+	
+	/* --- States --- */
+	
+	/**
+	 * A populated collection, and the Z-orders to change its elements to
+	 */
+	@State(Scope.Thread)
+	public static class FrameState {
+		
+		/** Seed for the generated Z-orders, fixed so runs are comparable */
+		private static final long SEED = 42;
+		
+		@Param({"1000", "10000"})
+		public int elementCount;
+		
+		@Param({"10", "1000"})
+		public int maxZ;
+		
+		@Param({"0.01", "0.1"})
+		public double churn;
+		
+		/** Collection under test */
+		public SimpleZCollection collection;
+		
+		/** Elements, all in the collection after setup */
+		public BenchObject[] elements;
+		
+		/** Pre-generated Z-orders to change elements to */
+		public int[] changeZ;
+		
+		/** Number of elements changed every frame */
+		public int churnCount;
+		
+		/** Start of the current frame's elements */
+		public int start;
+		
+		@Setup(Level.Trial)
+		public void populate() throws AlreadyInCollectionException {
+			Random rand = new Random(SEED);
+			collection = new SimpleZCollection(maxZ);
+			elements = new BenchObject[elementCount];
+			changeZ = new int[elementCount];
+			for (int i = 0 ; i < elementCount ; ++i) {
+				elements[i] = new BenchObject(rand.nextInt(maxZ + 1));
+				collection.add(elements[i]);
+				changeZ[i] = rand.nextInt(maxZ + 1);
+			}
+			churnCount = Math.max(1, (int)(elementCount * churn));
+			collection.publishSnapshot();
+		}
+		
+		/**
+		 * Changes the current frame's elements, and moves to the next frame
+		 */
+		public void changeFrame() {
+			for (int i = 0 ; i < churnCount ; ++i) {
+				int index = (start + i) % elementCount;
+				elements[index].setZOrder(changeZ[(index + start) % elementCount]);
+				collection.change(elements[index]);
+			}
+			start = (start + churnCount) % elementCount;
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public List<ZSortable> copyToList(FrameState state) {
+		state.changeFrame();
+		List<ZSortable> frame = new ArrayList<ZSortable>(state.collection.size());
+		state.collection.forEachBackToFront(frame::add);
+		return frame;
+	}
+	
+	@Benchmark
+	public ZSnapshot publishSnapshot(FrameState state) {
+		state.changeFrame();
+		return state.collection.publishSnapshot();
+	}
+}
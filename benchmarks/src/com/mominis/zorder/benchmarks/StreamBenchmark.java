@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mominis.zorder.ZCollection;
+import com.mominis.zorder.ZSortable;
+import com.mominis.zorder.benchmarks.ZCollectionBenchmark.PopulatedState;
+
+/**
+ * Benchmarks per-element work (e.g. culling) over {@link ZCollection#stream()} and
+ * {@link ZCollection#parallelStream()}, against a plain forEach.
+ * 
+ * Every element costs {@link #WORK} Blackhole tokens, so the parallel speed-up
+ * shows once there are enough elements. For example:
+ * 
+ *     gradle :benchmarks:jmh -PjmhArgs="StreamBenchmark -p elementCount=10000 -p maxZ=1000"
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StreamBenchmark {
+	
+	/* --- Constants --- */
+	
+	/** Blackhole tokens consumed per element */
+	private static final int WORK = 200;
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public void forEach(PopulatedState state) {
+		state.collection.forEachBackToFront(object -> Blackhole.consumeCPU(WORK));
+	}
+	
+	@Benchmark
+	public long stream(PopulatedState state) {
+		return state.collection.stream().filter(StreamBenchmark::work).count();
+	}
+	
+	@Benchmark
+	public long parallelStream(PopulatedState state) {
+		return state.collection.parallelStream().filter(StreamBenchmark::work).count();
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Per-element work
+	 * @param object Element
+	 * @return Whether the element passes
+	 */
+	private static boolean work(ZSortable object) {
+		Blackhole.consumeCPU(WORK);
+		return object.getZOrder() >= 0;
+	}
+}
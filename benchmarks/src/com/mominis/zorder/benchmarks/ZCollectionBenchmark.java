@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mominis.zorder.FixedPointZCollection;
+import com.mominis.zorder.ZCollection;
+import com.mominis.zorder.ZSortable;
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * Benchmarks the basic operations of the {@link ZCollection} implementations.
+ * 
+ * add, remove and change work on a batch of churn * elementCount elements per
+ * invocation (a "frame" worth of churn), so their scores and allocation figures
+ * are per batch. changeRepeatedly and changeDeferred change every element of the
+ * batch several times, the latter with markDirty() and a single commit(). The
+ * iteration benchmarks traverse the whole collection, except for forEachBand
+ * which only visits the bottom tenth of the Z range.
+ * 
+ * Run with the GC profiler (the default of the jmh task) to get the allocation
+ * per operation as gc.alloc.rate.norm. Note that for add and remove the figure
+ * also includes the per-invocation fixture that restores the window. The forEach
+ * benchmarks are expected to report zero bytes per operation.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ZCollectionBenchmark {
+	
+	/* --- Constants --- */
+	
+	/** Number of times changeRepeatedly and changeDeferred change every element per frame */
+	private static final int CHANGES_PER_FRAME = 3;
+	
+	/* --- States --- */
+	
+	/**
+	 * A collection populated with elementCount elements
+	 */
+	@State(Scope.Thread)
+	public static class PopulatedState {
+		
+		/** Seed for the generated Z-orders, fixed so runs are comparable */
+		private static final long SEED = 42;
+		
+		@Param({"SIMPLE", "FIXED_POINT", "SPARSE"})
+		public Implementation impl;
+		
+		@Param({"1000", "10000"})
+		public int elementCount;
+		
+		@Param({"10", "1000"})
+		public int maxZ;
+		
+		@Param({"PIVOT_ALIGNED", "DENSE", "SPARSE", "NEGATIVE", "DEFAULT"})
+		public ZDistribution distribution;
+		
+		/** Collection under test */
+		public ZCollection collection;
+		
+		/** Elements, all in the collection after setup */
+		public BenchObject[] elements;
+		
+		/** Visitor for the forEach benchmarks, created once so traversal allocates nothing */
+		public Consumer<ZSortable> consumer;
+		
+		/** Lowest Z-order of the band visited by forEachBand - the bottom tenth of the range */
+		public int bandLow;
+		
+		/** Highest Z-order of the band visited by forEachBand */
+		public int bandHigh;
+		
+		/** Random source for Z-orders */
+		protected Random rand;
+		
+		@Setup(Level.Trial)
+		public void populate(final Blackhole bh) throws AlreadyInCollectionException {
+			consumer = bh::consume;
+			bandLow = impl.toZ(0, maxZ);
+			bandHigh = impl.toZ((maxZ + 1) * FixedPointZCollection.PIVOT / 10 - 1, maxZ);
+			rand = new Random(SEED);
+			collection = impl.create(maxZ);
+			elements = new BenchObject[elementCount];
+			for (int i = 0 ; i < elementCount ; ++i) {
+				elements[i] = new BenchObject(nextZ());
+				collection.add(elements[i]);
+			}
+			prepare();
+		}
+		
+		/**
+		 * Hook for sub-states, called at the end of the trial setup
+		 */
+		protected void prepare() {
+			// nothing to prepare
+		}
+		
+		/**
+		 * @return Next Z-order from the distribution, converted for the implementation
+		 */
+		protected int nextZ() {
+			return impl.toZ(distribution.next(rand, maxZ), maxZ);
+		}
+	}
+	
+	/**
+	 * A populated collection, where every invocation touches a window of
+	 * churn * elementCount elements
+	 */
+	public static class ChurnState extends PopulatedState {
+		
+		@Param({"0.01", "0.1"})
+		public double churn;
+		
+		/** Number of elements touched by each invocation */
+		public int churnCount;
+		
+		/** Start of the current window */
+		public int start;
+		
+		/** Pre-generated Z-orders to change elements to */
+		public int[] changeZ;
+		
+		/** Number of windows so far */
+		public int frame;
+		
+		@Override
+		protected void prepare() {
+			churnCount = Math.max(1, (int)(elementCount * churn));
+			changeZ = new int[elementCount];
+			for (int i = 0 ; i < elementCount ; ++i) {
+				changeZ[i] = nextZ();
+			}
+		}
+		
+		/**
+		 * @param i Index in the current window
+		 * @return Element at that index
+		 */
+		public BenchObject element(int i) {
+			return elements[(start + i) % elementCount];
+		}
+		
+		/**
+		 * Moves the window forward
+		 */
+		public void advance() {
+			start = (start + churnCount) % elementCount;
+			++frame;
+		}
+		
+		/**
+		 * @param i Index in the current window
+		 * @param j Change number within the frame
+		 * @return Z-order for that change, differing between frames
+		 */
+		public int frameZ(int i, int j) {
+			return changeZ[(start + i + j + frame) % elementCount];
+		}
+	}
+	
+	/**
+	 * Removes the current window before every invocation, so it can be added back
+	 */
+	public static class AddState extends ChurnState {
+		
+		@Setup(Level.Invocation)
+		public void detach() {
+			advance();
+			for (int i = 0 ; i < churnCount ; ++i) {
+				collection.remove(element(i));
+			}
+		}
+	}
+	
+	/**
+	 * Adds the current window back after every invocation
+	 */
+	public static class RemoveState extends ChurnState {
+		
+		@TearDown(Level.Invocation)
+		public void reattach() throws AlreadyInCollectionException {
+			for (int i = 0 ; i < churnCount ; ++i) {
+				collection.add(element(i));
+			}
+			advance();
+		}
+	}
+	
+	/* --- Benchmarks --- */
+	
+	@Benchmark
+	public void add(AddState state) throws AlreadyInCollectionException {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			state.collection.add(state.element(i));
+		}
+	}
+	
+	@Benchmark
+	public void remove(RemoveState state) {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			state.collection.remove(state.element(i));
+		}
+	}
+	
+	@Benchmark
+	public void change(ChurnState state) {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			BenchObject object = state.element(i);
+			object.setZOrder(state.changeZ[(state.start + i) % state.elementCount]);
+			state.collection.change(object);
+		}
+		state.advance();
+	}
+	
+	@Benchmark
+	public void changeRepeatedly(ChurnState state) {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			BenchObject object = state.element(i);
+			for (int j = 0 ; j < CHANGES_PER_FRAME ; ++j) {
+				object.setZOrder(state.frameZ(i, j));
+				state.collection.change(object);
+			}
+		}
+		state.advance();
+	}
+	
+	@Benchmark
+	public void changeDeferred(ChurnState state) {
+		for (int i = 0 ; i < state.churnCount ; ++i) {
+			BenchObject object = state.element(i);
+			for (int j = 0 ; j < CHANGES_PER_FRAME ; ++j) {
+				object.setZOrder(state.frameZ(i, j));
+				state.collection.markDirty(object);
+			}
+		}
+		state.collection.commit();
+		state.advance();
+	}
+	
+	@Benchmark
+	public void backToFrontIterator(PopulatedState state, Blackhole bh) {
+		Iterator<ZSortable> iter = state.collection.backToFrontIterator();
+		while (iter.hasNext()) {
+			bh.consume(iter.next());
+		}
+	}
+	
+	@Benchmark
+	public void frontToBackIterator(PopulatedState state, Blackhole bh) {
+		Iterator<ZSortable> iter = state.collection.frontToBackIterator();
+		while (iter.hasNext()) {
+			bh.consume(iter.next());
+		}
+	}
+	
+	@Benchmark
+	public void forEachBackToFront(PopulatedState state) {
+		state.collection.forEachBackToFront(state.consumer);
+	}
+	
+	@Benchmark
+	public void forEachFrontToBack(PopulatedState state) {
+		state.collection.forEachFrontToBack(state.consumer);
+	}
+	
+	@Benchmark
+	public void forEachBand(PopulatedState state) {
+		state.collection.forEachBackToFront(state.bandLow, state.bandHigh, state.consumer);
+	}
+}
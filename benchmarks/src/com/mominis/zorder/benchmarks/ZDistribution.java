@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder.benchmarks;
+
+import java.util.Random;
+
+import com.mominis.zorder.FixedPointZCollection;
+
+/**
+ * Z-order distributions the benchmarks are parameterized by.
+ * 
+ * Values are generated as fixed-point Z-orders (see {@link FixedPointZCollection#PIVOT}),
+ * and are converted to the natural Z-orders an implementation accepts by
+ * {@link Implementation#toZ(int, int)}.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public enum ZDistribution {
+	
+	/** Natural levels between 0 and maxZ (inclusive) - the optimized case */
+	PIVOT_ALIGNED {
+		@Override
+		public int next(Random rand, int maxZ) {
+			return rand.nextInt(maxZ + 1) * FixedPointZCollection.PIVOT;
+		}
+	},
+	
+	/** Any fixed-point value between 0 and maxZ, most of them between pivots */
+	DENSE {
+		@Override
+		public int next(Random rand, int maxZ) {
+			return rand.nextInt((maxZ + 1) * FixedPointZCollection.PIVOT);
+		}
+	},
+	
+	/** A handful of distinct values spread over the whole range */
+	SPARSE {
+		@Override
+		public int next(Random rand, int maxZ) {
+			// derive the sparse levels from a fixed seed, so all elements share them
+			int level = rand.nextInt(SPARSE_LEVELS);
+			Random levels = new Random(level);
+			return levels.nextInt((maxZ + 1) * FixedPointZCollection.PIVOT);
+		}
+	},
+	
+	/** Negative values, always below the optimized range */
+	NEGATIVE {
+		@Override
+		public int next(Random rand, int maxZ) {
+			return -1 - rand.nextInt((maxZ + 1) * FixedPointZCollection.PIVOT);
+		}
+	},
+	
+	/** Integer.MAX_VALUE, the default Z-order of new sprites */
+	DEFAULT {
+		@Override
+		public int next(Random rand, int maxZ) {
+			return Integer.MAX_VALUE;
+		}
+	};
+	
+	/* --- Constants --- */
+	
+	/** Number of distinct Z-orders used by {@link #SPARSE} */
+	private static final int SPARSE_LEVELS = 16;
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Draws the next fixed-point Z-order
+	 * @param rand Random source
+	 * @param maxZ Max. optimized natural Z-order of the collection
+	 * @return Fixed-point Z-order
+	 */
+	public abstract int next(Random rand, int maxZ);
+}
@@ -0,0 +1,1091 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * A collection that picks its backing collection from the Z-orders it is given, rather
+ * than at construction, and moves to another one when the Z-orders change.
+ * 
+ * One of every {@link #SAMPLE_RATE} Z-orders added, changed or marked is sampled, and
+ * the backing collection reports its searches and traversals to {@link ZCollectionStats}.
+ * Every {@link #EVALUATION_FRAMES} commits these are weighed:
+ * <ul>
+ * <li>Z-orders all between 0 and maxZ - {@link SimpleZCollection}</li>
+ * <li>Z-orders all multiples of the pivot - {@link FixedPointZCollection},
+ *     until searches among the buckets opened for other Z-orders get long, or traversal walks more
+ *     empty buckets than objects</li>
+ * <li>Anything else - {@link SparseZCollection}</li>
+ * </ul>
+ * The same strategy has to win {@link #STABLE_EVALUATIONS} evaluations in a row before the
+ * collection migrates to it.
+ * 
+ * Migration moves whole Z-levels from the back, at least {@link #MIGRATION_STEP} objects per
+ * commit. Meanwhile the new collection holds the Z-orders below a boundary and the old one
+ * the rest, so traversal visits one after the other and objects keep their order.
+ * A Z-order SimpleZCollection cannot hold makes the collection start leaving it at once:
+ * the object goes straight to the new collection, which also holds the Z-orders above
+ * SimpleZCollection's range until the migration is done.
+ * 
+ * commit() drives evaluation and migration, so it should be called once a frame.
+ * An object's new Z-order should be set before it is marked by {@link #markDirty(ZSortable)}.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class AdaptiveZCollection implements ZCollection {
+	
+	/* --- Constants --- */
+	
+	/** One of this many Z-orders added, changed or marked is sampled, a power of 2 */
+	/* package */ static final int SAMPLE_RATE = 8;
+	
+	/** Evaluations wait for this many samples */
+	/* package */ static final int MIN_SAMPLES = 64;
+	
+	/** Number of commits between evaluations */
+	/* package */ static final int EVALUATION_FRAMES = 30;
+	
+	/** Number of evaluations in a row a strategy has to win before migrating to it */
+	/* package */ static final int STABLE_EVALUATIONS = 3;
+	
+	/** Minimal number of objects moved by a commit while migrating */
+	/* package */ static final int MIGRATION_STEP = 256;
+	
+	/** Search histogram bin from which searches are long - 8 buckets and more */
+	private static final int LONG_SEARCH_BIN = 4;
+	
+	/* --- Fields --- */
+	
+	/** max. Z-order of SimpleZCollection, max. optimized fixed-point Z-order of FixedPointZCollection */
+	private final int maxZ;
+	
+	/** strategy of the backing collection */
+	private Strategy strategy;
+	
+	/** backing collection, holding the Z-orders from the boundary up while migrating */
+	private ZCollection current;
+	
+	/** strategy migrated to, or null */
+	private Strategy targetStrategy;
+	
+	/** collection migrated to, holding the Z-orders below the boundary, or null */
+	private ZCollection target;
+	
+	/** lowest Z-order not migrated yet */
+	private int boundary;
+	
+	/** highest Z-order the backing collection holds while migrating, the collection migrated to holds the ones above */
+	private int ceiling;
+	
+	/** statistics of the backing collection */
+	private final ZCollectionStats stats;
+	
+	/** objects being migrated */
+	private final List<ZSortable> batch;
+	
+	/** whether traversal commits marked objects, or requires them to be committed */
+	private boolean autoCommit;
+	
+	/** whether objects were marked since the last commit */
+	private boolean marked;
+	
+	/** number of Z-orders given since construction */
+	private int operations;
+	
+	/** number of Z-orders sampled since the last evaluation */
+	private int samples;
+	
+	/** number of sampled Z-orders between 0 and maxZ */
+	private int inRange;
+	
+	/** number of sampled Z-orders that are optimized fixed-point Z-orders */
+	private int onPivot;
+	
+	/** number of commits since the last evaluation */
+	private int frames;
+	
+	/** strategy that won the last evaluations, or null */
+	private Strategy verdict;
+	
+	/** number of evaluations in a row the verdict won */
+	private int verdicts;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty collection, backed by a {@link SimpleZCollection}
+	 * 
+	 * @param maxZ Maximal Z (inclusive) of SimpleZCollection, and maximal optimized
+	 *             fixed-point Z-order of FixedPointZCollection.
+	 */
+	public AdaptiveZCollection(int maxZ) {
+		this(maxZ, Strategy.SIMPLE);
+	}
+	
+	/**
+	 * Initializes an empty collection
+	 * 
+	 * @param maxZ Maximal Z (inclusive) of SimpleZCollection, and maximal optimized
+	 *             fixed-point Z-order of FixedPointZCollection.
+	 * @param strategy Backing collection to start with
+	 */
+	public AdaptiveZCollection(int maxZ, Strategy strategy) {
+		if (maxZ < 0) {
+			throw new IllegalArgumentException(
+				String.format("Invalid max. Z-order: %d, should be >= 0", maxZ));
+		}
+		
+		this.maxZ = maxZ;
+		this.strategy = strategy;
+		this.current = strategy.create(maxZ);
+		this.boundary = Integer.MIN_VALUE;
+		this.ceiling = Integer.MAX_VALUE;
+		this.stats = new ZCollectionStats();
+		this.batch = new ArrayList<ZSortable>();
+		this.autoCommit = true;
+		
+		strategy.setStats(current, stats);
+	}
+	
+	/* --- ZCollection Methods --- */
+	
+	/**
+	 * @see {@link ZCollection#add(ZSortable)}
+	 */
+	@Override
+	public void add(ZSortable object) throws AlreadyInCollectionException {
+		if (object == null) {
+			return;
+		}
+		
+		if (object.getCurrentLink() != null) {
+			throw new AlreadyInCollectionException();
+		}
+		
+		admit(object.getZOrder());
+		collectionFor(object.getZOrder()).add(object);
+	}
+	
+	/**
+	 * @see {@link ZCollection#remove(ZSortable)}
+	 */
+	@Override
+	public void remove(ZSortable object) {
+		if (object != null && owns(object)) {
+			holder(object).remove(object);
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#change(ZSortable)}
+	 */
+	@Override
+	public void change(ZSortable object) {
+		if (object == null || (object.getCurrentLink() != null && !owns(object))) {
+			return;
+		}
+		
+		admit(object.getZOrder());
+		relink(object);
+	}
+	
+	/**
+	 * Hands the objects to the backing collection at once, unless migrating
+	 * 
+	 * @see {@link ZCollection#addAll(Collection)}
+	 */
+	@Override
+	public void addAll(Collection<? extends ZSortable> objects) throws AlreadyInCollectionException {
+		BulkChecks.assertNotInCollection(objects);
+		admitAll(objects);
+		if (target == null) {
+			current.addAll(objects);
+			return;
+		}
+		
+		for (ZSortable object : objects) {
+			// skip objects given twice
+			if (object != null && object.getCurrentLink() == null) {
+				collectionFor(object.getZOrder()).add(object);
+			}
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#removeAll(Collection)}
+	 */
+	@Override
+	public void removeAll(Collection<? extends ZSortable> objects) {
+		if (target == null) {
+			current.removeAll(objects);
+			return;
+		}
+		
+		for (ZSortable object : objects) {
+			remove(object);
+		}
+	}
+	
+	/**
+	 * Hands the objects to the backing collection at once, unless migrating
+	 * 
+	 * @see {@link ZCollection#changeAll(Collection)}
+	 */
+	@Override
+	public void changeAll(Collection<? extends ZSortable> objects) {
+		admitAll(objects);
+		if (target == null) {
+			current.changeAll(objects);
+			return;
+		}
+		
+		for (ZSortable object : objects) {
+			if (object != null) {
+				relink(object);
+			}
+		}
+	}
+	
+	/**
+	 * Objects marked with a Z-order the collection holding them can't hold are
+	 * moved to the collection that holds the Z-order right away
+	 * 
+	 * @see {@link ZCollection#markDirty(ZSortable)}
+	 */
+	@Override
+	public void markDirty(ZSortable object) {
+		if (object != null && owns(object)) {
+			admit(object.getZOrder());
+			ZCollection holder = holder(object);
+			if ((holder == target ? targetStrategy : strategy).accepts(object.getZOrder(), maxZ)) {
+				holder.markDirty(object);
+			} else {
+				relink(object);
+			}
+			marked = true;
+		}
+	}
+	
+	/**
+	 * Commits the backing collection, then moves another step of the migration,
+	 * or every {@link #EVALUATION_FRAMES} commits evaluates the strategy.
+	 * 
+	 * While migrating, objects that were marked across the boundary are moved to
+	 * the collection holding their Z-order.
+	 * 
+	 * @see {@link ZCollection#commit()}
+	 */
+	@Override
+	public void commit() {
+		marked = false;
+		current.commit();
+		if (target != null) {
+			target.commit();
+			restoreBoundary();
+		}
+		
+		if (target != null) {
+			migrate(MIGRATION_STEP);
+		} else if (++frames >= EVALUATION_FRAMES) {
+			frames = 0;
+			evaluate();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#setAutoCommit(boolean)}
+	 */
+	@Override
+	public void setAutoCommit(boolean autoCommit) {
+		this.autoCommit = autoCommit;
+		current.setAutoCommit(autoCommit);
+		if (target != null) {
+			target.setAutoCommit(autoCommit);
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#size()}
+	 */
+	@Override
+	public int size() {
+		return target == null ? current.size() : current.size() + target.size();
+	}
+	
+	/**
+	 * @see {@link ZCollection#isEmpty()}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+	
+	/**
+	 * @see {@link ZCollection#countAt(int)}
+	 */
+	@Override
+	public int countAt(int zOrder) {
+		return collectionFor(zOrder).countAt(zOrder);
+	}
+	
+	/**
+	 * @see {@link ZCollection#backToFrontIterator()}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator() {
+		return backToFrontIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @see {@link ZCollection#frontToBackIterator()}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator() {
+		return frontToBackIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachBackToFront(Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(Consumer<? super ZSortable> action) {
+		forEachBackToFront(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachFrontToBack(Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(Consumer<? super ZSortable> action) {
+		forEachFrontToBack(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * While migrating, chains the part of the range below the boundary in the collection
+	 * migrated to with the rest in the backing collection, and with the part above the
+	 * backing collection's range in the collection migrated to.
+	 * 
+	 * @see {@link ZCollection#backToFrontIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		if (target == null || (zLow >= boundary && zHigh <= ceiling)) {
+			return current.backToFrontIterator(zLow, zHigh);
+		}
+		
+		Iterator<ZSortable> iter = current.backToFrontIterator(Math.max(zLow, boundary), Math.min(zHigh, ceiling));
+		if (zLow < boundary) {
+			iter = new ChainedIterator(target.backToFrontIterator(zLow, Math.min(zHigh, boundary - 1)), iter);
+		}
+		if (zHigh > ceiling) {
+			iter = new ChainedIterator(iter, target.backToFrontIterator(Math.max(zLow, ceiling + 1), zHigh));
+		}
+		return iter;
+	}
+	
+	/**
+	 * @see {@link ZCollection#frontToBackIterator(int, int)}
+	 * @see #backToFrontIterator(int, int)
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		if (target == null || (zLow >= boundary && zHigh <= ceiling)) {
+			return current.frontToBackIterator(zLow, zHigh);
+		}
+		
+		Iterator<ZSortable> iter = current.frontToBackIterator(Math.max(zLow, boundary), Math.min(zHigh, ceiling));
+		if (zHigh > ceiling) {
+			iter = new ChainedIterator(target.frontToBackIterator(Math.max(zLow, ceiling + 1), zHigh), iter);
+		}
+		if (zLow < boundary) {
+			iter = new ChainedIterator(iter, target.frontToBackIterator(zLow, Math.min(zHigh, boundary - 1)));
+		}
+		return iter;
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachBackToFront(int, int, Consumer)}
+	 * @see #backToFrontIterator(int, int)
+	 */
+	@Override
+	public void forEachBackToFront(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (target == null || (zLow >= boundary && zHigh <= ceiling)) {
+			current.forEachBackToFront(zLow, zHigh, action);
+			return;
+		}
+		
+		if (zLow < boundary) {
+			target.forEachBackToFront(zLow, Math.min(zHigh, boundary - 1), action);
+		}
+		current.forEachBackToFront(Math.max(zLow, boundary), Math.min(zHigh, ceiling), action);
+		if (zHigh > ceiling) {
+			target.forEachBackToFront(Math.max(zLow, ceiling + 1), zHigh, action);
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachFrontToBack(int, int, Consumer)}
+	 * @see #backToFrontIterator(int, int)
+	 */
+	@Override
+	public void forEachFrontToBack(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (target == null || (zLow >= boundary && zHigh <= ceiling)) {
+			current.forEachFrontToBack(zLow, zHigh, action);
+			return;
+		}
+		
+		if (zHigh > ceiling) {
+			target.forEachFrontToBack(Math.max(zLow, ceiling + 1), zHigh, action);
+		}
+		current.forEachFrontToBack(Math.max(zLow, boundary), Math.min(zHigh, ceiling), action);
+		if (zLow < boundary) {
+			target.forEachFrontToBack(zLow, Math.min(zHigh, boundary - 1), action);
+		}
+	}
+	
+	/**
+	 * While migrating, the first split is the collection migrated to. While it also holds
+	 * Z-orders above the backing collection's range, splits the iterator instead.
+	 * 
+	 * @see {@link ZCollection#spliterator()}
+	 */
+	@Override
+	public Spliterator<ZSortable> spliterator() {
+		prepareTraversal();
+		if (target == null) {
+			return current.spliterator();
+		}
+		if (ceiling != Integer.MAX_VALUE) {
+			return Spliterators.spliterator(backToFrontIterator(), size(), Spliterator.ORDERED | Spliterator.NONNULL);
+		}
+		
+		return new ChainedSpliterator(target.spliterator(), current.spliterator());
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @return Strategy of the backing collection, the one migrated from while migrating
+	 */
+	public Strategy getStrategy() {
+		return strategy;
+	}
+	
+	/**
+	 * @return Strategy migrated to, or null if not migrating
+	 */
+	public Strategy getMigrationTarget() {
+		return targetStrategy;
+	}
+	
+	/* --- Package Methods --- */
+	
+	/**
+	 * Starts migrating without waiting for evaluations
+	 * @param to Strategy to migrate to, other than the current one
+	 */
+	/* package */ void migrateTo(Strategy to) {
+		startMigration(to);
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Commits marked objects before a traversal, or fails if auto-commit is off
+	 */
+	private void prepareTraversal() {
+		if (marked) {
+			if (!autoCommit) {
+				throw new IllegalStateException("Uncommitted changes, call commit() before traversal");
+			}
+			commit();
+		}
+	}
+	
+	/**
+	 * @param zOrder Z-order
+	 * @return Collection that holds the Z-order
+	 */
+	private ZCollection collectionFor(int zOrder) {
+		return target != null && (zOrder < boundary || zOrder > ceiling) ? target : current;
+	}
+	
+	/**
+	 * @param object Object to look for
+	 * @return Whether the object is in the backing collection or the one migrated to
+	 */
+	private boolean owns(ZSortable object) {
+		return strategy.owns(current, object) || (target != null && targetStrategy.owns(target, object));
+	}
+	
+	/**
+	 * @param object Object in the collection
+	 * @return Collection that holds the object, which may differ from the one that
+	 *         holds its Z-order if the object was marked
+	 */
+	private ZCollection holder(ZSortable object) {
+		return target != null && targetStrategy.owns(target, object) ? target : current;
+	}
+	
+	/**
+	 * Moves an object to the collection that holds its Z-order
+	 * @param object Object to move, possibly not in the collection
+	 */
+	private void relink(ZSortable object) {
+		ZCollection to = collectionFor(object.getZOrder());
+		if (object.getCurrentLink() != null) {
+			ZCollection from = holder(object);
+			if (from != to) {
+				from.remove(object);
+			}
+		}
+		to.change(object);
+	}
+	
+	/**
+	 * Samples a Z-order given to the collection, and makes sure the collection
+	 * that would hold it can. SimpleZCollection starts migrating at once otherwise,
+	 * the Z-order is then held by the collection migrated to.
+	 * 
+	 * @param zOrder Z-order
+	 */
+	private void admit(int zOrder) {
+		if ((++operations & (SAMPLE_RATE - 1)) == 0) {
+			++samples;
+			if (zOrder >= 0 && zOrder <= maxZ) {
+				++inRange;
+			}
+			int pivot = fixedPointPivot();
+			if (zOrder >= 0 && zOrder % pivot == 0 && zOrder / pivot <= maxZ) {
+				++onPivot;
+			}
+		}
+		
+		if (target != null && zOrder < boundary && !targetStrategy.accepts(zOrder, maxZ)) {
+			abortMigration();
+		}
+		
+		if (target == null && !strategy.accepts(zOrder, maxZ)) {
+			startMigration(Strategy.SPARSE);
+		}
+	}
+	
+	/**
+	 * @return Pivot of the FixedPointZCollection backing the collection or migrated to,
+	 *         or else the pivot {@link Strategy#FIXED_POINT} creates one with
+	 */
+	private int fixedPointPivot() {
+		if (strategy == Strategy.FIXED_POINT) {
+			return ((FixedPointZCollection)current).getPivot();
+		}
+		if (targetStrategy == Strategy.FIXED_POINT) {
+			return ((FixedPointZCollection)target).getPivot();
+		}
+		return FixedPointZCollection.PIVOT;
+	}
+	
+	/**
+	 * @param objects Objects to {@link #admit(int)} the Z-orders of, may contain nulls
+	 */
+	private void admitAll(Collection<? extends ZSortable> objects) {
+		for (ZSortable object : objects) {
+			if (object != null) {
+				admit(object.getZOrder());
+			}
+		}
+	}
+	
+	/**
+	 * Picks the strategy that should back the collection from the samples and statistics
+	 * gathered since the last evaluation, and migrates to it after it won enough evaluations
+	 */
+	private void evaluate() {
+		if (samples < MIN_SAMPLES) {
+			// keep sampling
+			return;
+		}
+		
+		Strategy best = choose();
+		samples = 0;
+		inRange = 0;
+		onPivot = 0;
+		stats.reset();
+		
+		if (best == strategy) {
+			verdict = null;
+			verdicts = 0;
+			return;
+		}
+		
+		if (best != verdict) {
+			verdict = best;
+			verdicts = 0;
+		}
+		if (++verdicts >= STABLE_EVALUATIONS) {
+			verdict = null;
+			verdicts = 0;
+			startMigration(best);
+		}
+	}
+	
+	/**
+	 * @return Strategy that should back the collection
+	 */
+	private Strategy choose() {
+		if (strategy == Strategy.SIMPLE) {
+			// SimpleZCollection is left as soon as it can't hold a Z-order
+			return strategy;
+		}
+		
+		if (inRange == samples && !current.backToFrontIterator(Integer.MIN_VALUE, -1).hasNext() &&
+			!current.backToFrontIterator(maxZ + 1, Integer.MAX_VALUE).hasNext()) {
+			return Strategy.SIMPLE;
+		}
+		
+		if (strategy == Strategy.FIXED_POINT) {
+			ZCollectionStats figures = strategy.getStats(current);
+			long searches = 0;
+			long longSearches = 0;
+			for (int bin = 0 ; bin < ZCollectionStats.SEARCH_BINS ; ++bin) {
+				searches += figures.getSearches(bin);
+				if (bin >= LONG_SEARCH_BIN) {
+					longSearches += figures.getSearches(bin);
+				}
+			}
+			
+			if (longSearches * 10 > searches || figures.getEmptyBuckets() > size()) {
+				return Strategy.SPARSE;
+			}
+			return Strategy.FIXED_POINT;
+		}
+		
+		// predetermined buckets are opened on first use, so FixedPointZCollection would walk
+		// the buckets open now and no empty ones. The buckets it keeps open once they are
+		// emptied are weighed when it backs the collection.
+		if (onPivot == samples) {
+			return Strategy.FIXED_POINT;
+		}
+		return Strategy.SPARSE;
+	}
+	
+	/**
+	 * Starts migrating to a new collection, holding nothing yet
+	 * @param to Strategy to migrate to
+	 */
+	private void startMigration(Strategy to) {
+		targetStrategy = to;
+		target = to.create(maxZ);
+		target.setAutoCommit(autoCommit);
+		boundary = strategy.lowest(maxZ);
+		ceiling = strategy.highest(maxZ);
+	}
+	
+	/**
+	 * Moves the objects with the lowest Z-orders to the collection migrated to,
+	 * and makes it the backing collection if none are left. Migration is given up
+	 * if it can't hold one of them.
+	 * 
+	 * @param count Minimal number of objects to move, whole Z-levels are moved
+	 */
+	private void migrate(int count) {
+		// marked objects must be at their Z-order to be moved by level
+		current.commit();
+		
+		boolean done = true;
+		Iterator<ZSortable> objects = current.backToFrontIterator();
+		while (objects.hasNext()) {
+			ZSortable object = objects.next();
+			int zOrder = object.getZOrder();
+			if (batch.size() >= count && zOrder != batch.get(batch.size() - 1).getZOrder()) {
+				boundary = zOrder;
+				done = false;
+				break;
+			}
+			
+			if (!targetStrategy.accepts(zOrder, maxZ)) {
+				batch.clear();
+				abortMigration();
+				return;
+			}
+			batch.add(object);
+		}
+		
+		current.removeAll(batch);
+		target.changeAll(batch);
+		batch.clear();
+		
+		if (done) {
+			strategy.setStats(current, null);
+			strategy = targetStrategy;
+			current = target;
+			targetStrategy = null;
+			target = null;
+			boundary = Integer.MIN_VALUE;
+			ceiling = Integer.MAX_VALUE;
+			
+			strategy.setStats(current, stats);
+			stats.reset();
+			frames = 0;
+		}
+	}
+	
+	/**
+	 * Moves the objects migrated so far back to the backing collection, and stops migrating
+	 */
+	private void abortMigration() {
+		target.commit();
+		target.forEachBackToFront(batch::add);
+		target.removeAll(batch);
+		current.changeAll(batch);
+		batch.clear();
+		
+		targetStrategy = null;
+		target = null;
+		boundary = Integer.MIN_VALUE;
+		ceiling = Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Moves objects that were marked across the boundary or the ceiling to the collection
+	 * that holds their new Z-order
+	 */
+	private void restoreBoundary() {
+		if (boundary == Integer.MIN_VALUE) {
+			// nothing migrated yet, and the backing collection takes any Z-order
+			return;
+		}
+		
+		current.forEachBackToFront(Integer.MIN_VALUE, boundary - 1, batch::add);
+		for (int i = 0 ; i < batch.size() ; ++i) {
+			if (!targetStrategy.accepts(batch.get(i).getZOrder(), maxZ)) {
+				batch.clear();
+				abortMigration();
+				return;
+			}
+		}
+		current.removeAll(batch);
+		target.changeAll(batch);
+		batch.clear();
+		
+		// the backing collection takes any Z-order up to the ceiling
+		target.forEachBackToFront(boundary, ceiling, batch::add);
+		target.removeAll(batch);
+		current.changeAll(batch);
+		batch.clear();
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * The collections an {@link AdaptiveZCollection} may be backed by
+	 * 
+	 * @author itayd
+	 *
+	 */
+	public enum Strategy {
+		
+		/** {@link SimpleZCollection}, for Z-orders between 0 and maxZ */
+		SIMPLE {
+			@Override
+			/* package */ ZCollection create(int maxZ) {
+				return new SimpleZCollection(maxZ);
+			}
+			
+			@Override
+			/* package */ int lowest(int maxZ) {
+				return 0;
+			}
+			
+			@Override
+			/* package */ int highest(int maxZ) {
+				return maxZ;
+			}
+			
+			@Override
+			/* package */ boolean owns(ZCollection collection, ZSortable object) {
+				return ((SimpleZCollection)collection).owns(object);
+			}
+			
+			@Override
+			/* package */ void setStats(ZCollection collection, ZCollectionStats stats) {
+				((SimpleZCollection)collection).setStats(stats);
+			}
+			
+			@Override
+			/* package */ ZCollectionStats getStats(ZCollection collection) {
+				return ((SimpleZCollection)collection).getStats();
+			}
+		},
+		
+		/** {@link FixedPointZCollection}, for multiples of {@link FixedPointZCollection#PIVOT} */
+		FIXED_POINT {
+			@Override
+			/* package */ ZCollection create(int maxZ) {
+				return new FixedPointZCollection(maxZ);
+			}
+			
+			@Override
+			/* package */ boolean owns(ZCollection collection, ZSortable object) {
+				return ((FixedPointZCollection)collection).owns(object);
+			}
+			
+			@Override
+			/* package */ void setStats(ZCollection collection, ZCollectionStats stats) {
+				((FixedPointZCollection)collection).setStats(stats);
+			}
+			
+			@Override
+			/* package */ ZCollectionStats getStats(ZCollection collection) {
+				return ((FixedPointZCollection)collection).getStats();
+			}
+		},
+		
+		/** {@link SparseZCollection}, for any Z-orders */
+		SPARSE {
+			@Override
+			/* package */ ZCollection create(int maxZ) {
+				return new SparseZCollection();
+			}
+			
+			@Override
+			/* package */ boolean owns(ZCollection collection, ZSortable object) {
+				return ((SparseZCollection)collection).owns(object);
+			}
+			
+			@Override
+			/* package */ void setStats(ZCollection collection, ZCollectionStats stats) {
+				((SparseZCollection)collection).setStats(stats);
+			}
+			
+			@Override
+			/* package */ ZCollectionStats getStats(ZCollection collection) {
+				return ((SparseZCollection)collection).getStats();
+			}
+		};
+		
+		/* --- Package Methods --- */
+		
+		/**
+		 * @param maxZ Max. Z-order of the collection
+		 * @return An empty collection
+		 */
+		/* package */ abstract ZCollection create(int maxZ);
+		
+		/**
+		 * @param maxZ Max. Z-order of the collection
+		 * @return Lowest Z-order the collection can hold
+		 */
+		/* package */ int lowest(int maxZ) {
+			return Integer.MIN_VALUE;
+		}
+		
+		/**
+		 * @param maxZ Max. Z-order of the collection
+		 * @return Highest Z-order the collection can hold
+		 */
+		/* package */ int highest(int maxZ) {
+			return Integer.MAX_VALUE;
+		}
+		
+		/**
+		 * @param zOrder Z-order
+		 * @param maxZ Max. Z-order of the collection
+		 * @return Whether the collection can hold the Z-order
+		 */
+		/* package */ boolean accepts(int zOrder, int maxZ) {
+			return zOrder >= lowest(maxZ) && zOrder <= highest(maxZ);
+		}
+		
+		/**
+		 * @param collection Collection created by this strategy
+		 * @param object Object in some collection
+		 * @return Whether the object is in the given collection
+		 */
+		/* package */ abstract boolean owns(ZCollection collection, ZSortable object);
+		
+		/**
+		 * @param collection Collection created by this strategy
+		 * @param stats Statistics to attach, or null to detach them
+		 */
+		/* package */ abstract void setStats(ZCollection collection, ZCollectionStats stats);
+		
+		/**
+		 * @param collection Collection created by this strategy
+		 * @return Up to date statistics of the collection, or null if none are attached
+		 */
+		/* package */ abstract ZCollectionStats getStats(ZCollection collection);
+	}
+	
+	/**
+	 * Iterates one iterator, then another
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class ChainedIterator implements Iterator<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** iterated first */
+		private final Iterator<ZSortable> first;
+		
+		/** iterated once the first is done */
+		private final Iterator<ZSortable> second;
+		
+		/** iterator that returned the last object, or null */
+		private Iterator<ZSortable> last;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param first Iterated first
+		 * @param second Iterated once the first is done
+		 */
+		public ChainedIterator(Iterator<ZSortable> first, Iterator<ZSortable> second) {
+			this.first = first;
+			this.second = second;
+		}
+		
+		/* --- Iterator Methods --- */
+		
+		@Override
+		public boolean hasNext() {
+			return first.hasNext() || second.hasNext();
+		}
+		
+		@Override
+		public ZSortable next() {
+			if (first.hasNext()) {
+				last = first;
+			} else if (second.hasNext()) {
+				last = second;
+			} else {
+				throw new NoSuchElementException();
+			}
+			return last.next();
+		}
+		
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			last.remove();
+		}
+	}
+	
+	/**
+	 * Splits off one spliterator, then splits another
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class ChainedSpliterator implements Spliterator<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** traversed first, or null once split off or done */
+		private Spliterator<ZSortable> first;
+		
+		/** traversed once the first is done */
+		private final Spliterator<ZSortable> second;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param first Traversed first
+		 * @param second Traversed once the first is done
+		 */
+		public ChainedSpliterator(Spliterator<ZSortable> first, Spliterator<ZSortable> second) {
+			this.first = first;
+			this.second = second;
+		}
+		
+		/* --- Spliterator Methods --- */
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super ZSortable> action) {
+			if (first != null) {
+				if (first.tryAdvance(action)) {
+					return true;
+				}
+				first = null;
+			}
+			return second.tryAdvance(action);
+		}
+		
+		@Override
+		public void forEachRemaining(Consumer<? super ZSortable> action) {
+			if (first != null) {
+				first.forEachRemaining(action);
+				first = null;
+			}
+			second.forEachRemaining(action);
+		}
+		
+		@Override
+		public Spliterator<ZSortable> trySplit() {
+			if (first != null) {
+				Spliterator<ZSortable> prefix = first;
+				first = null;
+				return prefix;
+			}
+			return second.trySplit();
+		}
+		
+		@Override
+		public long estimateSize() {
+			long size = second.estimateSize();
+			if (first != null) {
+				size += first.estimateSize();
+				// overflows when either is unknown
+				if (size < 0) {
+					size = Long.MAX_VALUE;
+				}
+			}
+			return size;
+		}
+		
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL;
+		}
+	}
+}
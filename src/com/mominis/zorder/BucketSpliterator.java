@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Base for the {@link ZCollection} spliterators, which cover a range of buckets
+ * and split on bucket boundaries.
+ * 
+ * Sub-classes supply the buckets in back-to-front order and know how to split
+ * their range in two, estimating the size of the lower part. A spliterator that
+ * has started traversing doesn't split.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ abstract class BucketSpliterator implements Spliterator<ZSortable> {
+	
+	/* --- Fields --- */
+	
+	/** Link of the next element to yield, or null to move to the next bucket */
+	private ExposedLinkedList<ZSortable>.ExposedLink link;
+	
+	/** Whether traversal has started */
+	private boolean started;
+	
+	/** Estimated number of elements in range */
+	private long estimate;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Constructor
+	 * @param estimate Estimated number of elements in range
+	 */
+	protected BucketSpliterator(long estimate) {
+		this.estimate = estimate;
+	}
+	
+	/* --- Spliterator Methods --- */
+	
+	/**
+	 * @see {@link Spliterator#tryAdvance(Consumer)}
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super ZSortable> action) {
+		started = true;
+		while (link == null) {
+			ExposedLinkedList<ZSortable> bucket = nextBucket();
+			if (bucket == null) {
+				return false;
+			}
+			link = bucket.getHead();
+		}
+		
+		ZSortable object = link.object;
+		link = link.next;
+		action.accept(object);
+		return true;
+	}
+	
+	/**
+	 * @see {@link Spliterator#forEachRemaining(Consumer)}
+	 */
+	@Override
+	public void forEachRemaining(Consumer<? super ZSortable> action) {
+		while (tryAdvance(action)) {
+			// keep going
+		}
+	}
+	
+	/**
+	 * Splits off the first half of the remaining buckets
+	 * 
+	 * @see {@link Spliterator#trySplit()}
+	 */
+	@Override
+	public Spliterator<ZSortable> trySplit() {
+		if (started) {
+			return null;
+		}
+		
+		BucketSpliterator prefix = splitPrefix();
+		if (prefix != null) {
+			estimate = Math.max(0, estimate - prefix.estimate);
+		}
+		return prefix;
+	}
+	
+	/**
+	 * @see {@link Spliterator#estimateSize()}
+	 */
+	@Override
+	public long estimateSize() {
+		return estimate;
+	}
+	
+	/**
+	 * @see {@link Spliterator#characteristics()}
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+	
+	/* --- Protected Methods --- */
+	
+	/**
+	 * @return Next bucket in range, in back-to-front order, or null if there are no more buckets
+	 */
+	protected abstract ExposedLinkedList<ZSortable> nextBucket();
+	
+	/**
+	 * Splits the range in two, keeping the upper part
+	 * @return Spliterator over the lower part of the range, with its own estimate,
+	 *         or null if the range can't be split
+	 */
+	protected abstract BucketSpliterator splitPrefix();
+}
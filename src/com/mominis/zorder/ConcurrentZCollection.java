@@ -0,0 +1,862 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * A thread-safe {@link ZCollection}, supporting bounded, natural Z-orders.
+ * 
+ * Every Z-level's bucket is guarded by its own lock, so threads working on
+ * objects at different Z-levels don't contend. {@link #change(ZSortable)} takes
+ * the locks of the source and target buckets in Z-order, so two threads moving
+ * objects between the same levels in opposite directions can't deadlock.
+ * 
+ * Calls may be made from any thread at the same time, for the same object
+ * or for different ones. Moving an object replaces its link without ever
+ * clearing it, and objects enter the collection under one lock shared by all
+ * adds, so two threads can't both see an object as missing and link it twice.
+ * Adds therefore don't scale across threads as well as changes and removes do.
+ * 
+ * Traversal is weakly consistent: every bucket is copied under its lock and
+ * visited after the lock is released, so the action may modify the collection
+ * freely. Objects that aren't changed during the traversal are visited once,
+ * in order. Objects changed during the traversal may be visited at both their
+ * old and new Z-level, or at neither.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ConcurrentZCollection implements ZCollection {
+	
+	/* --- Fields --- */
+	
+	/** Max. allowed Z-order (inclusive) */
+	private final int maxZ;
+	
+	/** Z-order collections. Every cell holds a list of objects currently in that Z-level, and is its lock */
+	private final Bucket[] buckets;
+	
+	/** number of objects in the collection */
+	private final LongAdder size;
+	
+	/** taken whenever an object enters the collection, before its bucket's lock */
+	private final Object adds;
+	
+	/** objects marked by markDirty(), waiting for commit(). Also guards itself */
+	private final DirtyLinks dirty;
+	
+	/** whether traversal commits marked objects, or requires them to be committed */
+	private volatile boolean autoCommit;
+	
+	/** bucket copies of forEach, one per thread, taken while in use so nested traversals get their own */
+	private final ThreadLocal<BucketCopy> copies;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty collection.
+	 * 
+	 * @param maxZ Maximal allowed Z (inclusive).
+	 */
+	public ConcurrentZCollection(int maxZ) {
+		this.maxZ = maxZ;
+		buckets = new Bucket[maxZ + 1];
+		for (int i = 0 ; i <= maxZ ; ++i) {
+			buckets[i] = new Bucket(i);
+		}
+		size = new LongAdder();
+		adds = new Object();
+		
+		dirty = new DirtyLinks();
+		autoCommit = true;
+		copies = new ThreadLocal<BucketCopy>();
+	}
+	
+	/* --- ZCollection Methods --- */
+
+	/**
+	 * Appends the given object to the end of the correct bucket, under the add lock
+	 * and the bucket's lock
+	 * 
+	 * @see {@link ZCollection#add(ZSortable)}
+	 */
+	@Override
+	public void add(ZSortable object) throws AlreadyInCollectionException {
+		if (object == null) {
+			return;
+		}
+		
+		int zOrder = object.getZOrder();
+		assertZ(zOrder);
+		
+		Bucket bucket = buckets[zOrder];
+		synchronized (adds) {
+			if (object.getCurrentLink() != null) {
+				throw new AlreadyInCollectionException();
+			}
+			synchronized (bucket) {
+				append(object, bucket);
+			}
+		}
+		size.increment();
+	}
+
+	/**
+	 * Unlinks the current object's link under its bucket's lock, retrying if the
+	 * object was moved by another thread before the lock was taken
+	 * 
+	 * @see {@link ZCollection#remove(ZSortable)}
+	 */
+	@Override
+	public void remove(ZSortable object) {
+		if (object == null) {
+			return;
+		}
+		
+		while (true) {
+			ExposedLinkedList<ZSortable>.ExposedLink link = currentLink(object);
+			if (link == null || !owns(link)) {
+				return;
+			}
+			
+			Bucket bucket = (Bucket)link.getList();
+			synchronized (bucket) {
+				if (object.getCurrentLink() == link) {
+					unlink(object, link);
+					size.decrement();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locks the source and target buckets, lower Z-order first, and moves the object
+	 * to the end of the target bucket. Retries if the object was moved by another
+	 * thread before the locks were taken. An object that is not in the collection
+	 * is added under the add lock, as {@link #add(ZSortable)} does.
+	 * 
+	 * @see {@link ZCollection#change(ZSortable)}
+	 */
+	@Override
+	public void change(ZSortable object) {
+		if (object == null) {
+			return;
+		}
+		
+		int zOrder = object.getZOrder();
+		assertZ(zOrder);
+		Bucket target = buckets[zOrder];
+		
+		while (true) {
+			ExposedLinkedList<ZSortable>.ExposedLink link = currentLink(object);
+			if (link == null) {
+				// not in the collection - add it, unless another thread did first
+				synchronized (adds) {
+					if (object.getCurrentLink() == null) {
+						synchronized (target) {
+							append(object, target);
+						}
+						size.increment();
+						return;
+					}
+				}
+				continue;
+			}
+			if (!owns(link)) {
+				// in another collection
+				return;
+			}
+			
+			Bucket source = (Bucket)link.getList();
+			Bucket first = source.Z <= target.Z ? source : target;
+			Bucket second = source.Z <= target.Z ? target : source;
+			synchronized (first) {
+				synchronized (second) {
+					if (object.getCurrentLink() == link) {
+						move(object, link, target);
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks all objects first, then adds them one by one under a single hold
+	 * of the add lock. Objects added by other threads in the meantime are skipped.
+	 * 
+	 * @see {@link ZCollection#addAll(Collection)}
+	 */
+	@Override
+	public void addAll(Collection<? extends ZSortable> objects) throws AlreadyInCollectionException {
+		BulkChecks.assertNotInCollection(objects);
+		assertZ(objects);
+		synchronized (adds) {
+			for (ZSortable object : objects) {
+				if (object == null || object.getCurrentLink() != null) {
+					continue;
+				}
+				
+				Bucket bucket = buckets[object.getZOrder()];
+				synchronized (bucket) {
+					append(object, bucket);
+				}
+				size.increment();
+			}
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#removeAll(Collection)}
+	 */
+	@Override
+	public void removeAll(Collection<? extends ZSortable> objects) {
+		for (ZSortable object : objects) {
+			remove(object);
+		}
+	}
+	
+	/**
+	 * Changes the objects one by one, which moves them to the end of their
+	 * buckets in the given order, as removing and adding them all would
+	 * 
+	 * @see {@link ZCollection#changeAll(Collection)}
+	 */
+	@Override
+	public void changeAll(Collection<? extends ZSortable> objects) {
+		assertZ(objects);
+		for (ZSortable object : objects) {
+			change(object);
+		}
+	}
+
+	/**
+	 * @see {@link ZCollection#markDirty(ZSortable)}
+	 */
+	@Override
+	public void markDirty(ZSortable object) {
+		if (object == null) {
+			return;
+		}
+		
+		ExposedLinkedList<ZSortable>.ExposedLink link = currentLink(object);
+		if (link != null && owns(link)) {
+			synchronized (dirty) {
+				dirty.mark(link);
+			}
+		}
+	}
+	
+	/**
+	 * Drains the marked objects and changes the ones that moved, one by one.
+	 * Concurrent commits are serialized.
+	 * 
+	 * @see {@link ZCollection#commit()}
+	 */
+	@Override
+	public void commit() {
+		synchronized (dirty) {
+			if (dirty.isEmpty()) {
+				return;
+			}
+			
+			List<ZSortable> moved = dirty.drain(link -> ((Bucket)link.getList()).Z);
+			assertZ(moved);
+			for (int i = 0 ; i < moved.size() ; ++i) {
+				change(moved.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#setAutoCommit(boolean)}
+	 */
+	@Override
+	public void setAutoCommit(boolean autoCommit) {
+		this.autoCommit = autoCommit;
+	}
+
+	/**
+	 * Sums the per-thread counters, so the result is exact only when no other
+	 * thread is adding or removing objects
+	 * 
+	 * @see {@link ZCollection#size()}
+	 */
+	@Override
+	public int size() {
+		return size.intValue();
+	}
+	
+	/**
+	 * @see {@link ZCollection#isEmpty()}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size.sum() == 0;
+	}
+	
+	/**
+	 * Reads the bucket's published count, without locking
+	 * 
+	 * @see {@link ZCollection#countAt(int)}
+	 */
+	@Override
+	public int countAt(int zOrder) {
+		return zOrder < 0 || zOrder > maxZ ? 0 : buckets[zOrder].Count;
+	}
+
+	/**
+	 * @see {@link ZCollection#backToFrontIterator()}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator() {
+		return backToFrontIterator(0, maxZ);
+	}
+
+	/**
+	 * @see {@link ZCollection#frontToBackIterator()}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator() {
+		return frontToBackIterator(0, maxZ);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachBackToFront(Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(Consumer<? super ZSortable> action) {
+		forEachBackToFront(0, maxZ, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachFrontToBack(Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(Consumer<? super ZSortable> action) {
+		forEachFrontToBack(0, maxZ, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#backToFrontIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MyIterator(Math.max(zLow, 0), Math.min(zHigh, maxZ), false);
+	}
+	
+	/**
+	 * @see {@link ZCollection#frontToBackIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MyIterator(Math.max(zLow, 0), Math.min(zHigh, maxZ), true);
+	}
+	
+	/**
+	 * Copies every occupied bucket in range into a per-thread buffer, and visits the copy
+	 * 
+	 * @see {@link ZCollection#forEachBackToFront(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		BucketCopy copy = takeCopy();
+		try {
+			for (int i = Math.max(zLow, 0) ; i <= Math.min(zHigh, maxZ) ; ++i) {
+				copy.fill(buckets[i]);
+				for (int j = 0 ; j < copy.Count ; ++j) {
+					action.accept(copy.Objects[j]);
+				}
+			}
+		} finally {
+			copy.clear();
+			copies.set(copy);
+		}
+	}
+	
+	/**
+	 * Copies every occupied bucket in range into a per-thread buffer, and visits the copy
+	 * 
+	 * @see {@link ZCollection#forEachFrontToBack(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		BucketCopy copy = takeCopy();
+		try {
+			for (int i = Math.min(zHigh, maxZ) ; i >= Math.max(zLow, 0) ; --i) {
+				copy.fill(buckets[i]);
+				for (int j = copy.Count - 1 ; j >= 0 ; --j) {
+					action.accept(copy.Objects[j]);
+				}
+			}
+		} finally {
+			copy.clear();
+			copies.set(copy);
+		}
+	}
+	
+	/**
+	 * Splits at the middle non-empty Z-level. The spliterator is also
+	 * {@link Spliterator#CONCURRENT}, as the collection may be modified while it's in use.
+	 * 
+	 * @see {@link ZCollection#spliterator()}
+	 */
+	@Override
+	public Spliterator<ZSortable> spliterator() {
+		prepareTraversal();
+		return new MySpliterator(0, maxZ, size.sum());
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Commits marked objects before a traversal, or fails if auto-commit is off
+	 */
+	private void prepareTraversal() {
+		synchronized (dirty) {
+			if (!dirty.isEmpty()) {
+				if (!autoCommit) {
+					throw new IllegalStateException("Uncommitted changes, call commit() before traversal");
+				}
+				commit();
+			}
+		}
+	}
+	
+	/**
+	 * @return The calling thread's bucket copy, which is not available to nested traversals
+	 *         until it's given back
+	 */
+	private BucketCopy takeCopy() {
+		BucketCopy copy = copies.get();
+		if (copy == null) {
+			return new BucketCopy();
+		}
+		
+		copies.set(null);
+		return copy;
+	}
+	
+	/**
+	 * Appends an object to a bucket. Call with the bucket's lock held.
+	 * @param object Object to append, not in the collection
+	 * @param bucket Bucket of the object's Z-order
+	 */
+	private static void append(ZSortable object, Bucket bucket) {
+		object.setCurrentLink(bucket.append(object));
+		bucket.Count = bucket.size();
+	}
+	
+	/**
+	 * Moves an object to the end of another bucket. The object's link is replaced by
+	 * the new one without being cleared in between, so other threads never see the
+	 * object as missing. Call with the locks of both buckets held.
+	 * @param object Object to move
+	 * @param link Object's current link
+	 * @param target Bucket of the object's new Z-order
+	 */
+	private static void move(ZSortable object, ExposedLinkedList<ZSortable>.ExposedLink link, Bucket target) {
+		link.unlink();
+		Bucket source = (Bucket)link.getList();
+		source.Count = source.size();
+		
+		append(object, target);
+	}
+	
+	/**
+	 * Unlinks an object from its bucket. Call with the bucket's lock held.
+	 * @param object Object to unlink
+	 * @param link Object's current link
+	 */
+	private static void unlink(ZSortable object, ExposedLinkedList<ZSortable>.ExposedLink link) {
+		link.unlink();
+		object.setCurrentLink(null);
+		
+		Bucket bucket = (Bucket)link.getList();
+		bucket.Count = bucket.size();
+	}
+	
+	/**
+	 * Reads an object's link without locking. The link must be checked again under
+	 * its bucket's lock before it's used.
+	 * @param object Object to look at
+	 * @return Object's link, or null if the object is not in a collection
+	 */
+	@SuppressWarnings("unchecked")
+	private static ExposedLinkedList<ZSortable>.ExposedLink currentLink(ZSortable object) {
+		// links are always created by buckets, maybe of another collection
+		return (ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink();
+	}
+	
+	/**
+	 * @param link Link read by {@link #currentLink(ZSortable)}
+	 * @return Whether the link was created by one of this collection's buckets.
+	 *         Buckets are never replaced, so no lock is needed.
+	 */
+	private boolean owns(ExposedLinkedList<ZSortable>.ExposedLink link) {
+		ExposedLinkedList<ZSortable> list = link.getList();
+		if (!(list instanceof Bucket)) {
+			return false;
+		}
+		
+		int z = ((Bucket)list).Z;
+		return z <= maxZ && buckets[z] == list;
+	}
+	
+	/**
+	 * Makes sure the given Z-order is valid
+	 * @param zOrder Z-order to check
+	 */
+	private void assertZ(int zOrder) {
+		if (zOrder < 0 || zOrder > maxZ) {
+			throw new IllegalArgumentException(
+				String.format("Invalid Z-order: %d, should be >= 0 and <= %d", zOrder, maxZ));
+		}
+	}
+	
+	/**
+	 * Makes sure the Z-orders of the given objects are valid
+	 * @param objects Objects to check, may contain nulls
+	 */
+	private void assertZ(Collection<? extends ZSortable> objects) {
+		for (ZSortable object : objects) {
+			if (object != null) {
+				assertZ(object.getZOrder());
+			}
+		}
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * A list that remembers which Z-level it holds, and publishes its size
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class Bucket extends ExposedLinkedList<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** Bucket's Z-order */
+		public final int Z;
+		
+		/** Bucket's size, written under the bucket's lock and readable without it */
+		public volatile int Count;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Initializes an empty bucket
+		 * @param z Bucket's Z-order
+		 */
+		public Bucket(int z) {
+			this.Z = z;
+		}
+	}
+	
+	/**
+	 * The objects of one bucket, copied under the bucket's lock
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class BucketCopy {
+		
+		/* --- Fields --- */
+		
+		/** Copied objects, back-to-front. Grows as needed, and is reused between buckets */
+		public ZSortable[] Objects = new ZSortable[16];
+		
+		/** Number of copied objects */
+		public int Count;
+		
+		/* --- Public Methods --- */
+		
+		/**
+		 * Replaces the copy with the objects of a bucket. Empty buckets are skipped
+		 * without taking their lock.
+		 * @param bucket Bucket to copy
+		 */
+		public void fill(Bucket bucket) {
+			Count = 0;
+			if (bucket.Count == 0) {
+				return;
+			}
+			
+			synchronized (bucket) {
+				if (Objects.length < bucket.size()) {
+					Objects = new ZSortable[Math.max(bucket.size(), Objects.length * 2)];
+				}
+				for (ExposedLinkedList<ZSortable>.ExposedLink link = bucket.getHead() ; link != null ; link = link.next) {
+					Objects[Count++] = link.object;
+				}
+			}
+		}
+		
+		/**
+		 * Drops the references to the copied objects
+		 */
+		public void clear() {
+			for (int i = 0 ; i < Objects.length && Objects[i] != null ; ++i) {
+				Objects[i] = null;
+			}
+			Count = 0;
+		}
+	}
+	
+	/**
+	 * Iterates a Z-range bucket by bucket, copying every bucket when reaching it
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class MyIterator implements Iterator<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** whether to scan front-to-back */
+		private final boolean reverse;
+		
+		/** Last Z-level to copy, in scan direction */
+		private final int end;
+		
+		/** Next Z-level to copy */
+		private int level;
+		
+		/** Copy of the current bucket */
+		private final BucketCopy copy;
+		
+		/** Number of objects of the copy yielded so far */
+		private int yielded;
+		
+		/** Last object yielded, or null if there is none or it was removed */
+		private ZSortable last;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param low Lowest Z-level in range
+		 * @param high Highest Z-level in range
+		 * @param reverse Whether to scan front-to-back
+		 */
+		public MyIterator(int low, int high, boolean reverse) {
+			this.reverse = reverse;
+			this.end = reverse ? low : high;
+			this.level = reverse ? high : low;
+			this.copy = new BucketCopy();
+		}
+		
+		/* --- Iterator<ZSortable> Methods --- */
+		
+		/**
+		 * @see {@link Iterator#hasNext()}
+		 */
+		@Override
+		public boolean hasNext() {
+			while (yielded == copy.Count) {
+				if (reverse ? level < end : level > end) {
+					return false;
+				}
+				
+				copy.fill(buckets[level]);
+				yielded = 0;
+				level += reverse ? -1 : 1;
+			}
+			return true;
+		}
+		
+		/**
+		 * @see {@link Iterator#next()}
+		 */
+		@Override
+		public ZSortable next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			int index = yielded++;
+			last = copy.Objects[reverse ? copy.Count - 1 - index : index];
+			return last;
+		}
+		
+		/**
+		 * Removes the last object yielded from the collection, in constant time
+		 * 
+		 * @see {@link Iterator#remove()}
+		 */
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			
+			ConcurrentZCollection.this.remove(last);
+			last = null;
+		}
+	}
+	
+	/**
+	 * Spliterator over a range of Z-levels, copying every bucket when reaching it
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class MySpliterator implements Spliterator<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** Next Z-level to copy */
+		private int index;
+		
+		/** Last Z-level in range */
+		private final int high;
+		
+		/** Estimated number of objects in range */
+		private long estimate;
+		
+		/** Copy of the current bucket, null until traversal starts */
+		private BucketCopy copy;
+		
+		/** Number of objects of the copy yielded so far */
+		private int yielded;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param low First Z-level in range
+		 * @param high Last Z-level in range
+		 * @param estimate Estimated number of objects in range
+		 */
+		public MySpliterator(int low, int high, long estimate) {
+			this.index = low;
+			this.high = high;
+			this.estimate = estimate;
+		}
+		
+		/* --- Spliterator Methods --- */
+		
+		/**
+		 * @see {@link Spliterator#tryAdvance(Consumer)}
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super ZSortable> action) {
+			if (copy == null) {
+				copy = new BucketCopy();
+			}
+			
+			while (yielded == copy.Count) {
+				if (index > high) {
+					return false;
+				}
+				copy.fill(buckets[index++]);
+				yielded = 0;
+			}
+			
+			action.accept(copy.Objects[yielded++]);
+			return true;
+		}
+		
+		/**
+		 * @see {@link Spliterator#forEachRemaining(Consumer)}
+		 */
+		@Override
+		public void forEachRemaining(Consumer<? super ZSortable> action) {
+			while (tryAdvance(action)) {
+				// keep going
+			}
+		}
+		
+		/**
+		 * Splits off the first half of the remaining non-empty Z-levels, unless traversal
+		 * has started, estimating each part by the objects in its levels
+		 * 
+		 * @see {@link Spliterator#trySplit()}
+		 */
+		@Override
+		public Spliterator<ZSortable> trySplit() {
+			if (copy != null) {
+				return null;
+			}
+			
+			int levels = 0;
+			for (int i = index ; i <= high ; ++i) {
+				if (buckets[i].Count > 0) {
+					++levels;
+				}
+			}
+			
+			// the lower half of the non-empty levels goes to the prefix. Other threads
+			// may empty levels meanwhile, so the suffix might end up with none
+			int mid = index - 1;
+			long objects = 0;
+			for (int found = 0 ; found < levels / 2 && mid < high ; ) {
+				int count = buckets[++mid].Count;
+				if (count > 0) {
+					objects += count;
+					++found;
+				}
+			}
+			if (levels < 2 || mid >= high) {
+				return null;
+			}
+			
+			MySpliterator prefix = new MySpliterator(index, mid, objects);
+			index = mid + 1;
+			estimate = Math.max(0, estimate - objects);
+			return prefix;
+		}
+		
+		/**
+		 * @see {@link Spliterator#estimateSize()}
+		 */
+		@Override
+		public long estimateSize() {
+			return estimate;
+		}
+		
+		/**
+		 * @see {@link Spliterator#characteristics()}
+		 */
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL | CONCURRENT;
+		}
+	}
+}
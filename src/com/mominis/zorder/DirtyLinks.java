@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * The links of objects marked by {@link ZCollection#markDirty(ZSortable)}, waiting
+ * for {@link ZCollection#commit()}.
+ * 
+ * Every link is recorded once, no matter how many times its object is marked,
+ * using a flag on the link itself.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ class DirtyLinks {
+	
+	/* --- Fields --- */
+	
+	/** Marked links */
+	private ExposedLinkedList<ZSortable>.ExposedLink[] links;
+	
+	/** Number of marked links */
+	private int size;
+	
+	/** Objects that should move, reused between commits */
+	private final List<ZSortable> moved;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty set
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public DirtyLinks() {
+		links = new ExposedLinkedList.ExposedLink[16];
+		size = 0;
+		moved = new ArrayList<ZSortable>();
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Marks an object's link, unless it's already marked
+	 * @param link Link of an object in the collection
+	 */
+	public void mark(ExposedLinkedList<ZSortable>.ExposedLink link) {
+		if (link.dirty) {
+			return;
+		}
+		
+		if (size == links.length) {
+			links = Arrays.copyOf(links, size * 2);
+		}
+		link.dirty = true;
+		links[size++] = link;
+	}
+	
+	/**
+	 * @return Whether no link is marked
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Unmarks all links, collecting the objects that are still in the collection
+	 * and whose Z-order differs from the Z-order of their bucket.
+	 * 
+	 * @param bucketZ Gives the Z-order of the bucket a link is in
+	 * @return Objects that should move. The list is reused by the next call.
+	 */
+	public List<ZSortable> drain(ToIntFunction<ExposedLinkedList<ZSortable>.ExposedLink> bucketZ) {
+		moved.clear();
+		for (int i = 0 ; i < size ; ++i) {
+			ExposedLinkedList<ZSortable>.ExposedLink link = links[i];
+			links[i] = null;
+			link.dirty = false;
+			
+			// objects removed (or changed) after being marked have a different link by now
+			ZSortable object = link.object;
+			if (object.getCurrentLink() == link && object.getZOrder() != bucketZ.applyAsInt(link)) {
+				moved.add(object);
+			}
+		}
+		size = 0;
+		return moved;
+	}
+}
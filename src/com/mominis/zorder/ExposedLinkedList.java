@@ -23,6 +23,7 @@
 package com.mominis.zorder;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * A minimal double-ended linked-list which exposes it's internal links to the outside world.
@@ -41,6 +42,9 @@ import java.util.Iterator;
 	/** List's tail link */
 	private ExposedLink tail;
 	
+	/** Number of links in the list */
+	private int size;
+	
 	/* --- Constructor --- */
 	
 	/**
@@ -49,6 +53,7 @@ import java.util.Iterator;
 	public ExposedLinkedList() {
 		head = null;
 		tail = null;
+		size = 0;
 	}
 	
 	/* --- Public Methods --- */
@@ -75,9 +80,68 @@ import java.util.Iterator;
 			tail = link;
 		}
 		
+		++size;
+		return link;
+	}
+	
+	/**
+	 * Inserts the given object right after the given link.
+	 * 
+	 * The method runs in constant time
+	 * 
+	 * @param after Link to insert after, or null to insert at the start of the list
+	 * @param object Object to insert to the list
+	 * @return The link the given object was stored at
+	 */
+	public ExposedLink insertAfter(ExposedLink after, E object) {
+		ExposedLink link = new ExposedLink(object);
+		link.prev = after;
+		link.next = after == null ? head : after.next;
+		
+		if (link.prev == null) {
+			head = link;
+		} else {
+			link.prev.next = link;
+		}
+		
+		if (link.next == null) {
+			tail = link;
+		} else {
+			link.next.prev = link;
+		}
+		
+		++size;
 		return link;
 	}
 	
+	/**
+	 * @return Whether the list has no links
+	 */
+	public boolean isEmpty() {
+		return head == null;
+	}
+	
+	/**
+	 * @return Number of links in the list
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return List's first link, or null if the list is empty
+	 */
+	public ExposedLink getHead() {
+		return head;
+	}
+	
+	/**
+	 * @return List's last link, or null if the list is empty
+	 */
+	public ExposedLink getTail() {
+		return tail;
+	}
+	
 	/* --- ReverseIterable<E> Methods --- */
 	
 	/**
@@ -89,6 +153,8 @@ import java.util.Iterator;
 			
 			private ExposedLink current = head;
 			
+			private ExposedLink last;
+			
 			@Override
 			public boolean hasNext() {
 				return current != null;
@@ -96,15 +162,24 @@ import java.util.Iterator;
 
 			@Override
 			public E next() {
-				ExposedLink result = current;
+				if (current == null) {
+					throw new NoSuchElementException();
+				}
+				
+				last = current;
 				current = current.next;
-				return result.object;
+				return last.object;
 			}
 
 			@Override
 			public void remove() {
-				current.unlink();
-				current = current.next;
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				
+				// the next link was fetched already
+				last.unlink();
+				last = null;
 			}
 		};
 	}
@@ -118,6 +193,8 @@ import java.util.Iterator;
 			
 			private ExposedLink current = tail;
 			
+			private ExposedLink last;
+			
 			@Override
 			public boolean hasNext() {
 				return current != null;
@@ -125,15 +202,24 @@ import java.util.Iterator;
 
 			@Override
 			public E next() {
-				ExposedLink result = current;
+				if (current == null) {
+					throw new NoSuchElementException();
+				}
+				
+				last = current;
 				current = current.prev;
-				return result.object;
+				return last.object;
 			}
 
 			@Override
 			public void remove() {
-				current.unlink();
-				current = current.prev;
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				
+				// the next link was fetched already
+				last.unlink();
+				last = null;
 			}
 		};
 	}
@@ -159,6 +245,9 @@ import java.util.Iterator;
 		/** link's object */
 		public final E object;
 		
+		/** whether the link is waiting in a {@link DirtyLinks} set */
+		public boolean dirty;
+		
 		/* --- Constructor --- */
 		
 		/**
@@ -169,6 +258,15 @@ import java.util.Iterator;
 			this.object = object;
 		}
 		
+		/* --- Public Methods --- */
+		
+		/**
+		 * @return The list this link was created by
+		 */
+		public ExposedLinkedList<E> getList() {
+			return ExposedLinkedList.this;
+		}
+		
 		/* --- Unlinkable Methods --- */
 		
 		/**
@@ -189,6 +287,8 @@ import java.util.Iterator;
 			} else {
 				next.prev = prev;
 			}
+			
+			--size;
 		}
 	}	
 }
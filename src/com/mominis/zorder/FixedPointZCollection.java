@@ -22,7 +22,13 @@
  */
 package com.mominis.zorder;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 import com.mominis.zorder.except.AlreadyInCollectionException;
 
@@ -33,6 +39,27 @@ import com.mominis.zorder.except.AlreadyInCollectionException;
  * Working only with predetermined levels will result in optimal performance
  * similar to {@link SimpleZCollection}.
  * 
+ * Buckets opened for other Z-orders are closed as soon as they become empty,
+ * so the number of buckets is bounded by the number of distinct live Z-orders.
+ * Every predetermined bucket keeps a sorted index of the buckets opened between
+ * it and the next predetermined bucket, so finding or opening such a bucket
+ * takes O(log k) for k buckets in that range.
+ * 
+ * Predetermined buckets are opened when their Z-order is first used, so creating
+ * a collection only allocates its quick access table. Until then, the buckets
+ * opened for the Z-orders after it follow the closest open predetermined bucket
+ * before them.
+ * 
+ * Z-orders below 0 or above maxZ * pivot extend the predetermined Z-orders on
+ * demand, by regions of up to maxZ + 1 pivots at each end, so they get the
+ * same lookup cost. Regions grow by doubling, and only Z-orders beyond them are
+ * searched for among the buckets opened before the first or after the last
+ * predetermined bucket.
+ * 
+ * Predetermined Z-orders are spaced by a pivot, {@link #PIVOT} by default. With
+ * auto-tuning on, Z-orders given to the collection are sampled, and the pivot is
+ * re-tuned to the Z-orders actually used once too few of them are predetermined.
+ * 
  * Why fixed-point: We wrote this code to run on mobile devices, where fixed-point
  * arithmetics is sometimes faster than floating-point arithmetics.
  * 
@@ -43,23 +70,81 @@ public class FixedPointZCollection implements ZCollection {
 	
 	/* --- Constants --- */
 	
-	/** Fixed-point pivot (=1) */
+	/** Default fixed-point pivot (=1) */
 	public static final int PIVOT = 1000;
 	
+	/** One in this many Z-orders looked up is sampled for auto-tuning, a power of two */
+	private static final int TUNING_RATE = 8;
+	
+	/** Number of samples the pivot is tuned by */
+	private static final int TUNING_SAMPLES = 512;
+	
+	/** Percentage of sampled Z-orders that should be predetermined */
+	private static final int TUNING_COVERAGE = 90;
+	
+	/** Estimated bytes of a bucket, with its link in the buckets list and its quick access or index cell */
+	private static final int BUCKET_BYTES = 100;
+	
+	/** Gives the Z-order of the bucket a link is in */
+	private static final ToIntFunction<ExposedLinkedList<ZSortable>.ExposedLink> BUCKET_Z =
+		link -> ((BucketList)link.getList()).Owner.Z;
+	
 	/* --- Fields --- */
 	
 	/** max. optimized Z-order */
 	private final int maxZ;
 	
+	/** spacing of predetermined Z-orders */
+	private int pivot;
+	
 	/** list of open buckets */
 	private final ExposedLinkedList<ListWithZ> buckets;
 	
-	/** quick access to certain links in the buckets list */
-	private final ExposedLinkedList<ListWithZ>.ExposedLink[] quickAccess;
+	/** quick access to the predetermined links in the buckets list, from low * pivot to high * pivot */
+	private ExposedLinkedList<ListWithZ>.ExposedLink[] quickAccess;
+	
+	/** positions in the quick access table of the predetermined buckets opened so far */
+	private OccupancyBitmap opened;
+	
+	/** index of the first predetermined Z-order, 0 until the negative region is opened */
+	private int low;
+	
+	/** index of the last predetermined Z-order, maxZ until the region above it is opened */
+	private int high;
 	
 	/** quick access to the last link in the list */
 	private final ExposedLinkedList<ListWithZ>.ExposedLink maxLevelList;
 	
+	/** number of open buckets, other than the predetermined ones */
+	private int dynamicBuckets;
+	
+	/** number of objects in the collection */
+	private int size;
+	
+	/** objects marked by markDirty(), waiting for commit() */
+	private final DirtyLinks dirty;
+	
+	/** whether traversal commits marked objects, or requires them to be committed */
+	private boolean autoCommit;
+	
+	/** receives operation events, {@link StatsRecorder#NONE} unless statistics are attached */
+	private StatsRecorder recorder;
+	
+	/** attached statistics, or null */
+	private ZCollectionStats stats;
+	
+	/** sampled Z-orders, created once auto-tuning is turned on */
+	private int[] samples;
+	
+	/** number of samples taken since the pivot was last tuned, stays 0 unless auto-tuning */
+	private int sampled;
+	
+	/** whether Z-orders are sampled for auto-tuning */
+	private boolean autoTune;
+	
+	/** number of Z-orders looked up while auto-tuning */
+	private int lookups;
+	
 	/* --- Constructor --- */
 	
 	/**
@@ -70,26 +155,48 @@ public class FixedPointZCollection implements ZCollection {
 	 * 
 	 * @param maxZ Max. optimized Z-order (inclusive)
 	 */
-	@SuppressWarnings("unchecked")
 	public FixedPointZCollection(int maxZ) {
+		this(maxZ, PIVOT);
+	}
+	
+	/**
+	 * Initializes an empty collection, supporting optimized work with
+	 * natural Z-orders that are less than or equals to maxZ.
+	 * 
+	 * Z-orders should be given as fixed-point numbers with the given pivot
+	 * 
+	 * @param maxZ Max. optimized Z-order (inclusive)
+	 * @param pivot Fixed-point pivot (=1)
+	 * @throws IllegalArgumentException If the pivot is not positive, or maxZ * pivot
+	 *                                  is not less than Integer.MAX_VALUE
+	 */
+	public FixedPointZCollection(int maxZ, int pivot) {
+		if (pivot <= 0 || (long)maxZ * pivot >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+				String.format("Invalid pivot: %d, should be > 0 and <= %d", pivot,
+					maxZ > 0 ? (Integer.MAX_VALUE - 1) / maxZ : Integer.MAX_VALUE));
+		}
+		
 		this.maxZ = maxZ;
+		this.pivot = pivot;
 		buckets = new ExposedLinkedList<ListWithZ>();
-		quickAccess = new ExposedLinkedList.ExposedLink[maxZ + 1];
+		quickAccess = newQuickAccess(maxZ + 1);
+		opened = new OccupancyBitmap(maxZ + 1);
+		high = maxZ;
 		
 		// at the expense of one always empty list we get much easier life later
 		// if we initialize both ends of allowed Z-orders
-		ListWithZ bucket = new ListWithZ(Integer.MIN_VALUE);
-		buckets.append(bucket);
-		
-		// initialize optimized buckets
-		for (int i = 0 ; i <= maxZ ; ++i) {
-			bucket = new ListWithZ(i * PIVOT);
-			quickAccess[i] = (ExposedLinkedList<ListWithZ>.ExposedLink)buckets.append(bucket);
-		}
+		ListWithZ bucket = new ListWithZ(Integer.MIN_VALUE, null);
+		bucket.Link = buckets.append(bucket);
 		
 		// initialize last bucket
-		bucket = new ListWithZ(Integer.MAX_VALUE);
+		bucket = new ListWithZ(Integer.MAX_VALUE, null);
 		maxLevelList = (ExposedLinkedList<ListWithZ>.ExposedLink)buckets.append(bucket);
+		bucket.Link = maxLevelList;
+		
+		dirty = new DirtyLinks();
+		autoCommit = true;
+		recorder = StatsRecorder.NONE;
 	}
 	
 	/* --- ZCollection Methods --- */
@@ -116,48 +223,22 @@ public class FixedPointZCollection implements ZCollection {
 			throw new AlreadyInCollectionException();
 		}
 		
-		int zOrder = object.getZOrder();
-		Unlinkable currentLink;
-		
-		if (zOrder >= 0) {
-			if (zOrder == Integer.MAX_VALUE) {
-				// special case, default for all new sprites
-				currentLink = maxLevelList.object.List.append(object);
-			} else if (zOrder % PIVOT == 0 && zOrder / PIVOT <= maxZ) {
-				// optimized Z-order
-				currentLink = quickAccess[zOrder / PIVOT].object.List.append(object);
-			} else {
-				// non-optimized - look for an existing bucket, or a place for new one
-				ExposedLinkedList<ListWithZ>.ExposedLink current =
-					quickAccess[Math.min(maxZ, zOrder / PIVOT)];
-				
-				while (current.object.Z < zOrder && current.next.object.Z <= zOrder) {
-					current = current.next;
-				}
-				
-				currentLink = addOrCreateBucket(object, current, true);
-			}
-		} else {
-			// negative - look for an existing bucket, or a place for new one
-			ExposedLinkedList<ListWithZ>.ExposedLink current = quickAccess[0];
-			
-			while (current.object.Z > zOrder && current.prev.object.Z >= zOrder) {
-				current = current.prev;
-			}
-			
-			currentLink = addOrCreateBucket(object, current, false);
-		}
-		
-		object.setCurrentLink(currentLink);
+		link(object);
+		recorder.added(1);
 	}
 
 	/**
+	 * Unlinks the object, and closes its bucket if it was opened
+	 * for a non-optimized Z-order and is now empty.
+	 * 
 	 * @see {@link ZCollection#remove(ZSortable)}
 	 */
 	@Override
 	public void remove(ZSortable object) {
-		object.getCurrentLink().unlink();
-		object.setCurrentLink(null);
+		if (object != null && owns(object)) {
+			unlink(object);
+			recorder.removed(1);
+		}
 	}
 
 	/**
@@ -165,20 +246,164 @@ public class FixedPointZCollection implements ZCollection {
 	 */
 	@Override
 	public void change(ZSortable object) {
-		remove(object);
-		try {
-			add(object);
-		} catch (AlreadyInCollectionException e) {
-			// should not happen
+		if (object == null) {
+			return;
+		}
+		
+		if (owns(object)) {
+			unlink(object);
+		} else if (object.getCurrentLink() != null) {
+			// in another collection
+			return;
+		}
+		link(object);
+		recorder.changed(1);
+	}
+	
+	/**
+	 * Checks all objects first, then appends every run of consecutive objects
+	 * with the same Z-order to its bucket, looking up (or opening) the bucket
+	 * once per run
+	 * 
+	 * @see {@link ZCollection#addAll(Collection)}
+	 */
+	@Override
+	public void addAll(Collection<? extends ZSortable> objects) throws AlreadyInCollectionException {
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		BulkChecks.assertNotInCollection(objects);
+		int before = size;
+		splice(objects);
+		recorder.added(size - before);
+		
+		if (event.shouldCommit()) {
+			event.set(this, "addAll", size - before, objects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#removeAll(Collection)}
+	 */
+	@Override
+	public void removeAll(Collection<? extends ZSortable> objects) {
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		int before = size;
+		for (ZSortable object : objects) {
+			if (object != null && object.getCurrentLink() != null) {
+				remove(object);
+			}
+		}
+		
+		if (event.shouldCommit()) {
+			event.set(this, "removeAll", before - size, objects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#changeAll(Collection)}
+	 */
+	@Override
+	public void changeAll(Collection<? extends ZSortable> objects) {
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		for (ZSortable object : objects) {
+			if (object != null && owns(object)) {
+				unlink(object);
+			}
+		}
+		
+		int before = size;
+		splice(objects);
+		recorder.changed(size - before);
+		
+		if (event.shouldCommit()) {
+			event.set(this, "changeAll", size - before, objects);
+			event.commit();
+		}
+	}
+
+	/**
+	 * @see {@link ZCollection#markDirty(ZSortable)}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void markDirty(ZSortable object) {
+		if (object != null && owns(object)) {
+			// links are always created by one of our buckets
+			dirty.mark((ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink());
 		}
 	}
+	
+	/**
+	 * Compares every marked object's Z-order with its bucket's, and moves the
+	 * ones that differ one by one, so a bucket that some objects leave and
+	 * others enter is not closed and reopened
+	 * 
+	 * @see {@link ZCollection#commit()}
+	 */
+	@Override
+	public void commit() {
+		if (dirty.isEmpty()) {
+			return;
+		}
+		
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		List<ZSortable> moved = dirty.drain(BUCKET_Z);
+		for (int i = 0 ; i < moved.size() ; ++i) {
+			change(moved.get(i));
+		}
+		
+		if (event.shouldCommit()) {
+			event.set(this, "commit", moved.size(), moved);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#setAutoCommit(boolean)}
+	 */
+	@Override
+	public void setAutoCommit(boolean autoCommit) {
+		this.autoCommit = autoCommit;
+	}
+
+	/**
+	 * @see {@link ZCollection#size()}
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @see {@link ZCollection#isEmpty()}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Finds the bucket the same way ranged traversal does, and reads its size
+	 * 
+	 * @see {@link ZCollection#countAt(int)}
+	 */
+	@Override
+	public int countAt(int zOrder) {
+		ListWithZ bucket = floorBucket(zOrder).object;
+		return bucket.Z == zOrder ? bucket.List.size() : 0;
+	}
 
 	/**
 	 * @see {@link ZCollection#backToFrontIterator()}
 	 */
 	@Override
 	public Iterator<ZSortable> backToFrontIterator() {
-		return new MultiBucketIterator<ZSortable>(new MyBucketsIterable(), false);
+		return backToFrontIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
 	}
 
 	/**
@@ -186,59 +411,707 @@ public class FixedPointZCollection implements ZCollection {
 	 */
 	@Override
 	public Iterator<ZSortable> frontToBackIterator() {
-		return new MultiBucketIterator<ZSortable>(new MyBucketsIterable(), true);
+		return frontToBackIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachBackToFront(Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(Consumer<? super ZSortable> action) {
+		forEachBackToFront(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachFrontToBack(Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(Consumer<? super ZSortable> action) {
+		forEachFrontToBack(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#backToFrontIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MultiBucketIterator<ZSortable>(new MyBucketsIterable(zLow, zHigh), false, this::remove);
+	}
+	
+	/**
+	 * @see {@link ZCollection#frontToBackIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MultiBucketIterator<ZSortable>(new MyBucketsIterable(zLow, zHigh), true, this::remove);
+	}
+	
+	/**
+	 * Jumps to the first bucket in range through the predetermined buckets, then walks the buckets list
+	 * and the links of every bucket directly up to the upper bound
+	 * 
+	 * @see {@link ZCollection#forEachBackToFront(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (zLow > zHigh) {
+			return;
+		}
+		
+		ZCollectionEvents.Traversal event = new ZCollectionEvents.Traversal();
+		event.begin();
+		int visitedBuckets = 0;
+		int visitedObjects = 0;
+		ExposedLinkedList<ListWithZ>.ExposedLink bucket = ceilingBucket(zLow);
+		while (bucket != null && bucket.object.Z <= zHigh) {
+			++visitedBuckets;
+			ExposedLinkedList<ZSortable>.ExposedLink link = bucket.object.List.getHead();
+			while (link != null) {
+				// fetch next link first, in case the action removes the object
+				ExposedLinkedList<ZSortable>.ExposedLink next = link.next;
+				action.accept(link.object);
+				++visitedObjects;
+				link = next;
+			}
+			// a closed bucket still points at its neighbours
+			bucket = bucket.next;
+		}
+		recorder.traversed(visitedBuckets, visitedObjects);
+		
+		if (event.shouldCommit()) {
+			event.set(this, false, zLow, zHigh, visitedBuckets, visitedObjects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Jumps to the last bucket in range through the predetermined buckets, then walks the buckets list
+	 * and the links of every bucket directly down to the lower bound
+	 * 
+	 * @see {@link ZCollection#forEachFrontToBack(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (zLow > zHigh) {
+			return;
+		}
+		
+		ZCollectionEvents.Traversal event = new ZCollectionEvents.Traversal();
+		event.begin();
+		int visitedBuckets = 0;
+		int visitedObjects = 0;
+		ExposedLinkedList<ListWithZ>.ExposedLink bucket = floorBucket(zHigh);
+		while (bucket != null && bucket.object.Z >= zLow) {
+			++visitedBuckets;
+			ExposedLinkedList<ZSortable>.ExposedLink link = bucket.object.List.getTail();
+			while (link != null) {
+				// fetch next link first, in case the action removes the object
+				ExposedLinkedList<ZSortable>.ExposedLink prev = link.prev;
+				action.accept(link.object);
+				++visitedObjects;
+				link = prev;
+			}
+			// a closed bucket still points at its neighbours
+			bucket = bucket.prev;
+		}
+		recorder.traversed(visitedBuckets, visitedObjects);
+		
+		if (event.shouldCommit()) {
+			event.set(this, true, zLow, zHigh, visitedBuckets, visitedObjects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Splits the buckets where about half of the objects are on each side
+	 * 
+	 * @see {@link ZCollection#spliterator()}
+	 */
+	@Override
+	public Spliterator<ZSortable> spliterator() {
+		prepareTraversal();
+		return new MySpliterator(buckets.getHead(), null, size);
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @return Fixed-point pivot (=1), the spacing of predetermined Z-orders
+	 */
+	public int getPivot() {
+		return pivot;
+	}
+	
+	/**
+	 * Turns auto-tuning of the pivot on or off.
+	 * 
+	 * While on, one in {@value #TUNING_RATE} Z-orders given to the collection is
+	 * sampled. Once {@value #TUNING_SAMPLES} samples are taken, the next traversal
+	 * checks whether {@value #TUNING_COVERAGE}% of them are predetermined. If not,
+	 * and the greatest common divisor of the most frequent sampled Z-orders would
+	 * make clearly more of them predetermined, it becomes the pivot. Z-orders below 0
+	 * and above maxZ * pivot count as predetermined if their regions can reach them.
+	 * Re-spacing the predetermined Z-orders takes O(n) for n open buckets, leaves
+	 * objects in their buckets, and keeps the regions opened so far.
+	 * 
+	 * @param autoTune Whether to tune the pivot to the Z-orders in use
+	 */
+	public void setAutoTune(boolean autoTune) {
+		if (autoTune && samples == null) {
+			samples = new int[TUNING_SAMPLES];
+		}
+		this.autoTune = autoTune;
+		sampled = 0;
+	}
+	
+	/**
+	 * Attaches statistics to the collection, which counts its operations into them from now on
+	 * @param stats Statistics to attach, or null to detach them
+	 */
+	public void setStats(ZCollectionStats stats) {
+		this.stats = stats;
+		this.recorder = stats == null ? StatsRecorder.NONE : stats;
+	}
+	
+	/**
+	 * Brings the bucket figures of the attached statistics up to date.
+	 * Only predetermined buckets are ever empty, so counting them takes O(p) for
+	 * p predetermined buckets.
+	 * 
+	 * @return Attached statistics, or null if none are attached
+	 */
+	public ZCollectionStats getStats() {
+		if (stats != null) {
+			int empty = 0;
+			for (ExposedLinkedList<ListWithZ>.ExposedLink link : quickAccess) {
+				if (link != null && link.object.List.isEmpty()) {
+					++empty;
+				}
+			}
+			if (buckets.getHead().object.List.isEmpty()) {
+				++empty;
+			}
+			if (maxLevelList.object.List.isEmpty()) {
+				++empty;
+			}
+			
+			stats.sample(buckets.size(), empty, dynamicBuckets,
+				(long)size * ZCollectionStats.LINK_BYTES + (long)buckets.size() * BUCKET_BYTES);
+		}
+		return stats;
+	}
+	
+	/* --- Package Methods --- */
+	
+	/**
+	 * @return Number of open buckets, other than the predetermined ones
+	 */
+	/* package */ int getDynamicBucketCount() {
+		return dynamicBuckets;
+	}
+	
+	/**
+	 * @param object Object to look for
+	 * @return Whether the object is in this collection, in constant time
+	 */
+	/* package */ boolean owns(ZSortable object) {
+		if (!(object.getCurrentLink() instanceof ExposedLinkedList.ExposedLink)) {
+			return false;
+		}
+		
+		ExposedLinkedList<?> list = ((ExposedLinkedList<?>.ExposedLink)object.getCurrentLink()).getList();
+		if (!(list instanceof BucketList)) {
+			return false;
+		}
+		
+		// every bucket is either predetermined or follows one
+		ListWithZ bucket = ((BucketList)list).Owner;
+		ListWithZ predetermined = bucket.Anchor != null ? bucket.Anchor : bucket;
+		if (predetermined == buckets.getHead().object || predetermined == maxLevelList.object) {
+			return true;
+		}
+		
+		int index = predetermined.Z / pivot;
+		return predetermined.Z % pivot == 0 && index >= low && index <= high &&
+			quickAccess[index - low] != null && quickAccess[index - low].object == predetermined;
 	}
 	
 	/* --- Private Methods --- */
 	
 	/**
-	 * Adds the given object to the given bucket if there's a Z match,
-	 * or creates a new bucket before/after given bucket for the object. 
+	 * Commits marked objects before a traversal, or fails if auto-commit is off
+	 */
+	private void prepareTraversal() {
+		if (!dirty.isEmpty()) {
+			if (!autoCommit) {
+				throw new IllegalStateException("Uncommitted changes, call commit() before traversal");
+			}
+			commit();
+		}
+		
+		if (sampled == TUNING_SAMPLES) {
+			tune();
+		}
+	}
+	
+	/**
+	 * Adds objects that are known to be not in a collection, skipping
+	 * nulls and objects given twice
+	 * @param objects Objects to add
+	 */
+	private void splice(Collection<? extends ZSortable> objects) {
+		ListWithZ bucket = null;
+		for (ZSortable object : objects) {
+			if (object == null || object.getCurrentLink() != null) {
+				continue;
+			}
+			
+			int zOrder = object.getZOrder();
+			if (bucket == null || bucket.Z != zOrder) {
+				// a new run
+				bucket = findOrCreateBucket(zOrder);
+			}
+			object.setCurrentLink(bucket.List.append(object));
+			++size;
+		}
+	}
+	
+	/**
+	 * Appends an object to the bucket of its Z-order, opening one if needed
+	 * @param object Object to append, not in the collection
+	 */
+	private void link(ZSortable object) {
+		object.setCurrentLink(findOrCreateBucket(object.getZOrder()).List.append(object));
+		++size;
+	}
+	
+	/**
+	 * Unlinks an object, and closes its bucket if it was opened for a non-optimized
+	 * Z-order and is now empty
+	 * @param object Object to unlink, in the collection
+	 */
+	@SuppressWarnings("unchecked")
+	private void unlink(ZSortable object) {
+		// links are always created by one of our buckets
+		ExposedLinkedList<ZSortable>.ExposedLink link =
+			(ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink();
+		link.unlink();
+		object.setCurrentLink(null);
+		--size;
+		
+		closeIfEmpty(((BucketList)link.getList()).Owner);
+	}
+	
+	/**
+	 * Finds the bucket representing the given Z-order, or opens a new bucket if none exists.
 	 * 
-	 * @param object Object to add
-	 * @param bucket Bucket to work with
-	 * @param after Whether to add new bucket before or after given bucket
-	 * @return Link to object-in-bucket
-	 */
-	private Unlinkable addOrCreateBucket(
-			ZSortable object,
-			ExposedLinkedList<ListWithZ>.ExposedLink bucket,
-			boolean after) {
-		int zOrder = object.getZOrder();
-		if (bucket.object.Z == zOrder) {
-			// existing bucket
-			return bucket.object.List.append(object);
+	 * @param zOrder Z-order to look for
+	 * @return The bucket
+	 */
+	private ListWithZ findOrCreateBucket(int zOrder) {
+		if (autoTune) {
+			sample(zOrder);
+		}
+		
+		if (zOrder == Integer.MAX_VALUE) {
+			// special case, default for all new sprites
+			return maxLevelList.object;
+		}
+		
+		int index = Math.floorDiv(zOrder, pivot);
+		if ((index < low || index > high) && !grow(index)) {
+			// beyond the regions - look for an existing bucket after the first
+			// (always empty) bucket or the last predetermined one, or a place for new one
+			return findOrCreateBucket(zOrder, index < low ? buckets.getHead().object : anchorAt(high));
+		}
+		
+		ExposedLinkedList<ListWithZ>.ExposedLink predetermined = quickAccess[index - low];
+		if (predetermined != null) {
+			// the optimized Z-order itself, or an existing bucket after it, or a place for new one
+			return findOrCreateBucket(zOrder, predetermined.object);
+		} else if (zOrder == index * pivot) {
+			// first use of the optimized Z-order
+			return openPredetermined(index);
 		} else {
-			// open a new bucket
-			ListWithZ listWithZ = new ListWithZ(zOrder);				
-			ExposedLinkedList<ListWithZ>.ExposedLink link = buckets.new ExposedLink(listWithZ);
+			// an existing bucket after the closest open optimized Z-order, or a place for new one
+			return findOrCreateBucket(zOrder, anchorAt(index));
+		}
+	}
+	
+	/**
+	 * Finds the given predetermined bucket if there's a Z match, one of the buckets
+	 * opened after it, or opens a new bucket for the given Z-order.
+	 * 
+	 * @param zOrder Z-order to look for
+	 * @param anchor Predetermined bucket with the greatest Z-order that is
+	 *               less than or equals to the given Z-order
+	 * @return The bucket
+	 */
+	private ListWithZ findOrCreateBucket(int zOrder, ListWithZ anchor) {
+		if (anchor.Z == zOrder) {
+			// existing bucket
+			return anchor;
+		}
+		
+		if (anchor.Followers == null) {
+			anchor.Followers = new SortedBuckets();
+		}
+		
+		int index = searchFollowers(anchor, zOrder);
+		if (index >= 0) {
+			// existing bucket
+			return anchor.Followers.get(index);
+		}
+		
+		// open a new bucket right after the one preceding it
+		ZCollectionEvents.Bucket event = new ZCollectionEvents.Bucket();
+		event.begin();
+		index = -index - 1;
+		ListWithZ previous = index == 0 ? anchor : anchor.Followers.get(index - 1);
+		
+		ListWithZ listWithZ = new ListWithZ(zOrder, anchor);
+		listWithZ.Link = buckets.insertAfter(previous.Link, listWithZ);
+		anchor.Followers.insert(index, listWithZ);
+		++dynamicBuckets;
+		
+		if (event.shouldCommit()) {
+			event.set(this, true, zOrder, anchor.Z, dynamicBuckets);
+			event.commit();
+		}
+		return listWithZ;
+	}
+	
+	/**
+	 * @param z Z-order
+	 * @return Link of the first open bucket with a Z-order that is greater
+	 *         than or equals to z, or null if there is none
+	 */
+	private ExposedLinkedList<ListWithZ>.ExposedLink ceilingBucket(int z) {
+		ListWithZ floor = floorBucket(z).object;
+		return floor.Z == z ? floor.Link : floor.Link.next;
+	}
+	
+	/**
+	 * @param z Z-order
+	 * @return Link of the last open bucket with a Z-order that is less than
+	 *         or equals to z. There is always one, as the first bucket is at
+	 *         the minimal Z-order.
+	 */
+	private ExposedLinkedList<ListWithZ>.ExposedLink floorBucket(int z) {
+		if (z == Integer.MAX_VALUE) {
+			return maxLevelList;
+		}
+		
+		int predetermined = Math.floorDiv(z, pivot);
+		ListWithZ anchor = predetermined < low ? buckets.getHead().object : anchorAt(Math.min(high, predetermined));
+		
+		if (anchor.Z == z || anchor.Followers == null) {
+			return anchor.Link;
+		}
+		
+		int index = searchFollowers(anchor, z);
+		if (index >= 0) {
+			return anchor.Followers.get(index).Link;
+		}
+		
+		index = -index - 1;
+		return index == 0 ? anchor.Link : anchor.Followers.get(index - 1).Link;
+	}
+	
+	/**
+	 * Closes the given bucket if it was opened for a non-optimized Z-order and is empty
+	 * @param bucket Bucket to check
+	 */
+	private void closeIfEmpty(ListWithZ bucket) {
+		if (bucket.Anchor != null && bucket.List.isEmpty()) {
+			ZCollectionEvents.Bucket event = new ZCollectionEvents.Bucket();
+			event.begin();
+			bucket.Link.unlink();
+			bucket.Anchor.Followers.remove(bucket);
+			--dynamicBuckets;
 			
-			if (after) {
-				link.prev = bucket;
-				link.next = bucket.next;
-				
-				if (link.prev != null) {
-					link.prev.next = link;
-				}
-				
-				if (link.next != null) { 
-					link.next.prev = link;
+			if (event.shouldCommit()) {
+				event.set(this, false, bucket.Z, bucket.Anchor.Z, dynamicBuckets);
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Searches the buckets opened after a predetermined one, reporting searches
+	 * among many of them as {@link ZCollectionEvents.SlowBucketSearch} events
+	 * 
+	 * @param anchor Predetermined bucket with buckets opened after it
+	 * @param z Z-order to look for
+	 * @return Index of the bucket of the Z-order, or (-(insertion point) - 1)
+	 */
+	private int searchFollowers(ListWithZ anchor, int z) {
+		int followers = anchor.Followers.size();
+		recorder.searched(followers);
+		if (followers < ZCollectionEvents.SLOW_SEARCH_BUCKETS) {
+			return anchor.Followers.search(z);
+		}
+		
+		ZCollectionEvents.SlowBucketSearch event = new ZCollectionEvents.SlowBucketSearch();
+		event.begin();
+		int index = anchor.Followers.search(z);
+		if (event.shouldCommit()) {
+			event.set(this, z, anchor.Z, followers);
+			event.commit();
+		}
+		return index;
+	}
+	
+	/**
+	 * Takes one in {@link #TUNING_RATE} looked up Z-orders as a sample, until
+	 * there are enough samples to tune the pivot by
+	 * @param zOrder Z-order looked up
+	 */
+	private void sample(int zOrder) {
+		if ((++lookups & (TUNING_RATE - 1)) == 0 && sampled < TUNING_SAMPLES) {
+			samples[sampled++] = zOrder;
+		}
+	}
+	
+	/**
+	 * Re-spaces the predetermined Z-orders if the samples taken are not predetermined
+	 * often enough, and another pivot would make clearly more of them predetermined
+	 */
+	private void tune() {
+		sampled = 0;
+		int hits = countPredetermined(pivot);
+		if (hits * 100 >= TUNING_SAMPLES * TUNING_COVERAGE) {
+			return;
+		}
+		
+		int candidate = candidatePivot();
+		if (candidate != pivot && countPredetermined(candidate) - hits >= TUNING_SAMPLES / 10) {
+			// keep the regions opened so far, covering the same Z-orders with the new pivot
+			long lowZ = (long)low * pivot;
+			long highZ = (long)high * pivot;
+			reindex(candidate,
+				(int)Math.max(lowestIndex(candidate), Math.floorDiv(lowZ, (long)candidate)),
+				(int)Math.min(highestIndex(candidate), Math.max(maxZ, -Math.floorDiv(-highZ, (long)candidate))));
+		}
+	}
+	
+	/**
+	 * @param spacing Pivot to check
+	 * @return Number of samples that would be predetermined Z-orders with the given pivot,
+	 *         once the regions below 0 and above maxZ are opened as far as they can
+	 */
+	private int countPredetermined(int spacing) {
+		int lowest = lowestIndex(spacing);
+		int highest = highestIndex(spacing);
+		int count = 0;
+		for (int z : samples) {
+			if (z == Integer.MAX_VALUE) {
+				++count;
+			} else if (Math.floorMod(z, spacing) == 0) {
+				int index = Math.floorDiv(z, spacing);
+				if (index >= lowest && index <= highest) {
+					++count;
 				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Finds the greatest common divisor of the most frequent sampled Z-orders that
+	 * cover {@link #TUNING_COVERAGE}% of the samples
+	 * @return The divisor, or the current pivot if the Z-orders cannot all be predetermined
+	 */
+	private int candidatePivot() {
+		int[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		
+		// pack every distinct Z-order a pivot can cover with its count, so that
+		// sorting the negated values puts the most frequent first
+		long[] frequent = new long[sorted.length];
+		int distinct = 0;
+		int covered = 0;
+		for (int i = 0, j = 0 ; i < sorted.length ; i = j) {
+			while (j < sorted.length && sorted[j] == sorted[i]) {
+				++j;
+			}
+			
+			if (sorted[i] == Integer.MAX_VALUE) {
+				// always predetermined
+				covered += j - i;
+			} else if (sorted[i] != Integer.MIN_VALUE) {
+				// beyond any region below 0, and has no absolute value
+				frequent[distinct++] = -((long)(j - i) << 32 | (sorted[i] & 0xFFFFFFFFL));
+			}
+		}
+		Arrays.sort(frequent, 0, distinct);
+		
+		int divisor = 0;
+		int lowest = 0;
+		int highest = 0;
+		for (int i = 0 ; i < distinct && covered * 100 < TUNING_SAMPLES * TUNING_COVERAGE ; ++i) {
+			int z = (int)-frequent[i];
+			covered += (int)(-frequent[i] >>> 32);
+			lowest = Math.min(lowest, z);
+			highest = Math.max(highest, z);
+			z = Math.abs(z);
+			for (int other = divisor ; other != 0 ; ) {
+				int remainder = z % other;
+				z = other;
+				other = remainder;
+			}
+			divisor = z;
+		}
+		
+		if (divisor == 0 || covered * 100 < TUNING_SAMPLES * TUNING_COVERAGE ||
+			(long)maxZ * divisor >= Integer.MAX_VALUE ||
+			lowest / divisor < lowestIndex(divisor) || highest / divisor > highestIndex(divisor)) {
+			return pivot;
+		}
+		return divisor;
+	}
+	
+	/**
+	 * Opens the region of predetermined Z-orders below 0 or above maxZ, or doubles it,
+	 * so that it covers the given index. Regions are limited to maxZ + 1 pivots.
+	 * @param index Index of the predetermined Z-order at or before a Z-order, outside
+	 *              the quick access table
+	 * @return Whether the quick access table covers the index now, false if it can't
+	 */
+	private boolean grow(int index) {
+		// in long, since -index overflows for Integer.MIN_VALUE with pivot 1
+		if (index < low) {
+			long size = Math.min(Math.max(-(long)index, -2L * low), -(long)lowestIndex(pivot));
+			if (-(long)index > size) {
+				return false;
+			}
+			reindex(pivot, (int)-size, high);
+		} else {
+			long size = Math.min(Math.max((long)index - maxZ, 2L * (high - maxZ)), (long)highestIndex(pivot) - maxZ);
+			if ((long)index - maxZ > size) {
+				return false;
+			}
+			reindex(pivot, low, (int)(maxZ + size));
+		}
+		return true;
+	}
+	
+	/**
+	 * @param spacing Pivot, with maxZ * spacing less than Integer.MAX_VALUE
+	 * @return Index of the first predetermined Z-order the region below 0 can reach,
+	 *         keeping index * spacing above Integer.MIN_VALUE
+	 */
+	private int lowestIndex(int spacing) {
+		return (int)-Math.min((long)maxZ + 1, Integer.MAX_VALUE / spacing);
+	}
+	
+	/**
+	 * @param spacing Pivot, with maxZ * spacing less than Integer.MAX_VALUE
+	 * @return Index of the last predetermined Z-order the region above maxZ can reach,
+	 *         keeping index * spacing below Integer.MAX_VALUE
+	 */
+	private int highestIndex(int spacing) {
+		return (int)(maxZ + Math.min((long)maxZ + 1, (Integer.MAX_VALUE - 1) / spacing - maxZ));
+	}
+	
+	/**
+	 * Re-spaces the predetermined Z-orders or changes their range, in O(n + p) for
+	 * n open buckets and p predetermined Z-orders. Open buckets keep their objects,
+	 * and become either predetermined or followers of the predetermined bucket before
+	 * them. Predetermined buckets that are no longer predetermined are closed if empty.
+	 * @param pivot New pivot
+	 * @param low Index of the first predetermined Z-order
+	 * @param high Index of the last predetermined Z-order
+	 */
+	private void reindex(int pivot, int low, int high) {
+		this.pivot = pivot;
+		this.low = low;
+		this.high = high;
+		quickAccess = newQuickAccess(high - low + 1);
+		opened = new OccupancyBitmap(quickAccess.length);
+		dynamicBuckets = 0;
+		
+		ListWithZ anchor = buckets.getHead().object;
+		anchor.Followers = null;
+		ExposedLinkedList<ListWithZ>.ExposedLink link = anchor.Link.next;
+		while (link != maxLevelList) {
+			ExposedLinkedList<ListWithZ>.ExposedLink following = link.next;
+			ListWithZ bucket = link.object;
+			bucket.Followers = null;
+			
+			int index = bucket.Z / pivot;
+			if (bucket.Z % pivot == 0 && index >= low && index <= high) {
+				bucket.Anchor = null;
+				quickAccess[index - low] = link;
+				opened.set(index - low);
+				anchor = bucket;
+			} else if (bucket.List.isEmpty()) {
+				// previously predetermined
+				link.unlink();
 			} else {
-				link.prev = bucket.prev;
-				link.next = bucket;
-				
-				if (link.prev != null) {
-					link.prev.next = link;
-				}
-				
-				if (link.next != null) { 
-					link.next.prev = link;
+				bucket.Anchor = anchor;
+				if (anchor.Followers == null) {
+					anchor.Followers = new SortedBuckets();
 				}
+				anchor.Followers.insert(anchor.Followers.size(), bucket);
+				++dynamicBuckets;
+			}
+			link = following;
+		}
+	}
+	
+	/**
+	 * @param length Number of predetermined Z-orders
+	 * @return An empty quick-access array. Arrays of the inner link type can only be created raw.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ExposedLinkedList<ListWithZ>.ExposedLink[] newQuickAccess(int length) {
+		return new ExposedLinkedList.ExposedLink[length];
+	}
+	
+	/**
+	 * @param index Index of a predetermined Z-order, in the quick access table
+	 * @return The open predetermined bucket with the greatest Z-order up to the given
+	 *         one, or the first bucket if there is none
+	 */
+	private ListWithZ anchorAt(int index) {
+		int position = opened.previousSetBit(index - low);
+		return position < 0 ? buckets.getHead().object : quickAccess[position].object;
+	}
+	
+	/**
+	 * Opens an empty predetermined bucket, taking over the buckets after it from the
+	 * closest open predetermined bucket before it
+	 * @param index Index of the bucket's Z-order, in the quick access table
+	 * @return The bucket
+	 */
+	private ListWithZ openPredetermined(int index) {
+		ListWithZ anchor = anchorAt(index);
+		ListWithZ bucket = new ListWithZ(index * pivot, null);
+		ListWithZ previous = anchor;
+		if (anchor.Followers != null) {
+			// predetermined Z-orders in range never have a bucket of their own
+			int split = -anchor.Followers.search(bucket.Z) - 1;
+			if (split > 0) {
+				previous = anchor.Followers.get(split - 1);
 			}
 			
-			return link.object.List.append(object);
+			bucket.Followers = anchor.Followers.split(split);
+			if (bucket.Followers != null) {
+				for (int i = 0 ; i < bucket.Followers.size() ; ++i) {
+					bucket.Followers.get(i).Anchor = bucket;
+				}
+			}
 		}
+		
+		bucket.Link = buckets.insertAfter(previous.Link, bucket);
+		quickAccess[index - low] = bucket.Link;
+		opened.set(index - low);
+		return bucket;
 	}
 	
 	/* --- Inner Classes --- */
@@ -256,29 +1129,188 @@ public class FixedPointZCollection implements ZCollection {
 		/**
 		 * Initializes an empty list
 		 * @param z List's Z-order
+		 * @param anchor Predetermined list this list follows, or null if this
+		 *               list is predetermined
 		 */
-		public ListWithZ(int z) {
-			this.List = new ExposedLinkedList<ZSortable>();
+		public ListWithZ(int z, ListWithZ anchor) {
+			this.List = new BucketList(this);
 			this.Z = z;
+			this.Anchor = anchor;
 		}
 		
 		/* --- Fields --- */
 		
 		/** Encapsulated list */
-		public final ExposedLinkedList<ZSortable> List;
+		public final BucketList List;
 		
 		/** List's Z-order */
 		public final int Z;
+		
+		/**
+		 * Predetermined list this list follows, or null if this list is predetermined.
+		 * Lists that follow another list are closed once empty. Changes when the
+		 * predetermined Z-orders are re-spaced.
+		 */
+		public ListWithZ Anchor;
+		
+		/** This list's link in the list of open buckets */
+		public ExposedLinkedList<ListWithZ>.ExposedLink Link;
+		
+		/** Lists opened between this predetermined list and the next one, created on demand */
+		public SortedBuckets Followers;
+	}
+	
+	/**
+	 * A sorted array of lists, searchable by Z-order
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class SortedBuckets {
+		
+		/* --- Fields --- */
+		
+		/** Z-orders of the lists, sorted */
+		private int[] keys = new int[4];
+		
+		/** Lists, in the same order as the keys */
+		private ListWithZ[] lists = new ListWithZ[4];
+		
+		/** Number of lists */
+		private int size;
+		
+		/* --- Public Methods --- */
+		
+		/**
+		 * Binary searches a Z-order
+		 * @param z Z-order to look for
+		 * @return The list's index, or (-(insertion point) - 1) if not found
+		 */
+		public int search(int z) {
+			return Arrays.binarySearch(keys, 0, size, z);
+		}
+		
+		/**
+		 * @return Number of lists
+		 */
+		public int size() {
+			return size;
+		}
+		
+		/**
+		 * @param index List's index
+		 * @return The list
+		 */
+		public ListWithZ get(int index) {
+			return lists[index];
+		}
+		
+		/**
+		 * Inserts a list, keeping the array sorted
+		 * @param index Insertion point, as given by {@link #search(int)}
+		 * @param list List to insert
+		 */
+		public void insert(int index, ListWithZ list) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				lists = Arrays.copyOf(lists, size * 2);
+			}
+			
+			System.arraycopy(keys, index, keys, index + 1, size - index);
+			System.arraycopy(lists, index, lists, index + 1, size - index);
+			keys[index] = list.Z;
+			lists[index] = list;
+			++size;
+		}
+		
+		/**
+		 * Moves the lists from the given index on to a new array
+		 * @param index Index of the first list to move
+		 * @return Array of the moved lists, or null if there are none
+		 */
+		public SortedBuckets split(int index) {
+			if (index == size) {
+				return null;
+			}
+			
+			SortedBuckets tail = new SortedBuckets();
+			int capacity = Math.max(size - index, 4);
+			tail.keys = Arrays.copyOfRange(keys, index, index + capacity);
+			tail.lists = Arrays.copyOfRange(lists, index, index + capacity);
+			tail.size = size - index;
+			
+			Arrays.fill(lists, index, size, null);
+			size = index;
+			return tail;
+		}
+		
+		/**
+		 * Removes a list
+		 * @param list List to remove, must be in the array
+		 */
+		public void remove(ListWithZ list) {
+			int index = search(list.Z);
+			--size;
+			System.arraycopy(keys, index + 1, keys, index, size - index);
+			System.arraycopy(lists, index + 1, lists, index, size - index);
+			lists[size] = null;
+		}
+	}
+	
+	/**
+	 * A list of objects that knows the {@link ListWithZ} that wraps it
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class BucketList extends ExposedLinkedList<ZSortable> {
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Initializes an empty list
+		 * @param owner Wrapping list
+		 */
+		public BucketList(ListWithZ owner) {
+			this.Owner = owner;
+		}
+		
+		/* --- Fields --- */
+		
+		/** Wrapping list */
+		public final ListWithZ Owner;
 	}
 	
 	/**
-	 * Auxiliary class that wraps a list of {@link ListWithZ} and exposes an iterator
+	 * Auxiliary class that wraps the open buckets within a Z-range and exposes an iterator
 	 * of exposed lists over {@link ZSortable}
 	 * 
 	 * @author itayd
 	 *
 	 */
 	private class MyBucketsIterable implements ReverseIterable<ExposedLinkedList<ZSortable>> {
+		
+		/* --- Fields --- */
+		
+		/** Lowest Z-order in range */
+		private final int zLow;
+		
+		/** Highest Z-order in range */
+		private final int zHigh;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param zLow Lowest Z-order in range
+		 * @param zHigh Highest Z-order in range
+		 */
+		public MyBucketsIterable(int zLow, int zHigh) {
+			this.zLow = zLow;
+			this.zHigh = zHigh;
+		}
+		
+		/* --- ReverseIterable Methods --- */
 	
 		/**
 		 * @see ReverseIterable#iterator()
@@ -287,16 +1319,18 @@ public class FixedPointZCollection implements ZCollection {
 		public Iterator<ExposedLinkedList<ZSortable>> iterator() {
 			return new Iterator<ExposedLinkedList<ZSortable>>() {
 				
-				Iterator<ListWithZ> iterator = buckets.iterator();
+				ExposedLinkedList<ListWithZ>.ExposedLink bucket = zLow > zHigh ? null : ceilingBucket(zLow);
 				
 				@Override
 				public boolean hasNext() {
-					return iterator.hasNext();
+					return bucket != null && bucket.object.Z <= zHigh;
 				}
 
 				@Override
 				public ExposedLinkedList<ZSortable> next() {
-					return iterator.next().List;
+					ListWithZ result = bucket.object;
+					bucket = bucket.next;
+					return result.List;
 				}
 
 				@Override
@@ -313,16 +1347,18 @@ public class FixedPointZCollection implements ZCollection {
 		public Iterator<ExposedLinkedList<ZSortable>> reverseIterator() {
 			return new Iterator<ExposedLinkedList<ZSortable>>() {
 				
-				Iterator<ListWithZ> iterator = buckets.reverseIterator();
+				ExposedLinkedList<ListWithZ>.ExposedLink bucket = zLow > zHigh ? null : floorBucket(zHigh);
 				
 				@Override
 				public boolean hasNext() {
-					return iterator.hasNext();
+					return bucket != null && bucket.object.Z >= zLow;
 				}
 
 				@Override
 				public ExposedLinkedList<ZSortable> next() {
-					return iterator.next().List;
+					ListWithZ result = bucket.object;
+					bucket = bucket.prev;
+					return result.List;
 				}
 
 				@Override
@@ -332,4 +1368,83 @@ public class FixedPointZCollection implements ZCollection {
 			};
 		}
 	}
+	
+	/**
+	 * Spliterator over a run of consecutive buckets
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class MySpliterator extends BucketSpliterator {
+		
+		/* --- Fields --- */
+		
+		/** Next bucket to yield */
+		private ExposedLinkedList<ListWithZ>.ExposedLink bucket;
+		
+		/** Bucket right after the range, or null if the range ends with the last bucket */
+		private final ExposedLinkedList<ListWithZ>.ExposedLink end;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param bucket First bucket in range
+		 * @param end Bucket right after the range, or null if the range ends with the last bucket
+		 * @param estimate Estimated number of objects in range
+		 */
+		public MySpliterator(ExposedLinkedList<ListWithZ>.ExposedLink bucket,
+				ExposedLinkedList<ListWithZ>.ExposedLink end, long estimate) {
+			super(estimate);
+			this.bucket = bucket;
+			this.end = end;
+		}
+		
+		/* --- BucketSpliterator Methods --- */
+		
+		/**
+		 * @see {@link BucketSpliterator#nextBucket()}
+		 */
+		@Override
+		protected ExposedLinkedList<ZSortable> nextBucket() {
+			if (bucket == end) {
+				return null;
+			}
+			
+			ListWithZ result = bucket.object;
+			bucket = bucket.next;
+			return result.List;
+		}
+		
+		/**
+		 * Splits where about half of the objects are on each side, walking the buckets
+		 * of the lower part to count their objects. Predetermined buckets may be empty,
+		 * so splitting at the middle bucket could leave a part with no objects.
+		 * 
+		 * @see {@link BucketSpliterator#splitPrefix()}
+		 */
+		@Override
+		protected BucketSpliterator splitPrefix() {
+			long half = estimateSize() >>> 1;
+			long objects = 0;
+			ExposedLinkedList<ListWithZ>.ExposedLink mid = bucket;
+			
+			// the prefix takes at least one object, and no more than half after that
+			while (mid != end) {
+				int count = mid.object.List.size();
+				if (objects > 0 && objects + count > half) {
+					break;
+				}
+				objects += count;
+				mid = mid.next;
+			}
+			if (mid == end || objects >= estimateSize()) {
+				return null;
+			}
+			
+			BucketSpliterator prefix = new MySpliterator(bucket, mid, objects);
+			bucket = mid;
+			return prefix;
+		}
+	}
 }
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * A variant of {@link SimpleZCollection} that stores no objects at all:
+ * elements are int handles, and their links are kept in parallel int arrays
+ * (next, previous and bucket per handle), supporting bounded, natural Z-orders.
+ * 
+ * Handles are either taken from {@link #allocate()}, which recycles released
+ * handles through an int free list, or managed by the caller as small
+ * non-negative ints (e.g. entity indices). The arrays grow to fit the largest
+ * handle seen.
+ * 
+ * The links may also be kept off-heap, in a direct buffer, so that collections
+ * of millions of elements add nothing for the garbage collector to trace.
+ * 
+ * Memory footprint per handle (see {@link #getLinkBytes()}): 12 bytes of links
+ * (3 ints), either on the Java heap or off-heap. For comparison,
+ * {@link SimpleZCollection} costs a link object per element (32 bytes with
+ * compressed references: object header, next, prev, object and enclosing list
+ * references) plus the element's reference to it (4 bytes), all on the heap.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class IntHandleZCollection {
+	
+	/* --- Constants --- */
+	
+	/** Marks the end of a list, or a handle that is not in the collection */
+	private static final int NIL = -1;
+	
+	/** Z-level of a handle that was released and not allocated again */
+	private static final int RELEASED = -2;
+	
+	/** Default initial number of handles */
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	/* --- Fields --- */
+	
+	/** Max. allowed Z-order (inclusive) */
+	private final int maxZ;
+	
+	/** First handle of every Z-level */
+	private final int[] heads;
+	
+	/** Last handle of every Z-level */
+	private final int[] tails;
+	
+	/** Number of handles in every Z-level */
+	private final int[] counts;
+	
+	/** Number of handles in the collection */
+	private int size;
+	
+	/**
+	 * Per handle, next handle in the same Z-level (or in the free list),
+	 * previous handle in the same Z-level and the Z-level it is in, or {@link #NIL}
+	 */
+	private final IntLinks links;
+	
+	/** First released handle, chained through {@link IntLinks#next(int)} */
+	private int freeHead = NIL;
+	
+	/** Lowest handle never given out by {@link #allocate()} */
+	private int fresh;
+	
+	/* --- Constructors --- */
+	
+	/**
+	 * Initializes an empty collection.
+	 * 
+	 * @param maxZ Maximal allowed Z (inclusive).
+	 */
+	public IntHandleZCollection(int maxZ) {
+		this(maxZ, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Initializes an empty collection.
+	 * 
+	 * @param maxZ Maximal allowed Z (inclusive).
+	 * @param capacity Initial number of handles
+	 */
+	public IntHandleZCollection(int maxZ, int capacity) {
+		this(maxZ, capacity, false);
+	}
+	
+	/**
+	 * Initializes an empty collection.
+	 * 
+	 * @param maxZ Maximal allowed Z (inclusive).
+	 * @param capacity Initial number of handles
+	 * @param offHeap Whether to keep the links outside the Java heap
+	 */
+	public IntHandleZCollection(int maxZ, int capacity, boolean offHeap) {
+		this.maxZ = maxZ;
+		heads = new int[maxZ + 1];
+		tails = new int[maxZ + 1];
+		Arrays.fill(heads, NIL);
+		Arrays.fill(tails, NIL);
+		counts = new int[maxZ + 1];
+		
+		links = IntLinks.create(Math.max(1, capacity), NIL, offHeap);
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Gives out a handle that is not in use, recycling released handles first.
+	 * 
+	 * Handles given out by this method should not be mixed with handles managed by the caller.
+	 * 
+	 * @return A handle, not in the collection
+	 */
+	public int allocate() {
+		if (freeHead != NIL) {
+			int handle = freeHead;
+			freeHead = links.next(handle);
+			links.setBucket(handle, NIL);
+			return handle;
+		}
+		
+		ensureCapacity(fresh + 1);
+		return fresh++;
+	}
+	
+	/**
+	 * Removes the handle from the collection if needed, and makes it available to
+	 * {@link #allocate()} again
+	 * 
+	 * @param handle Handle given out by {@link #allocate()}
+	 * @throws IllegalArgumentException If the handle was not given out, or was already released
+	 */
+	public void release(int handle) {
+		if (handle < 0 || handle >= fresh) {
+			throw new IllegalArgumentException(
+				String.format("Invalid handle: %d, should be >= 0 and < %d", handle, fresh));
+		}
+		assertNotReleased(handle);
+		
+		remove(handle);
+		links.setNext(handle, freeHead);
+		links.setBucket(handle, RELEASED);
+		freeHead = handle;
+	}
+	
+	/**
+	 * Appends the given handle to the end of the correct bucket
+	 * 
+	 * @param handle Handle to add, non-negative
+	 * @param zOrder Handle's Z-order
+	 * @throws AlreadyInCollectionException Thrown when the handle is already in the collection.
+	 * @throws IllegalArgumentException If the Z-order is invalid, or the handle is negative or was released
+	 */
+	public void add(int handle, int zOrder) throws AlreadyInCollectionException {
+		assertZ(zOrder);
+		assertHandle(handle);
+		ensureCapacity(handle + 1);
+		assertNotReleased(handle);
+		
+		if (links.bucket(handle) >= 0) {
+			throw new AlreadyInCollectionException();
+		}
+		
+		append(handle, zOrder);
+	}
+	
+	/**
+	 * Removes the given handle from the collection
+	 * @param handle Handle to remove
+	 */
+	public void remove(int handle) {
+		if (contains(handle)) {
+			unlink(handle);
+		}
+	}
+	
+	/**
+	 * Moves the given handle to another Z-order, adding it if needed
+	 * @param handle Handle to move, non-negative
+	 * @param zOrder Handle's new Z-order
+	 * @throws IllegalArgumentException If the Z-order is invalid, or the handle is negative or was released
+	 */
+	public void change(int handle, int zOrder) {
+		assertZ(zOrder);
+		assertHandle(handle);
+		ensureCapacity(handle + 1);
+		assertNotReleased(handle);
+		
+		if (links.bucket(handle) >= 0) {
+			unlink(handle);
+		}
+		append(handle, zOrder);
+	}
+	
+	/**
+	 * @param handle Handle to check
+	 * @return Whether the handle is in the collection
+	 */
+	public boolean contains(int handle) {
+		return handle >= 0 && handle < links.capacity() && links.bucket(handle) >= 0;
+	}
+	
+	/**
+	 * @param handle Handle within the capacity of the collection
+	 * @return The handle's Z-order if it is in the collection, otherwise -1, or -2 if
+	 *         it was released and not allocated again
+	 */
+	public int getZOrder(int handle) {
+		return links.bucket(handle);
+	}
+	
+	/**
+	 * @return Number of handles in the collection, in constant time
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return Whether there are no handles in the collection
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @param zOrder Z-order to look at
+	 * @return Number of handles with exactly that Z-order
+	 */
+	public int countAt(int zOrder) {
+		return zOrder < 0 || zOrder > maxZ ? 0 : counts[zOrder];
+	}
+	
+	/**
+	 * @return Bytes used by the links of all handles the collection has room for,
+	 *         on or off the heap
+	 */
+	public long getLinkBytes() {
+		return links.footprint();
+	}
+	
+	/**
+	 * Visits handles in back-to-front order, without allocating.
+	 * 
+	 * The visited handle may be removed from the collection by the action.
+	 * 
+	 * @param action Action to perform on every handle
+	 */
+	public void forEachBackToFront(IntConsumer action) {
+		for (int i = 0 ; i <= maxZ ; ++i) {
+			int current = heads[i];
+			while (current != NIL) {
+				// fetch next handle first, in case the action removes the handle
+				int following = links.next(current);
+				action.accept(current);
+				current = following;
+			}
+		}
+	}
+	
+	/**
+	 * Visits handles in front-to-back order, without allocating.
+	 * 
+	 * The visited handle may be removed from the collection by the action.
+	 * 
+	 * @param action Action to perform on every handle
+	 */
+	public void forEachFrontToBack(IntConsumer action) {
+		for (int i = maxZ ; i >= 0 ; --i) {
+			int current = tails[i];
+			while (current != NIL) {
+				// fetch next handle first, in case the action removes the handle
+				int preceding = links.prev(current);
+				action.accept(current);
+				current = preceding;
+			}
+		}
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Makes sure the given Z-order is valid
+	 * @param zOrder Z-order to check
+	 */
+	private void assertZ(int zOrder) {
+		if (zOrder < 0 || zOrder > maxZ) {
+			throw new IllegalArgumentException(
+				String.format("Invalid Z-order: %d, should be >= 0 and <= %d", zOrder, maxZ));
+		}
+	}
+	
+	/**
+	 * Makes sure the given handle is valid
+	 * @param handle Handle to check
+	 */
+	private void assertHandle(int handle) {
+		if (handle < 0) {
+			throw new IllegalArgumentException(
+				String.format("Invalid handle: %d, should be >= 0", handle));
+		}
+	}
+	
+	/**
+	 * Makes sure the given handle is not on the free list, where linking it would
+	 * let {@link #allocate()} give it out while it is in the collection
+	 * @param handle Handle to check, within the capacity
+	 */
+	private void assertNotReleased(int handle) {
+		if (links.bucket(handle) == RELEASED) {
+			throw new IllegalArgumentException(
+				String.format("Invalid handle: %d, already released", handle));
+		}
+	}
+	
+	/**
+	 * Grows the link arrays to hold at least the given number of handles
+	 * @param capacity Number of handles
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > links.capacity()) {
+			links.grow(Math.max(capacity, links.capacity() * 2), NIL);
+		}
+	}
+	
+	/**
+	 * Appends a handle to the end of a bucket
+	 * @param handle Handle to append, not in the collection
+	 * @param zOrder Bucket to append to
+	 */
+	private void append(int handle, int zOrder) {
+		int tail = tails[zOrder];
+		links.setBucket(handle, zOrder);
+		links.setNext(handle, NIL);
+		links.setPrev(handle, tail);
+		
+		if (tail == NIL) {
+			// first handle
+			heads[zOrder] = handle;
+		} else {
+			links.setNext(tail, handle);
+		}
+		tails[zOrder] = handle;
+		++counts[zOrder];
+		++size;
+	}
+	
+	/**
+	 * Unlinks a handle from its bucket
+	 * @param handle Handle to unlink, in the collection
+	 */
+	private void unlink(int handle) {
+		int zOrder = links.bucket(handle);
+		int preceding = links.prev(handle);
+		int following = links.next(handle);
+		
+		if (preceding == NIL) {
+			// head
+			heads[zOrder] = following;
+		} else {
+			links.setNext(preceding, following);
+		}
+		
+		if (following == NIL) {
+			// tail
+			tails[zOrder] = preceding;
+		} else {
+			links.setPrev(following, preceding);
+		}
+		
+		links.setBucket(handle, NIL);
+		--counts[zOrder];
+		--size;
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Link storage of {@link IntHandleZCollection}: per handle, the next handle,
+ * the previous handle and the Z-level the handle is in.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ abstract class IntLinks {
+	
+	/* --- Constants --- */
+	
+	/** Number of ints stored per handle */
+	public static final int INTS_PER_HANDLE = 3;
+	
+	/** Number of bytes stored per handle */
+	public static final int BYTES_PER_HANDLE = INTS_PER_HANDLE * Integer.BYTES;
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Creates a link storage
+	 * @param capacity Initial number of handles
+	 * @param noBucket Z-level value of handles that are not in any Z-level
+	 * @param offHeap Whether to keep the links outside the Java heap
+	 * @return Link storage, where no handle is in any Z-level
+	 */
+	public static IntLinks create(int capacity, int noBucket, boolean offHeap) {
+		IntLinks links = offHeap ? new Direct() : new Heap();
+		links.grow(capacity, noBucket);
+		return links;
+	}
+	
+	/**
+	 * @param handle Handle
+	 * @return Next handle in the same Z-level
+	 */
+	public abstract int next(int handle);
+	
+	/**
+	 * @param handle Handle
+	 * @return Previous handle in the same Z-level
+	 */
+	public abstract int prev(int handle);
+	
+	/**
+	 * @param handle Handle
+	 * @return Handle's Z-level
+	 */
+	public abstract int bucket(int handle);
+	
+	/**
+	 * @param handle Handle
+	 * @param value Next handle in the same Z-level
+	 */
+	public abstract void setNext(int handle, int value);
+	
+	/**
+	 * @param handle Handle
+	 * @param value Previous handle in the same Z-level
+	 */
+	public abstract void setPrev(int handle, int value);
+	
+	/**
+	 * @param handle Handle
+	 * @param value Handle's Z-level
+	 */
+	public abstract void setBucket(int handle, int value);
+	
+	/**
+	 * @return Number of handles that fit in the storage
+	 */
+	public abstract int capacity();
+	
+	/**
+	 * Grows the storage, new handles are not in any Z-level
+	 * @param capacity New number of handles, larger than the current one
+	 * @param noBucket Z-level value of new handles
+	 */
+	public abstract void grow(int capacity, int noBucket);
+	
+	/**
+	 * @return Bytes used by the links
+	 */
+	public long footprint() {
+		return (long)capacity() * BYTES_PER_HANDLE;
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * Links kept in three parallel int arrays on the Java heap
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static final class Heap extends IntLinks {
+		
+		/** next handle of every handle, in its bucket or the free list, -1 at the end */
+		private int[] next = new int[0];
+		
+		/** previous handle of every handle in a bucket, -1 at the bucket's start */
+		private int[] prev = new int[0];
+		
+		/** Z-level of every handle, or a negative value if it's not in a bucket */
+		private int[] bucket = new int[0];
+		
+		@Override
+		public int next(int handle) {
+			return next[handle];
+		}
+		
+		@Override
+		public int prev(int handle) {
+			return prev[handle];
+		}
+		
+		@Override
+		public int bucket(int handle) {
+			return bucket[handle];
+		}
+		
+		@Override
+		public void setNext(int handle, int value) {
+			next[handle] = value;
+		}
+		
+		@Override
+		public void setPrev(int handle, int value) {
+			prev[handle] = value;
+		}
+		
+		@Override
+		public void setBucket(int handle, int value) {
+			bucket[handle] = value;
+		}
+		
+		@Override
+		public int capacity() {
+			return bucket.length;
+		}
+		
+		@Override
+		public void grow(int capacity, int noBucket) {
+			int oldCapacity = bucket.length;
+			next = Arrays.copyOf(next, capacity);
+			prev = Arrays.copyOf(prev, capacity);
+			bucket = Arrays.copyOf(bucket, capacity);
+			Arrays.fill(bucket, oldCapacity, capacity, noBucket);
+		}
+	}
+	
+	/**
+	 * Links kept outside the Java heap, in a direct buffer of
+	 * (next, previous, Z-level) records
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static final class Direct extends IntLinks {
+		
+		/** offset of the next handle in a record */
+		private static final int NEXT = 0;
+		
+		/** offset of the previous handle in a record */
+		private static final int PREV = Integer.BYTES;
+		
+		/** offset of the Z-level in a record */
+		private static final int BUCKET = 2 * Integer.BYTES;
+		
+		/** record of every handle, at handle * BYTES_PER_HANDLE */
+		private ByteBuffer records = allocate(0);
+		
+		@Override
+		public int next(int handle) {
+			return records.getInt(handle * BYTES_PER_HANDLE + NEXT);
+		}
+		
+		@Override
+		public int prev(int handle) {
+			return records.getInt(handle * BYTES_PER_HANDLE + PREV);
+		}
+		
+		@Override
+		public int bucket(int handle) {
+			return records.getInt(handle * BYTES_PER_HANDLE + BUCKET);
+		}
+		
+		@Override
+		public void setNext(int handle, int value) {
+			records.putInt(handle * BYTES_PER_HANDLE + NEXT, value);
+		}
+		
+		@Override
+		public void setPrev(int handle, int value) {
+			records.putInt(handle * BYTES_PER_HANDLE + PREV, value);
+		}
+		
+		@Override
+		public void setBucket(int handle, int value) {
+			records.putInt(handle * BYTES_PER_HANDLE + BUCKET, value);
+		}
+		
+		@Override
+		public int capacity() {
+			return records.capacity() / BYTES_PER_HANDLE;
+		}
+		
+		@Override
+		public void grow(int capacity, int noBucket) {
+			int oldCapacity = capacity();
+			ByteBuffer grown = allocate(capacity);
+			grown.put(records.duplicate().clear());
+			records = grown;
+			for (int handle = oldCapacity ; handle < capacity ; ++handle) {
+				setBucket(handle, noBucket);
+			}
+		}
+		
+		/**
+		 * @param capacity Number of handles
+		 * @return A zeroed direct buffer in native byte order
+		 */
+		private static ByteBuffer allocate(int capacity) {
+			return ByteBuffer.allocateDirect(capacity * BYTES_PER_HANDLE).order(ByteOrder.nativeOrder());
+		}
+	}
+}
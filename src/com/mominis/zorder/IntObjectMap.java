@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+/**
+ * A minimal open-addressing hash map from int keys to objects.
+ * 
+ * Keys are never boxed, so lookups allocate nothing. Removal shifts colliding
+ * entries back instead of leaving tombstones.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ * @param <V> Value type
+ */
+/* package */ class IntObjectMap<V> {
+	
+	/* --- Constants --- */
+	
+	/** Initial number of slots, must be a power of two */
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/* --- Fields --- */
+	
+	/** Slot keys, meaningful only for slots with a value */
+	private int[] keys;
+	
+	/** Slot values, null for empty slots */
+	private Object[] values;
+	
+	/** Number of entries */
+	private int size;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty map
+	 */
+	public IntObjectMap() {
+		keys = new int[INITIAL_CAPACITY];
+		values = new Object[INITIAL_CAPACITY];
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @param key Key to look up
+	 * @return The key's value, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int mask = keys.length - 1;
+		for (int slot = slot(key, mask) ; values[slot] != null ; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return (V)values[slot];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Associates a value with a key, replacing any previous value
+	 * @param key Key
+	 * @param value Value, not null
+	 */
+	public void put(int key, V value) {
+		int mask = keys.length - 1;
+		int slot = slot(key, mask);
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		keys[slot] = key;
+		values[slot] = value;
+		
+		// keep the load factor under 1/2
+		if (++size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+	}
+	
+	/**
+	 * Removes a key
+	 * @param key Key to remove
+	 * @return The removed value, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int mask = keys.length - 1;
+		int slot = slot(key, mask);
+		while (values[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		
+		V removed = (V)values[slot];
+		if (removed == null) {
+			return null;
+		}
+		
+		// shift following entries of the same run back into the hole
+		int hole = slot;
+		for (slot = (slot + 1) & mask ; values[slot] != null ; slot = (slot + 1) & mask) {
+			int home = slot(keys[slot], mask);
+			// move the entry if its home is not between the hole and its slot (cyclically)
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				keys[hole] = keys[slot];
+				values[hole] = values[slot];
+				hole = slot;
+			}
+		}
+		values[hole] = null;
+		--size;
+		return removed;
+	}
+	
+	/**
+	 * @return Number of entries
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * @param key Key
+	 * @param mask Slots mask
+	 * @return The key's home slot
+	 */
+	private static int slot(int key, int mask) {
+		// fibonacci hashing, spreads consecutive keys
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+	
+	/**
+	 * Rehashes all entries into a new number of slots
+	 * @param capacity New number of slots, a power of two
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		
+		int mask = capacity - 1;
+		for (int i = 0 ; i < oldKeys.length ; ++i) {
+			if (oldValues[i] != null) {
+				int slot = slot(oldKeys[i], mask);
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
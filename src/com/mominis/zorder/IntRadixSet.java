@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+/**
+ * A set of ints covering the whole int range, backed by a 64-ary radix tree of
+ * bitmaps (a van Emde Boas style layout).
+ * 
+ * Every node holds a bitmap of its non-empty children, so add, remove and
+ * predecessor queries take a constant number of steps (one per tree level,
+ * six levels in all) regardless of how sparse the set is. Nodes are only
+ * allocated for occupied ranges.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ class IntRadixSet {
+	
+	/* --- Constants --- */
+	
+	/** Returned by {@link #lower(int)} when there is no such element */
+	public static final long NONE = Long.MIN_VALUE;
+	
+	/** Index of the leaf level */
+	private static final int LEAF = 5;
+	
+	/** Per level, the shift of the key bits that select a child */
+	private static final int[] SHIFT = { 30, 24, 18, 12, 6, 0 };
+	
+	/** Per level, the mask of the key bits that select a child */
+	private static final int[] MASK = { 3, 63, 63, 63, 63, 63 };
+	
+	/* --- Fields --- */
+	
+	/** Tree root, children are selected by the 2 most significant key bits */
+	private final Node root = new Node(0);
+	
+	/** Number of elements */
+	private int size;
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Adds an element
+	 * @param value Element to add
+	 * @return Whether the element was not already in the set
+	 */
+	public boolean add(int value) {
+		int key = toKey(value);
+		Node node = root;
+		for (int level = 0 ; level < LEAF ; ++level) {
+			int index = (key >>> SHIFT[level]) & MASK[level];
+			node.bits |= 1L << index;
+			if (node.children[index] == null) {
+				node.children[index] = new Node(level + 1);
+			}
+			node = node.children[index];
+		}
+		
+		long bit = 1L << (key & MASK[LEAF]);
+		if ((node.bits & bit) != 0) {
+			return false;
+		}
+		
+		node.bits |= bit;
+		++size;
+		return true;
+	}
+	
+	/**
+	 * Removes an element
+	 * @param value Element to remove
+	 * @return Whether the element was in the set
+	 */
+	public boolean remove(int value) {
+		return remove(root, 0, toKey(value));
+	}
+	
+	/**
+	 * @param value Element to look for
+	 * @return Whether the element is in the set
+	 */
+	public boolean contains(int value) {
+		int key = toKey(value);
+		Node node = root;
+		for (int level = 0 ; level < LEAF ; ++level) {
+			node = node.children[(key >>> SHIFT[level]) & MASK[level]];
+			if (node == null) {
+				return false;
+			}
+		}
+		return (node.bits & (1L << (key & MASK[LEAF]))) != 0;
+	}
+	
+	/**
+	 * Finds the greatest element strictly less than the given value
+	 * @param value Value to look under
+	 * @return The element, or {@link #NONE} if there is none
+	 */
+	public long lower(int value) {
+		long key = lower(root, 0, toKey(value));
+		return key == NONE ? NONE : fromKey((int)key);
+	}
+	
+	/**
+	 * @return Number of elements
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Maps a value to an unsigned key with the same order
+	 * @param value Value
+	 * @return Key
+	 */
+	private static int toKey(int value) {
+		return value ^ Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Maps an unsigned key back to its value
+	 * @param key Key
+	 * @return Value
+	 */
+	private static int fromKey(int key) {
+		return key ^ Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Removes a key from a subtree, dropping nodes that become empty
+	 * @param node Subtree root
+	 * @param level Subtree root's level
+	 * @param key Key to remove
+	 * @return Whether the key was in the subtree
+	 */
+	private boolean remove(Node node, int level, int key) {
+		int index = (key >>> SHIFT[level]) & MASK[level];
+		long bit = 1L << index;
+		
+		if (level == LEAF) {
+			if ((node.bits & bit) == 0) {
+				return false;
+			}
+			node.bits &= ~bit;
+			--size;
+			return true;
+		}
+		
+		Node child = node.children[index];
+		if (child == null || !remove(child, level + 1, key)) {
+			return false;
+		}
+		
+		if (child.bits == 0) {
+			node.bits &= ~bit;
+			node.children[index] = null;
+		}
+		return true;
+	}
+	
+	/**
+	 * Finds the greatest key in a subtree strictly less than the given key
+	 * @param node Subtree root
+	 * @param level Subtree root's level
+	 * @param key Key to look under, sharing the subtree's prefix
+	 * @return The key, or {@link #NONE}
+	 */
+	private static long lower(Node node, int level, int key) {
+		int index = (key >>> SHIFT[level]) & MASK[level];
+		
+		if (level != LEAF && (node.bits & (1L << index)) != 0) {
+			// look in the child covering the key first
+			long result = lower(node.children[index], level + 1, key);
+			if (result != NONE) {
+				return result;
+			}
+		}
+		
+		// otherwise, the greatest key of the nearest smaller child
+		long smaller = node.bits & ((1L << index) - 1);
+		if (smaller == 0) {
+			return NONE;
+		}
+		
+		int child = 63 - Long.numberOfLeadingZeros(smaller);
+		int prefix = (key & ~((MASK[level] << SHIFT[level]) | lowBits(level))) | (child << SHIFT[level]);
+		if (level == LEAF) {
+			return prefix & 0xffffffffL;
+		}
+		return max(node.children[child], level + 1, prefix) & 0xffffffffL;
+	}
+	
+	/**
+	 * Finds the greatest key in a non-empty subtree
+	 * @param node Subtree root
+	 * @param level Subtree root's level
+	 * @param prefix Key bits selecting the subtree
+	 * @return The key
+	 */
+	private static int max(Node node, int level, int prefix) {
+		while (true) {
+			int child = 63 - Long.numberOfLeadingZeros(node.bits);
+			prefix |= child << SHIFT[level];
+			if (level == LEAF) {
+				return prefix;
+			}
+			node = node.children[child];
+			++level;
+		}
+	}
+	
+	/**
+	 * @param level Tree level
+	 * @return Mask of the key bits below the level's bits
+	 */
+	private static int lowBits(int level) {
+		return (1 << SHIFT[level]) - 1;
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * A tree node: a bitmap of non-empty children (or of keys, for leaves)
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class Node {
+		
+		/* --- Fields --- */
+		
+		/** Non-empty children, or present keys for leaves */
+		public long bits;
+		
+		/** Children, null for leaves */
+		public final Node[] children;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Initializes an empty node
+		 * @param level Node's level
+		 */
+		public Node(int level) {
+			children = level == LEAF ? null : new Node[MASK[level] + 1];
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * A variant of {@link SimpleZCollection} for objects that carry their own links
+ * (see {@link IntrusiveZSortable}), supporting bounded, natural Z-orders.
+ * 
+ * No link objects are allocated, so add, remove and change allocate nothing, and
+ * traversal goes from one object straight to the next.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ * @param <E> Element type
+ */
+public class IntrusiveZCollection<E extends IntrusiveZSortable> {
+	
+	/* --- Fields --- */
+	
+	/** Max. allowed Z-order (inclusive) */
+	private final int maxZ;
+	
+	/** First object of every Z-level */
+	private final IntrusiveZSortable[] heads;
+	
+	/** Last object of every Z-level */
+	private final IntrusiveZSortable[] tails;
+	
+	/** Number of objects in every Z-level */
+	private final int[] counts;
+	
+	/** Number of objects in the collection */
+	private int size;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty collection.
+	 * 
+	 * @param maxZ Maximal allowed Z (inclusive).
+	 */
+	public IntrusiveZCollection(int maxZ) {
+		this.maxZ = maxZ;
+		heads = new IntrusiveZSortable[maxZ + 1];
+		tails = new IntrusiveZSortable[maxZ + 1];
+		counts = new int[maxZ + 1];
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Appends the given object to the end of the correct bucket.
+	 * 
+	 * An object cannot be added more than once, nor be in two collections at the same time.
+	 * 
+	 * @param object Object to add to the collection
+	 * @throws AlreadyInCollectionException Thrown when the object is already in a collection.
+	 * @throws IllegalArgumentException If the object's Z-order is invalid
+	 */
+	public void add(E object) throws AlreadyInCollectionException {
+		
+		if (object == null) {
+			return;
+		}
+		
+		if (object.isInCollection()) {
+			throw new AlreadyInCollectionException();
+		}
+		
+		int zOrder = object.getZOrder();
+		assertZ(zOrder);
+		append(object, zOrder);
+	}
+	
+	/**
+	 * Removes the given object from the collection.
+	 * Objects in another collection are ignored.
+	 * 
+	 * @param object Object to remove
+	 */
+	public void remove(E object) {
+		if (object != null && object.owner == this) {
+			unlink(object);
+		}
+	}
+	
+	/**
+	 * Notify the collection that the object's Z-order has been changed.
+	 * Objects that are not in a collection are added, objects in another collection are ignored.
+	 * 
+	 * @param object Object to the change Z-order of
+	 * @throws IllegalArgumentException If the object's Z-order is invalid
+	 */
+	public void change(E object) {
+		if (object == null) {
+			return;
+		}
+		
+		int zOrder = object.getZOrder();
+		assertZ(zOrder);
+		
+		if (object.owner == this) {
+			unlink(object);
+		} else if (object.isInCollection()) {
+			return;
+		}
+		append(object, zOrder);
+	}
+	
+	/**
+	 * @return Number of objects in the collection, in constant time
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return Whether there are no objects in the collection
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @param zOrder Z-order to look at
+	 * @return Number of objects with exactly that Z-order
+	 */
+	public int countAt(int zOrder) {
+		return zOrder < 0 || zOrder > maxZ ? 0 : counts[zOrder];
+	}
+	
+	/**
+	 * Iterate objects in back-to-front order
+	 * @return Back-to-front iterator
+	 */
+	public Iterator<E> backToFrontIterator() {
+		return new IntrusiveIterator(false);
+	}
+	
+	/**
+	 * Iterate objects in front-to-back order
+	 * @return Front-to-back iterator
+	 */
+	public Iterator<E> frontToBackIterator() {
+		return new IntrusiveIterator(true);
+	}
+	
+	/**
+	 * Visits objects in back-to-front order, without allocating.
+	 * 
+	 * The visited object may be removed from the collection by the action.
+	 * 
+	 * @param action Action to perform on every object
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachBackToFront(Consumer<? super E> action) {
+		for (int i = 0 ; i <= maxZ ; ++i) {
+			IntrusiveZSortable current = heads[i];
+			while (current != null) {
+				// fetch next object first, in case the action removes the object
+				IntrusiveZSortable next = current.next;
+				action.accept((E)current);
+				current = next;
+			}
+		}
+	}
+	
+	/**
+	 * Visits objects in front-to-back order, without allocating.
+	 * 
+	 * The visited object may be removed from the collection by the action.
+	 * 
+	 * @param action Action to perform on every object
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachFrontToBack(Consumer<? super E> action) {
+		for (int i = maxZ ; i >= 0 ; --i) {
+			IntrusiveZSortable current = tails[i];
+			while (current != null) {
+				// fetch next object first, in case the action removes the object
+				IntrusiveZSortable prev = current.prev;
+				action.accept((E)current);
+				current = prev;
+			}
+		}
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Makes sure the given Z-order is valid
+	 * @param zOrder Z-order to check
+	 */
+	private void assertZ(int zOrder) {
+		if (zOrder < 0 || zOrder > maxZ) {
+			throw new IllegalArgumentException(
+				String.format("Invalid Z-order: %d, should be >= 0 and <= %d", zOrder, maxZ));
+		}
+	}
+	
+	/**
+	 * Appends the given object to the end of a bucket
+	 * @param object Object to append, not in any collection
+	 * @param bucket Bucket to append to
+	 */
+	private void append(IntrusiveZSortable object, int bucket) {
+		IntrusiveZSortable tail = tails[bucket];
+		object.bucket = bucket;
+		object.owner = this;
+		object.next = null;
+		object.prev = tail;
+		
+		if (tail == null) {
+			// first object
+			heads[bucket] = object;
+		} else {
+			tail.next = object;
+		}
+		tails[bucket] = object;
+		++counts[bucket];
+		++size;
+	}
+	
+	/**
+	 * Unlinks the given object from its bucket
+	 * @param object Object to unlink, in this collection
+	 */
+	private void unlink(IntrusiveZSortable object) {
+		int bucket = object.bucket;
+		
+		if (object.prev == null) {
+			// head
+			heads[bucket] = object.next;
+		} else {
+			object.prev.next = object.next;
+		}
+		
+		if (object.next == null) {
+			// tail
+			tails[bucket] = object.prev;
+		} else {
+			object.next.prev = object.prev;
+		}
+		
+		object.prev = null;
+		object.next = null;
+		object.bucket = IntrusiveZSortable.NO_BUCKET;
+		object.owner = null;
+		--counts[bucket];
+		--size;
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * Iterates the objects of all buckets, either back-to-front or front-to-back
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class IntrusiveIterator implements Iterator<E> {
+		
+		/* --- Fields --- */
+		
+		/** whether to scan front-to-back */
+		private final boolean reverse;
+		
+		/** bucket of the next object */
+		private int bucket;
+		
+		/** next object to yield, or null if not looked up yet */
+		private IntrusiveZSortable next;
+		
+		/** last object yielded, or null if there is none or it was removed */
+		private IntrusiveZSortable last;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param reverse Whether to scan front-to-back
+		 */
+		public IntrusiveIterator(boolean reverse) {
+			this.reverse = reverse;
+			bucket = reverse ? maxZ + 1 : -1;
+		}
+		
+		/* --- Iterator<E> methods --- */
+		
+		/**
+		 * @see {@link Iterator<E>#hasNext()}
+		 */
+		@Override
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			
+			// move to the next non-empty bucket
+			if (!reverse) {
+				while (++bucket <= maxZ) {
+					if (heads[bucket] != null) {
+						next = heads[bucket];
+						return true;
+					}
+				}
+				bucket = maxZ;
+			} else {
+				while (--bucket >= 0) {
+					if (tails[bucket] != null) {
+						next = tails[bucket];
+						return true;
+					}
+				}
+				bucket = 0;
+			}
+			
+			return false;
+		}
+		
+		/**
+		 * @see {@link Iterator<E>#next()}
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			IntrusiveZSortable result = next;
+			next = reverse ? result.prev : result.next;
+			last = result;
+			return (E)result;
+		}
+		
+		/**
+		 * Unlinks the last object yielded, in constant time. The next object was
+		 * fetched already.
+		 * 
+		 * @see {@link Iterator<E>#remove()}
+		 */
+		@Override
+		public void remove() {
+			if (last == null || last.owner != IntrusiveZCollection.this) {
+				throw new IllegalStateException();
+			}
+			
+			unlink(last);
+			last = null;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+/**
+ * An object managed by {@link IntrusiveZCollection}.
+ * 
+ * Unlike {@link ZSortable}, the object carries its own links, so adding it to a
+ * collection, removing it or changing its Z-order allocate nothing.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public abstract class IntrusiveZSortable {
+	
+	/* --- Constants --- */
+	
+	/** Bucket of an object that is not in any collection */
+	/* package */ static final int NO_BUCKET = -1;
+	
+	/* --- Fields --- */
+	
+	/** previous object in the same bucket */
+	/* package */ IntrusiveZSortable prev;
+	
+	/** next object in the same bucket */
+	/* package */ IntrusiveZSortable next;
+	
+	/** bucket the object is currently in, or {@link #NO_BUCKET} */
+	/* package */ int bucket = NO_BUCKET;
+	
+	/** collection the object is currently in, or null */
+	/* package */ IntrusiveZCollection<?> owner;
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @return Object's Z-order
+	 */
+	public abstract int getZOrder();
+	
+	/**
+	 * @return Whether the object is currently in a collection
+	 */
+	public boolean isInCollection() {
+		return bucket != NO_BUCKET;
+	}
+}
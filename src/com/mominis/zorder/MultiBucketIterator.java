@@ -23,11 +23,16 @@
 package com.mominis.zorder;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 /**
  * Iterates over a list-of-lists either start-to-end or end-to-start.
  * 
  * The given {@link ReverseIterable} should yield objects of type: {@link ExposedLinkedList}.
+ * The links of every list are walked directly, and the link after the current
+ * one is fetched before the current element is returned, so {@link #remove()}
+ * can remove the current element from the owning collection in constant time.
  * 
  * @author Itay Duvdevani (MoMinis Ltd.)
  *
@@ -41,13 +46,16 @@ import java.util.Iterator;
 	private final boolean reverse;
 	
 	/** iterator to current bucket being iterated */
-	private Iterator<ExposedLinkedList<E>> bucketsIterator;
+	private final Iterator<ExposedLinkedList<E>> bucketsIterator;
 	
-	/** iterator to current bucket (inner iterator) */
-	private Iterator<E> bucketIterator;
+	/** removes an element from the owning collection */
+	private final Consumer<? super E> remover;
 	
-	/** next element to yield */
-	private E next;
+	/** link of the next element to yield, or null to move to the next bucket */
+	private ExposedLinkedList<E>.ExposedLink next;
+	
+	/** last element yielded, or null if there is none or it was removed */
+	private E last;
 	
 	/* --- Constructor --- */
 	
@@ -56,26 +64,21 @@ import java.util.Iterator;
 	 * 
 	 * @param buckets List of internal lists to iterate.
 	 * @param reverse Whether to scan the list in reverse
+	 * @param remover Removes an element from the owning collection
 	 */
 	public MultiBucketIterator(
 			ReverseIterable<ExposedLinkedList<E>> buckets,
-			boolean reverse) {
+			boolean reverse,
+			Consumer<? super E> remover) {
 		
 		this.reverse = reverse;
+		this.remover = remover;
 		
 		if (!reverse) {
 			bucketsIterator = buckets.iterator();
 		} else {
 			bucketsIterator = buckets.reverseIterator();
 		}
-		
-		if (bucketsIterator.hasNext()) {
-			if (!reverse) {
-				bucketIterator = bucketsIterator.next().iterator();
-			} else {
-				bucketIterator = bucketsIterator.next().reverseIterator();
-			}	
-		}
 	}
 	
 	/* --- Iterator<E> methods --- */
@@ -85,32 +88,12 @@ import java.util.Iterator;
 	 */
 	@Override
 	public boolean hasNext() {
-		
-		if (bucketIterator == null) {
-			return false;
-		}
-		
-		// keep looking till we find the next valid sprite,
-		// or there are no more items to examine
-		while (true) {
-			
-			// find next item to examine
-			while (!bucketIterator.hasNext()) {
-				if (bucketsIterator.hasNext()) {
-					if (!reverse) {
-						bucketIterator = bucketsIterator.next().iterator();
-					} else {
-						bucketIterator = bucketsIterator.next().reverseIterator();
-					}
-				} else {
-					// nothing valid found and no more buckets
-					return false;
-				}
-			}
-			
-			next = bucketIterator.next();
-			return true;
+		// move to the next non-empty bucket, if the current one is done
+		while (next == null && bucketsIterator.hasNext()) {
+			ExposedLinkedList<E> bucket = bucketsIterator.next();
+			next = reverse ? bucket.getTail() : bucket.getHead();
 		}
+		return next != null;
 	}
 
 	/**
@@ -118,14 +101,28 @@ import java.util.Iterator;
 	 */
 	@Override
 	public E next() {
-		return next;
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		
+		ExposedLinkedList<E>.ExposedLink result = next;
+		next = reverse ? result.prev : result.next;
+		last = result.object;
+		return last;
 	}
 
 	/**
-	 * Not implemented.
+	 * Removes the last element yielded from the owning collection, in constant time
+	 * 
+	 * @see {@link Iterator<E>#remove()}
 	 */
 	@Override
 	public void remove() {
-		// intentionally left blank (not implemented)
+		if (last == null) {
+			throw new IllegalStateException();
+		}
+		
+		remover.accept(last);
+		last = null;
 	}
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+/**
+ * A fixed-size bitmap that can quickly find the next or previous set bit,
+ * skipping 64 clear bits at a time.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ class OccupancyBitmap {
+	
+	/* --- Fields --- */
+	
+	/** bitmap words, bit i is stored in words[i / 64] */
+	private final long[] words;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes a bitmap with all bits clear
+	 * @param size Number of bits
+	 */
+	public OccupancyBitmap(int size) {
+		words = new long[(size + 63) >>> 6];
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @return Number of set bits
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+	
+	/**
+	 * Sets a bit
+	 * @param index Bit to set
+	 */
+	public void set(int index) {
+		words[index >>> 6] |= 1L << index;
+	}
+	
+	/**
+	 * Clears a bit
+	 * @param index Bit to clear
+	 */
+	public void clear(int index) {
+		words[index >>> 6] &= ~(1L << index);
+	}
+	
+	/**
+	 * @param index Bit to check
+	 * @return Whether the bit is set
+	 */
+	public boolean get(int index) {
+		return (words[index >>> 6] & (1L << index)) != 0;
+	}
+	
+	/**
+	 * Finds the first set bit at or after the given index
+	 * @param from Index to start from (inclusive), may be past the end
+	 * @return Index of the set bit, or -1 if there is none
+	 */
+	public int nextSetBit(int from) {
+		int wordIndex = from >>> 6;
+		if (wordIndex >= words.length) {
+			return -1;
+		}
+		
+		// mask out the bits before 'from'
+		long word = words[wordIndex] & (-1L << from);
+		while (word == 0) {
+			if (++wordIndex == words.length) {
+				return -1;
+			}
+			word = words[wordIndex];
+		}
+		
+		return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * Finds the last set bit at or before the given index
+	 * @param from Index to start from (inclusive), may be negative
+	 * @return Index of the set bit, or -1 if there is none
+	 */
+	public int previousSetBit(int from) {
+		if (from < 0) {
+			return -1;
+		}
+		
+		int wordIndex = from >>> 6;
+		if (wordIndex >= words.length) {
+			wordIndex = words.length - 1;
+			from = (words.length << 6) - 1;
+		}
+		
+		// mask out the bits after 'from'
+		long word = words[wordIndex] & (-1L >>> (63 - (from & 63)));
+		while (word == 0) {
+			if (wordIndex-- == 0) {
+				return -1;
+			}
+			word = words[wordIndex];
+		}
+		
+		return (wordIndex << 6) + 63 - Long.numberOfLeadingZeros(word);
+	}
+}
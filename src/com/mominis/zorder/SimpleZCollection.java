@@ -22,7 +22,12 @@
  */
 package com.mominis.zorder;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 import com.mominis.zorder.except.AlreadyInCollectionException;
 
@@ -30,33 +35,129 @@ import com.mominis.zorder.except.AlreadyInCollectionException;
  * The naive implementation of a {@link ZCollection}, supporting
  * bounded, natural Z-orders.
  * 
+ * Occupied Z-levels are tracked in a bitmap, so traversal skips empty levels
+ * and runs in O(n + occupied levels) rather than O(n + maxZ). A level's bucket
+ * is allocated when the level is first used, so creating a collection only
+ * allocates an array cell and two bits per level.
+ * 
+ * A growable collection adds levels for Z-orders out of its range instead of
+ * rejecting them, doubling the number of levels at a time, so it may start with
+ * a small range. {@link #shrink()} releases the empty levels added by growth.
+ * 
+ * A render thread may traverse the collection while it changes through
+ * {@link #getSnapshot()}, published by {@link #publishSnapshot()} once a frame.
+ * 
  * @author Itay Duvdevani (MoMinis Ltd.)
  *
  */
 public class SimpleZCollection implements ZCollection {
 	
+	/* --- Constants --- */
+	
+	/** Estimated bytes of a level without a bucket, its array cell and occupancy bits */
+	private static final int LEVEL_BYTES = 5;
+	
+	/** Estimated bytes of an allocated bucket */
+	private static final int BUCKET_BYTES = 32;
+	
+	/** Max. number of Z-levels */
+	private static final int MAX_LEVELS = Integer.MAX_VALUE - 8;
+	
+	/** Gives the Z-order of the bucket a link is in */
+	private static final ToIntFunction<ExposedLinkedList<ZSortable>.ExposedLink> BUCKET_Z =
+		link -> ((Bucket)link.getList()).Z;
+	
 	/* --- Fields --- */
 	
+	/** Min. allowed Z-order (inclusive), the Z-order of the first level */
+	private int minZ;
+	
 	/** Max. allowed Z-order (inclusive) */
-	private final int maxZ;
+	private int maxZ;
+	
+	/** Range of Z-orders given to the constructor, kept by {@link #shrink()} */
+	private final int baseMinZ, baseMaxZ;
+	
+	/** whether Z-orders out of range add levels, or are rejected */
+	private boolean growable;
+	
+	/** Z-order collections. Cell i holds a list of objects currently in Z-order minZ + i, or null if never used */
+	private Bucket[] buckets;
+	
+	/** number of allocated buckets */
+	private int allocated;
+	
+	/** Z-levels whose bucket is not empty */
+	private OccupancyBitmap occupied;
+	
+	/** number of objects in the collection */
+	private int size;
+	
+	/** objects marked by markDirty(), waiting for commit() */
+	private final DirtyLinks dirty;
+	
+	/** whether traversal commits marked objects, or requires them to be committed */
+	private boolean autoCommit;
+	
+	/** Z-levels added to or removed from since the last snapshot */
+	private OccupancyBitmap touched;
+	
+	/** objects of every Z-level as of the last snapshot, null for empty levels. Allocated by the first snapshot */
+	private ZSortable[][] snapshotLevels;
+	
+	/** whether levels moved since the last snapshot, so it must be published anew */
+	private boolean levelsMoved;
+	
+	/** last published snapshot */
+	private volatile ZSnapshot snapshot;
 	
-	/** Z-order collections. Every cell holds a list of objects currently in that Z-level */
-	private ExposedLinkedList<ZSortable>[] buckets;
+	/** receives operation events, {@link StatsRecorder#NONE} unless statistics are attached */
+	private StatsRecorder recorder;
+	
+	/** attached statistics, or null */
+	private ZCollectionStats stats;
 	
 	/* --- Constructor --- */
 	
 	/**
-	 * Initializes an empty collection.
+	 * Initializes an empty collection with levels for Z-orders 0 to maxZ.
 	 * 
 	 * @param maxZ Maximal allowed Z (inclusive).
+	 * @throws IllegalArgumentException If maxZ is negative, which leaves no levels
+	 * @see {@link #SimpleZCollection(int, int)}
 	 */
-	@SuppressWarnings("unchecked")
 	public SimpleZCollection(int maxZ) {
-		this.maxZ = maxZ;
-		buckets = (ExposedLinkedList<ZSortable>[])new ExposedLinkedList[maxZ + 1];
-		for (int i = 0 ; i <= maxZ ; ++i) {
-			buckets[i] = new ExposedLinkedList<ZSortable>();
+		this(0, maxZ);
+	}
+	
+	/**
+	 * Initializes an empty collection with levels for a range of Z-orders,
+	 * which may start below 0.
+	 * 
+	 * @param minZ Minimal allowed Z (inclusive).
+	 * @param maxZ Maximal allowed Z (inclusive).
+	 * @throws IllegalArgumentException If the range is empty or too large
+	 */
+	public SimpleZCollection(int minZ, int maxZ) {
+		if (minZ > maxZ || (long)maxZ - minZ >= MAX_LEVELS) {
+			throw new IllegalArgumentException(
+				String.format("Invalid min. Z-order: %d, should be <= %d and > %d",
+					minZ, maxZ, (long)maxZ - MAX_LEVELS));
 		}
+		
+		this.minZ = minZ;
+		this.maxZ = maxZ;
+		this.baseMinZ = minZ;
+		this.baseMaxZ = maxZ;
+		buckets = new Bucket[maxZ - minZ + 1];
+		occupied = new OccupancyBitmap(buckets.length);
+		
+		dirty = new DirtyLinks();
+		autoCommit = true;
+		
+		touched = new OccupancyBitmap(buckets.length);
+		snapshot = ZSnapshot.EMPTY;
+		recorder = StatsRecorder.NONE;
 	}
 	
 	/* --- ZCollection Methods --- */
@@ -77,8 +178,8 @@ public class SimpleZCollection implements ZCollection {
 			throw new AlreadyInCollectionException();
 		}
 		
-		assertZ(object.getZOrder());
-		object.setCurrentLink(buckets[object.getZOrder()].append(object));
+		link(object);
+		recorder.added(1);
 	}
 
 	/**
@@ -88,9 +189,9 @@ public class SimpleZCollection implements ZCollection {
 	 */
 	@Override
 	public void remove(ZSortable object) {
-		if (object != null && object.getCurrentLink() != null) {
-			object.getCurrentLink().unlink();
-			object.setCurrentLink(null);
+		if (object != null && owns(object)) {
+			unlink(object);
+			recorder.removed(1);
 		}
 	}
 
@@ -99,20 +200,168 @@ public class SimpleZCollection implements ZCollection {
 	 */
 	@Override
 	public void change(ZSortable object) {
-		remove(object);
-		try {
-			add(object);
-		} catch (AlreadyInCollectionException e) {
-			// should not happen
+		if (object == null) {
+			return;
+		}
+		
+		if (owns(object)) {
+			unlink(object);
+		} else if (object.getCurrentLink() != null) {
+			// in another collection
+			return;
+		}
+		link(object);
+		recorder.changed(1);
+	}
+	
+	/**
+	 * Checks all objects first, then appends every run of consecutive objects
+	 * with the same Z-order to its bucket
+	 * 
+	 * @see {@link ZCollection#addAll(Collection)}
+	 */
+	@Override
+	public void addAll(Collection<? extends ZSortable> objects) throws AlreadyInCollectionException {
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		BulkChecks.assertNotInCollection(objects);
+		assertZ(objects);
+		int before = size;
+		splice(objects);
+		recorder.added(size - before);
+		
+		if (event.shouldCommit()) {
+			event.set(this, "addAll", size - before, objects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#removeAll(Collection)}
+	 */
+	@Override
+	public void removeAll(Collection<? extends ZSortable> objects) {
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		int before = size;
+		for (ZSortable object : objects) {
+			remove(object);
+		}
+		
+		if (event.shouldCommit()) {
+			event.set(this, "removeAll", before - size, objects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#changeAll(Collection)}
+	 */
+	@Override
+	public void changeAll(Collection<? extends ZSortable> objects) {
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		assertZ(objects);
+		for (ZSortable object : objects) {
+			if (object != null && owns(object)) {
+				unlink(object);
+			}
+		}
+		
+		int before = size;
+		splice(objects);
+		recorder.changed(size - before);
+		
+		if (event.shouldCommit()) {
+			event.set(this, "changeAll", size - before, objects);
+			event.commit();
 		}
 	}
 
+	/**
+	 * @see {@link ZCollection#markDirty(ZSortable)}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void markDirty(ZSortable object) {
+		if (object != null && owns(object)) {
+			// links are always created by one of our buckets
+			dirty.mark((ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink());
+		}
+	}
+	
+	/**
+	 * Compares every marked object's Z-order with its bucket's, and moves the
+	 * ones that differ one by one, so a bucket that some objects leave and
+	 * others enter is not closed and reopened
+	 * 
+	 * @see {@link ZCollection#commit()}
+	 */
+	@Override
+	public void commit() {
+		if (dirty.isEmpty()) {
+			return;
+		}
+		
+		ZCollectionEvents.BulkOperation event = new ZCollectionEvents.BulkOperation();
+		event.begin();
+		List<ZSortable> moved = dirty.drain(BUCKET_Z);
+		assertZ(moved);
+		for (int i = 0 ; i < moved.size() ; ++i) {
+			change(moved.get(i));
+		}
+		
+		if (event.shouldCommit()) {
+			event.set(this, "commit", moved.size(), moved);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#setAutoCommit(boolean)}
+	 */
+	@Override
+	public void setAutoCommit(boolean autoCommit) {
+		this.autoCommit = autoCommit;
+	}
+
+	/**
+	 * @see {@link ZCollection#size()}
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @see {@link ZCollection#isEmpty()}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Reads the size of the Z-level's bucket
+	 * 
+	 * @see {@link ZCollection#countAt(int)}
+	 */
+	@Override
+	public int countAt(int zOrder) {
+		if (zOrder < minZ || zOrder > maxZ) {
+			return 0;
+		}
+		
+		Bucket bucket = buckets[zOrder - minZ];
+		return bucket == null ? 0 : bucket.size();
+	}
+
 	/**
 	 * @see {@link ZCollection#backToFrontIterator()}
 	 */
 	@Override
 	public Iterator<ZSortable> backToFrontIterator() {
-		return new MultiBucketIterator<ZSortable>(new MyArrayIterable(), false);
+		return backToFrontIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
 	}
 
 	/**
@@ -120,32 +369,526 @@ public class SimpleZCollection implements ZCollection {
 	 */
 	@Override
 	public Iterator<ZSortable> frontToBackIterator() {
-		return new MultiBucketIterator<ZSortable>(new MyArrayIterable(), true);
+		return frontToBackIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachBackToFront(Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(Consumer<? super ZSortable> action) {
+		forEachBackToFront(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachFrontToBack(Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(Consumer<? super ZSortable> action) {
+		forEachFrontToBack(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#backToFrontIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MultiBucketIterator<ZSortable>(new MyArrayIterable(zLow, zHigh), false, this::remove);
+	}
+	
+	/**
+	 * @see {@link ZCollection#frontToBackIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MultiBucketIterator<ZSortable>(new MyArrayIterable(zLow, zHigh), true, this::remove);
+	}
+	
+	/**
+	 * Walks the occupied buckets in range and the links of every bucket directly
+	 * 
+	 * @see {@link ZCollection#forEachBackToFront(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (zLow > zHigh || zLow > maxZ || zHigh < minZ) {
+			return;
+		}
+		int low = Math.max(zLow, minZ) - minZ;
+		int high = Math.min(zHigh, maxZ) - minZ;
+		
+		ZCollectionEvents.Traversal event = new ZCollectionEvents.Traversal();
+		event.begin();
+		int visitedBuckets = 0;
+		int visitedObjects = 0;
+		for (int i = occupied.nextSetBit(low) ; i >= 0 && i <= high ; i = occupied.nextSetBit(i + 1)) {
+			++visitedBuckets;
+			ExposedLinkedList<ZSortable>.ExposedLink link = buckets[i].getHead();
+			while (link != null) {
+				// fetch next link first, in case the action removes the object
+				ExposedLinkedList<ZSortable>.ExposedLink next = link.next;
+				action.accept(link.object);
+				++visitedObjects;
+				link = next;
+			}
+		}
+		recorder.traversed(visitedBuckets, visitedObjects);
+		
+		if (event.shouldCommit()) {
+			event.set(this, false, zLow, zHigh, visitedBuckets, visitedObjects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Walks the occupied buckets in range and the links of every bucket directly
+	 * 
+	 * @see {@link ZCollection#forEachFrontToBack(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (zLow > zHigh || zLow > maxZ || zHigh < minZ) {
+			return;
+		}
+		int low = Math.max(zLow, minZ) - minZ;
+		int high = Math.min(zHigh, maxZ) - minZ;
+		
+		ZCollectionEvents.Traversal event = new ZCollectionEvents.Traversal();
+		event.begin();
+		int visitedBuckets = 0;
+		int visitedObjects = 0;
+		for (int i = occupied.previousSetBit(high) ; i >= low ; i = occupied.previousSetBit(i - 1)) {
+			++visitedBuckets;
+			ExposedLinkedList<ZSortable>.ExposedLink link = buckets[i].getTail();
+			while (link != null) {
+				// fetch next link first, in case the action removes the object
+				ExposedLinkedList<ZSortable>.ExposedLink prev = link.prev;
+				action.accept(link.object);
+				++visitedObjects;
+				link = prev;
+			}
+		}
+		recorder.traversed(visitedBuckets, visitedObjects);
+		
+		if (event.shouldCommit()) {
+			event.set(this, true, zLow, zHigh, visitedBuckets, visitedObjects);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Splits the Z-levels in halves
+	 * 
+	 * @see {@link ZCollection#spliterator()}
+	 */
+	@Override
+	public Spliterator<ZSortable> spliterator() {
+		prepareTraversal();
+		return new MySpliterator(0, buckets.length - 1, size);
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Commits marked objects, and publishes a snapshot of the collection for
+	 * {@link #getSnapshot()}.
+	 * 
+	 * Only Z-levels that were added to or removed from since the last snapshot are
+	 * copied, the arrays of the other levels are shared with the last snapshot.
+	 * The snapshot's array of occupied levels is built anew every time, in O(k + z/64)
+	 * for k occupied levels out of z. If nothing changed, the last snapshot is kept.
+	 * 
+	 * Call from the thread that modifies the collection, e.g. at the end of every frame.
+	 * 
+	 * @return Published snapshot
+	 * @throws IllegalArgumentException If one of the marked objects' Z-order is invalid
+	 */
+	public ZSnapshot publishSnapshot() {
+		commit();
+		if (snapshotLevels == null) {
+			snapshotLevels = new ZSortable[buckets.length][];
+		}
+		
+		int first = touched.nextSetBit(0);
+		if (first < 0 && !levelsMoved) {
+			return snapshot;
+		}
+		levelsMoved = false;
+		
+		for (int i = first ; i >= 0 ; i = touched.nextSetBit(i + 1)) {
+			touched.clear(i);
+			snapshotLevels[i] = buckets[i].isEmpty() ? null : toArray(buckets[i]);
+		}
+		
+		int count = 0;
+		for (int i = occupied.nextSetBit(0) ; i >= 0 ; i = occupied.nextSetBit(i + 1)) {
+			++count;
+		}
+		ZSortable[][] levels = new ZSortable[count][];
+		count = 0;
+		for (int i = occupied.nextSetBit(0) ; i >= 0 ; i = occupied.nextSetBit(i + 1)) {
+			levels[count++] = snapshotLevels[i];
+		}
+		
+		snapshot = new ZSnapshot(levels, size);
+		return snapshot;
+	}
+	
+	/**
+	 * Gives the last snapshot published by {@link #publishSnapshot()}. Safe to call,
+	 * and to traverse the result, from any thread while the collection is modified.
+	 * 
+	 * @return Last published snapshot, empty if none was published
+	 */
+	public ZSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * @return Min. allowed Z-order (inclusive), lower than given to the constructor once grown
+	 */
+	public int getMinZ() {
+		return minZ;
+	}
+	
+	/**
+	 * @return Max. allowed Z-order (inclusive), higher than given to the constructor once grown
+	 */
+	public int getMaxZ() {
+		return maxZ;
+	}
+	
+	/**
+	 * Makes the collection growable, or fixed to its current range.
+	 * 
+	 * A growable collection takes any Z-order. A Z-order out of range adds levels up
+	 * to it, and at least doubles the number of levels, in O(levels) time.
+	 * 
+	 * @param growable Whether Z-orders out of range add levels, or are rejected
+	 */
+	public void setGrowable(boolean growable) {
+		this.growable = growable;
+	}
+	
+	/**
+	 * Releases the empty levels added by growth, above the highest occupied level
+	 * and below the lowest one. The range given to the constructor is always kept.
+	 * 
+	 * Call when the collection no longer uses the Z-orders it grew to, e.g. once a
+	 * level is unloaded, so traversal and snapshots stop paying for them.
+	 */
+	public void shrink() {
+		int lowest = occupied.nextSetBit(0);
+		int newMinZ = lowest < 0 ? baseMinZ : Math.min(baseMinZ, minZ + lowest);
+		int newMaxZ = lowest < 0 ? baseMaxZ : Math.max(baseMaxZ, minZ + occupied.previousSetBit(buckets.length - 1));
+		if (newMinZ != minZ || newMaxZ != maxZ) {
+			resize(newMinZ, newMaxZ);
+		}
+	}
+	
+	/**
+	 * Attaches statistics to the collection, which counts its operations into them from now on
+	 * @param stats Statistics to attach, or null to detach them
+	 */
+	public void setStats(ZCollectionStats stats) {
+		this.stats = stats;
+		this.recorder = stats == null ? StatsRecorder.NONE : stats;
+	}
+	
+	/**
+	 * Brings the bucket figures of the attached statistics up to date.
+	 * Counts the occupied levels, in O(levels / 64). Only allocated buckets are
+	 * counted, levels that were never used have none.
+	 * 
+	 * @return Attached statistics, or null if none are attached
+	 */
+	public ZCollectionStats getStats() {
+		if (stats != null) {
+			int empty = allocated - occupied.cardinality();
+			stats.sample(allocated, empty, 0, (long)size * ZCollectionStats.LINK_BYTES +
+				(long)buckets.length * LEVEL_BYTES + (long)allocated * BUCKET_BYTES);
+		}
+		return stats;
+	}
+	
+	/* --- Package Methods --- */
+	
+	/**
+	 * @param object Object to look for
+	 * @return Whether the object is in this collection, in constant time
+	 */
+	/* package */ boolean owns(ZSortable object) {
+		if (!(object.getCurrentLink() instanceof ExposedLinkedList.ExposedLink)) {
+			return false;
+		}
+		
+		ExposedLinkedList<?> list = ((ExposedLinkedList<?>.ExposedLink)object.getCurrentLink()).getList();
+		if (!(list instanceof Bucket)) {
+			return false;
+		}
+		
+		int z = ((Bucket)list).Z;
+		return z >= minZ && z <= maxZ && buckets[z - minZ] == list;
 	}
 	
 	/* --- Private Mthods --- */
 	
 	/**
-	 * Makes sure the given Z-order is valid
+	 * Commits marked objects before a traversal, or fails if auto-commit is off
+	 */
+	private void prepareTraversal() {
+		if (!dirty.isEmpty()) {
+			if (!autoCommit) {
+				throw new IllegalStateException("Uncommitted changes, call commit() before traversal");
+			}
+			commit();
+		}
+	}
+	
+	/**
+	 * Adds objects that are known to be valid and not in a collection, skipping
+	 * nulls and objects given twice
+	 * @param objects Objects to add
+	 */
+	private void splice(Collection<? extends ZSortable> objects) {
+		Bucket bucket = null;
+		for (ZSortable object : objects) {
+			if (object == null || object.getCurrentLink() != null) {
+				continue;
+			}
+			
+			int zOrder = object.getZOrder();
+			if (bucket == null || bucket.Z != zOrder) {
+				// a new run
+				bucket = bucketAt(zOrder - minZ);
+				occupied.set(zOrder - minZ);
+				touched.set(zOrder - minZ);
+			}
+			object.setCurrentLink(bucket.append(object));
+			++size;
+		}
+	}
+	
+	/**
+	 * Appends an object to the bucket of its Z-order
+	 * @param object Object to append, not in the collection
+	 * @throws IllegalArgumentException If the object's Z-order is invalid
+	 */
+	private void link(ZSortable object) {
+		int zOrder = object.getZOrder();
+		assertZ(zOrder);
+		int level = zOrder - minZ;
+		object.setCurrentLink(bucketAt(level).append(object));
+		occupied.set(level);
+		touched.set(level);
+		++size;
+	}
+	
+	/**
+	 * Gives the bucket of a level, allocating it when the level is first used
+	 * @param level Level's index
+	 * @return The bucket
+	 */
+	private Bucket bucketAt(int level) {
+		Bucket bucket = buckets[level];
+		if (bucket == null) {
+			bucket = new Bucket(minZ + level);
+			buckets[level] = bucket;
+			++allocated;
+		}
+		return bucket;
+	}
+	
+	/**
+	 * Unlinks an object from its bucket
+	 * @param object Object to unlink, in the collection
+	 */
+	@SuppressWarnings("unchecked")
+	private void unlink(ZSortable object) {
+		// links are always created by one of our buckets
+		ExposedLinkedList<ZSortable>.ExposedLink link =
+			(ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink();
+		link.unlink();
+		object.setCurrentLink(null);
+		--size;
+		
+		Bucket bucket = (Bucket)link.getList();
+		int level = bucket.Z - minZ;
+		touched.set(level);
+		if (bucket.isEmpty()) {
+			occupied.clear(level);
+		}
+	}
+	
+	/**
+	 * Copies the objects of a bucket
+	 * @param bucket Bucket to copy
+	 * @return Objects of the bucket, in order
+	 */
+	private static ZSortable[] toArray(Bucket bucket) {
+		ZSortable[] objects = new ZSortable[bucket.size()];
+		int i = 0;
+		for (ExposedLinkedList<ZSortable>.ExposedLink link = bucket.getHead() ; link != null ; link = link.next) {
+			objects[i++] = link.object;
+		}
+		return objects;
+	}
+	
+	/**
+	 * Makes sure the given Z-order is valid, adding levels up to it if the collection is growable
 	 * @param zOrder Z-order to check
 	 */
 	private void assertZ(int zOrder) {
-		if (zOrder < 0 || zOrder > maxZ) {
-			throw new IllegalArgumentException(
-				String.format("Invalid Z-order: %d, should be >= 0 and <= %d", zOrder, maxZ));
+		if (zOrder >= minZ && zOrder <= maxZ) {
+			return;
+		}
+		
+		long levels = buckets.length;
+		if (growable) {
+			// at least double the levels, towards the Z-order
+			long needed = zOrder < minZ ? (long)maxZ - zOrder + 1 : (long)zOrder - minZ + 1;
+			long grown = Math.min(Math.max(needed, levels * 2), MAX_LEVELS);
+			if (needed <= grown) {
+				if (zOrder < minZ) {
+					resize((int)Math.max(maxZ - grown + 1, Integer.MIN_VALUE), maxZ);
+				} else {
+					resize(minZ, (int)Math.min(minZ + grown - 1, Integer.MAX_VALUE));
+				}
+				return;
+			}
+		}
+		
+		throw new IllegalArgumentException(
+			String.format("Invalid Z-order: %d, should be >= %d and <= %d", zOrder, minZ, maxZ));
+	}
+	
+	/**
+	 * Makes sure the Z-orders of the given objects are valid
+	 * @param objects Objects to check, may contain nulls
+	 */
+	private void assertZ(Collection<? extends ZSortable> objects) {
+		for (ZSortable object : objects) {
+			if (object != null) {
+				assertZ(object.getZOrder());
+			}
+		}
+	}
+	
+	/**
+	 * Moves the levels to a new range of Z-orders, in O(levels) time. Levels out of
+	 * the new range are dropped with their buckets, and should be empty.
+	 * @param newMinZ New min. Z-order (inclusive)
+	 * @param newMaxZ New max. Z-order (inclusive)
+	 */
+	private void resize(int newMinZ, int newMaxZ) {
+		// level i moves to level i + shift
+		int shift = minZ - newMinZ;
+		int from = Math.max(minZ, newMinZ) - minZ;
+		int to = Math.min(maxZ, newMaxZ) - minZ;
+		
+		Bucket[] resized = new Bucket[newMaxZ - newMinZ + 1];
+		System.arraycopy(buckets, from, resized, from + shift, to - from + 1);
+		allocated = 0;
+		for (int i = from + shift ; i <= to + shift ; ++i) {
+			if (resized[i] != null) {
+				++allocated;
+			}
+		}
+		
+		if (snapshotLevels != null) {
+			ZSortable[][] levels = new ZSortable[resized.length][];
+			System.arraycopy(snapshotLevels, from, levels, from + shift, to - from + 1);
+			snapshotLevels = levels;
+		}
+		
+		buckets = resized;
+		occupied = shift(occupied, from, to, shift, resized.length);
+		touched = shift(touched, from, to, shift, resized.length);
+		minZ = newMinZ;
+		maxZ = newMaxZ;
+		levelsMoved = true;
+	}
+	
+	/**
+	 * Copies a range of a bitmap to a new bitmap
+	 * @param bits Bitmap to copy
+	 * @param from First bit to copy
+	 * @param to Last bit to copy
+	 * @param shift Offset of the copied bits in the new bitmap
+	 * @param size Size of the new bitmap
+	 * @return The new bitmap
+	 */
+	private static OccupancyBitmap shift(OccupancyBitmap bits, int from, int to, int shift, int size) {
+		OccupancyBitmap shifted = new OccupancyBitmap(size);
+		for (int i = bits.nextSetBit(from) ; i >= 0 && i <= to ; i = bits.nextSetBit(i + 1)) {
+			shifted.set(i + shift);
 		}
+		return shifted;
 	}
 	
 	/* --- Inner Classes --- */
 	
 	/**
-	 * Auxiliary class that wraps an array of exposed lists in an iterator
+	 * A list that remembers which Z-level it holds
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class Bucket extends ExposedLinkedList<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** Bucket's Z-order */
+		public final int Z;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Initializes an empty bucket
+		 * @param z Bucket's Z-order
+		 */
+		public Bucket(int z) {
+			this.Z = z;
+		}
+	}
+	
+	/**
+	 * Auxiliary class that wraps the occupied buckets of the array within a Z-range in an iterator
 	 * 
 	 * @author itayd
 	 *
 	 */
 	private class MyArrayIterable implements ReverseIterable<ExposedLinkedList<ZSortable>> {
 		
+		/* --- Fields --- */
+		
+		/** Lowest Z-level in range */
+		private final int low;
+		
+		/** Highest Z-level in range, less than low if the range is empty */
+		private final int high;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param zLow Lowest Z-order in range
+		 * @param zHigh Highest Z-order in range
+		 */
+		public MyArrayIterable(int zLow, int zHigh) {
+			if (zLow > zHigh || zLow > maxZ || zHigh < minZ) {
+				this.low = 0;
+				this.high = -1;
+			} else {
+				this.low = Math.max(zLow, minZ) - minZ;
+				this.high = Math.min(zHigh, maxZ) - minZ;
+			}
+		}
+		
 		/* --- ReverseIterable Methods --- */
 		
 		/**
@@ -155,16 +898,18 @@ public class SimpleZCollection implements ZCollection {
 		public Iterator<ExposedLinkedList<ZSortable>> iterator() {
 			return new Iterator<ExposedLinkedList<ZSortable>>() {
 				
-				int index = 0;
+				int index = low > high ? -1 : occupied.nextSetBit(low);
 				
 				@Override
 				public boolean hasNext() {
-					return index <= maxZ;
+					return index >= 0 && index <= high;
 				}
 
 				@Override
 				public ExposedLinkedList<ZSortable> next() {
-					return buckets[index++];
+					Bucket bucket = buckets[index];
+					index = occupied.nextSetBit(index + 1);
+					return bucket;
 				}
 
 				@Override
@@ -181,16 +926,18 @@ public class SimpleZCollection implements ZCollection {
 		public Iterator<ExposedLinkedList<ZSortable>> reverseIterator() {
 			return new Iterator<ExposedLinkedList<ZSortable>>() {
 				
-				int index = maxZ;
+				int index = low > high ? -1 : occupied.previousSetBit(high);
 				
 				@Override
 				public boolean hasNext() {
-					return index >= 0;
+					return index >= low;
 				}
 
 				@Override
 				public ExposedLinkedList<ZSortable> next() {
-					return buckets[index--];
+					Bucket bucket = buckets[index];
+					index = occupied.previousSetBit(index - 1);
+					return bucket;
 				}
 
 				@Override
@@ -200,4 +947,81 @@ public class SimpleZCollection implements ZCollection {
 			};
 		}
 	}
+	
+	/**
+	 * Spliterator over a range of Z-levels
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class MySpliterator extends BucketSpliterator {
+		
+		/* --- Fields --- */
+		
+		/** Next Z-level to look at */
+		private int index;
+		
+		/** Last Z-level in range */
+		private final int high;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param low First Z-level in range
+		 * @param high Last Z-level in range
+		 * @param estimate Estimated number of objects in range
+		 */
+		public MySpliterator(int low, int high, long estimate) {
+			super(estimate);
+			this.index = low;
+			this.high = high;
+		}
+		
+		/* --- BucketSpliterator Methods --- */
+		
+		/**
+		 * @see {@link BucketSpliterator#nextBucket()}
+		 */
+		@Override
+		protected ExposedLinkedList<ZSortable> nextBucket() {
+			int next = index > high ? -1 : occupied.nextSetBit(index);
+			if (next < 0 || next > high) {
+				index = high + 1;
+				return null;
+			}
+			
+			index = next + 1;
+			return buckets[next];
+		}
+		
+		/**
+		 * Splits at the middle occupied Z-level, so that clustered Z-orders are split
+		 * as well, estimating each part by the objects in its levels
+		 * 
+		 * @see {@link BucketSpliterator#splitPrefix()}
+		 */
+		@Override
+		protected BucketSpliterator splitPrefix() {
+			int levels = 0;
+			for (int i = occupied.nextSetBit(index) ; i >= 0 && i <= high ; i = occupied.nextSetBit(i + 1)) {
+				++levels;
+			}
+			if (levels < 2) {
+				return null;
+			}
+			
+			// the lower half of the occupied levels goes to the prefix
+			int mid = index - 1;
+			long objects = 0;
+			for (int i = 0 ; i < levels / 2 ; ++i) {
+				mid = occupied.nextSetBit(mid + 1);
+				objects += buckets[mid].size();
+			}
+			
+			BucketSpliterator prefix = new MySpliterator(index, mid, objects);
+			index = mid + 1;
+			return prefix;
+		}
+	}
 }
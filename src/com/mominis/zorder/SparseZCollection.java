@@ -0,0 +1,748 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * A {@link ZCollection} accepting any int Z-order, including negative ones
+ * and ones with huge gaps between them.
+ * 
+ * Only occupied Z-orders have a bucket. Buckets are found through a hash map,
+ * and new buckets are placed using a radix tree of bitmaps that answers
+ * predecessor queries in a constant number of steps ({@link IntRadixSet}).
+ * Add, remove and change are therefore near-constant for any Z-order, and
+ * traversal is proportional to the number of objects and occupied buckets.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class SparseZCollection implements ZCollection {
+	
+	/* --- Constants --- */
+	
+	/** Estimated bytes of a bucket, with its link in the buckets list, hash map slots and radix tree bits */
+	private static final int BUCKET_BYTES = 80;
+	
+	/** Gives the Z-order of the bucket a link is in */
+	private static final ToIntFunction<ExposedLinkedList<ZSortable>.ExposedLink> BUCKET_Z =
+		link -> ((Bucket)link.getList()).Z;
+	
+	/* --- Fields --- */
+	
+	/** Occupied buckets, sorted by Z-order */
+	private final ExposedLinkedList<Bucket> buckets;
+	
+	/** Occupied buckets by Z-order */
+	private final IntObjectMap<Bucket> bucketsByZ;
+	
+	/** Occupied Z-orders */
+	private final IntRadixSet occupied;
+	
+	/** number of objects in the collection */
+	private int size;
+	
+	/** objects marked by markDirty(), waiting for commit() */
+	private final DirtyLinks dirty;
+	
+	/** whether traversal commits marked objects, or requires them to be committed */
+	private boolean autoCommit;
+	
+	/** receives operation events, {@link StatsRecorder#NONE} unless statistics are attached */
+	private StatsRecorder recorder;
+	
+	/** attached statistics, or null */
+	private ZCollectionStats stats;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty collection
+	 */
+	public SparseZCollection() {
+		buckets = new ExposedLinkedList<Bucket>();
+		bucketsByZ = new IntObjectMap<Bucket>();
+		occupied = new IntRadixSet();
+		
+		dirty = new DirtyLinks();
+		autoCommit = true;
+		recorder = StatsRecorder.NONE;
+	}
+	
+	/* --- ZCollection Methods --- */
+
+	/**
+	 * Appends the given object to the bucket of its Z-order, opening one if needed
+	 * 
+	 * @see {@link ZCollection#add(ZSortable)}
+	 */
+	@Override
+	public void add(ZSortable object) throws AlreadyInCollectionException {
+		
+		if (object == null) {
+			return;
+		}
+		
+		if (object.getCurrentLink() != null) {
+			throw new AlreadyInCollectionException();
+		}
+		
+		link(object);
+		recorder.added(1);
+	}
+
+	/**
+	 * Unlinks the object, and closes its bucket if it is now empty
+	 * 
+	 * @see {@link ZCollection#remove(ZSortable)}
+	 */
+	@Override
+	public void remove(ZSortable object) {
+		if (object != null && owns(object)) {
+			unlink(object);
+			recorder.removed(1);
+		}
+	}
+
+	/**
+	 * @see {@link ZCollection#change(ZSortable)}
+	 */
+	@Override
+	public void change(ZSortable object) {
+		if (object == null) {
+			return;
+		}
+		
+		if (owns(object)) {
+			unlink(object);
+		} else if (object.getCurrentLink() != null) {
+			// in another collection
+			return;
+		}
+		link(object);
+		recorder.changed(1);
+	}
+	
+	/**
+	 * Checks all objects first, then appends every run of consecutive objects
+	 * with the same Z-order to its bucket, looking up (or opening) the bucket
+	 * once per run
+	 * 
+	 * @see {@link ZCollection#addAll(Collection)}
+	 */
+	@Override
+	public void addAll(Collection<? extends ZSortable> objects) throws AlreadyInCollectionException {
+		BulkChecks.assertNotInCollection(objects);
+		int before = size;
+		splice(objects);
+		recorder.added(size - before);
+	}
+	
+	/**
+	 * @see {@link ZCollection#removeAll(Collection)}
+	 */
+	@Override
+	public void removeAll(Collection<? extends ZSortable> objects) {
+		for (ZSortable object : objects) {
+			remove(object);
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#changeAll(Collection)}
+	 */
+	@Override
+	public void changeAll(Collection<? extends ZSortable> objects) {
+		for (ZSortable object : objects) {
+			if (object != null && owns(object)) {
+				unlink(object);
+			}
+		}
+		
+		int before = size;
+		splice(objects);
+		recorder.changed(size - before);
+	}
+
+	/**
+	 * @see {@link ZCollection#markDirty(ZSortable)}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void markDirty(ZSortable object) {
+		if (object != null && owns(object)) {
+			// links are always created by one of our buckets
+			dirty.mark((ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink());
+		}
+	}
+	
+	/**
+	 * Compares every marked object's Z-order with its bucket's, and moves the
+	 * ones that differ one by one, so a bucket that some objects leave and
+	 * others enter is not closed and reopened
+	 * 
+	 * @see {@link ZCollection#commit()}
+	 */
+	@Override
+	public void commit() {
+		if (dirty.isEmpty()) {
+			return;
+		}
+		
+		List<ZSortable> moved = dirty.drain(BUCKET_Z);
+		for (int i = 0 ; i < moved.size() ; ++i) {
+			change(moved.get(i));
+		}
+	}
+	
+	/**
+	 * @see {@link ZCollection#setAutoCommit(boolean)}
+	 */
+	@Override
+	public void setAutoCommit(boolean autoCommit) {
+		this.autoCommit = autoCommit;
+	}
+
+	/**
+	 * @see {@link ZCollection#size()}
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @see {@link ZCollection#isEmpty()}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Reads the size of the Z-order's bucket, if open
+	 * 
+	 * @see {@link ZCollection#countAt(int)}
+	 */
+	@Override
+	public int countAt(int zOrder) {
+		Bucket bucket = bucketsByZ.get(zOrder);
+		return bucket == null ? 0 : bucket.size();
+	}
+
+	/**
+	 * @see {@link ZCollection#backToFrontIterator()}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator() {
+		return backToFrontIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @see {@link ZCollection#frontToBackIterator()}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator() {
+		return frontToBackIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachBackToFront(Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(Consumer<? super ZSortable> action) {
+		forEachBackToFront(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#forEachFrontToBack(Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(Consumer<? super ZSortable> action) {
+		forEachFrontToBack(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+	}
+	
+	/**
+	 * @see {@link ZCollection#backToFrontIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> backToFrontIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MultiBucketIterator<ZSortable>(new MyBucketsIterable(zLow, zHigh), false, this::remove);
+	}
+	
+	/**
+	 * @see {@link ZCollection#frontToBackIterator(int, int)}
+	 */
+	@Override
+	public Iterator<ZSortable> frontToBackIterator(int zLow, int zHigh) {
+		prepareTraversal();
+		return new MultiBucketIterator<ZSortable>(new MyBucketsIterable(zLow, zHigh), true, this::remove);
+	}
+	
+	/**
+	 * Finds the first bucket in range through the hash map and the radix tree, then walks the buckets list
+	 * and the links of every bucket directly up to the upper bound
+	 * 
+	 * @see {@link ZCollection#forEachBackToFront(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachBackToFront(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (zLow > zHigh) {
+			return;
+		}
+		
+		int visitedBuckets = 0;
+		int visitedObjects = 0;
+		ExposedLinkedList<Bucket>.ExposedLink bucket = ceilingBucket(zLow);
+		while (bucket != null && bucket.object.Z <= zHigh) {
+			++visitedBuckets;
+			ExposedLinkedList<ZSortable>.ExposedLink link = bucket.object.getHead();
+			while (link != null) {
+				// fetch next link first, in case the action removes the object
+				ExposedLinkedList<ZSortable>.ExposedLink next = link.next;
+				action.accept(link.object);
+				++visitedObjects;
+				link = next;
+			}
+			// a closed bucket still points at its neighbours
+			bucket = bucket.next;
+		}
+		recorder.traversed(visitedBuckets, visitedObjects);
+	}
+	
+	/**
+	 * Finds the last bucket in range through the hash map and the radix tree, then walks the buckets list
+	 * and the links of every bucket directly down to the lower bound
+	 * 
+	 * @see {@link ZCollection#forEachFrontToBack(int, int, Consumer)}
+	 */
+	@Override
+	public void forEachFrontToBack(int zLow, int zHigh, Consumer<? super ZSortable> action) {
+		prepareTraversal();
+		if (zLow > zHigh) {
+			return;
+		}
+		
+		int visitedBuckets = 0;
+		int visitedObjects = 0;
+		ExposedLinkedList<Bucket>.ExposedLink bucket = floorBucket(zHigh);
+		while (bucket != null && bucket.object.Z >= zLow) {
+			++visitedBuckets;
+			ExposedLinkedList<ZSortable>.ExposedLink link = bucket.object.getTail();
+			while (link != null) {
+				// fetch next link first, in case the action removes the object
+				ExposedLinkedList<ZSortable>.ExposedLink prev = link.prev;
+				action.accept(link.object);
+				++visitedObjects;
+				link = prev;
+			}
+			// a closed bucket still points at its neighbours
+			bucket = bucket.prev;
+		}
+		recorder.traversed(visitedBuckets, visitedObjects);
+	}
+	
+	/**
+	 * Splits the occupied buckets in halves
+	 * 
+	 * @see {@link ZCollection#spliterator()}
+	 */
+	@Override
+	public Spliterator<ZSortable> spliterator() {
+		prepareTraversal();
+		return new MySpliterator(buckets.getHead(), buckets.size(), size);
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Attaches statistics to the collection, which counts its operations into them from now on
+	 * @param stats Statistics to attach, or null to detach them
+	 */
+	public void setStats(ZCollectionStats stats) {
+		this.stats = stats;
+		this.recorder = stats == null ? StatsRecorder.NONE : stats;
+	}
+	
+	/**
+	 * Brings the bucket figures of the attached statistics up to date, in constant time.
+	 * Every bucket is opened for an occupied Z-order, and closed once empty.
+	 * 
+	 * @return Attached statistics, or null if none are attached
+	 */
+	public ZCollectionStats getStats() {
+		if (stats != null) {
+			int count = bucketsByZ.size();
+			stats.sample(count, 0, count, (long)size * ZCollectionStats.LINK_BYTES + (long)count * BUCKET_BYTES);
+		}
+		return stats;
+	}
+	
+	/* --- Package Methods --- */
+	
+	/**
+	 * @return Number of open buckets
+	 */
+	/* package */ int getBucketCount() {
+		return bucketsByZ.size();
+	}
+	
+	/**
+	 * @param object Object to look for
+	 * @return Whether the object is in this collection, in constant time
+	 */
+	/* package */ boolean owns(ZSortable object) {
+		if (!(object.getCurrentLink() instanceof ExposedLinkedList.ExposedLink)) {
+			return false;
+		}
+		
+		ExposedLinkedList<?> list = ((ExposedLinkedList<?>.ExposedLink)object.getCurrentLink()).getList();
+		return list instanceof Bucket && bucketsByZ.get(((Bucket)list).Z) == list;
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Commits marked objects before a traversal, or fails if auto-commit is off
+	 */
+	private void prepareTraversal() {
+		if (!dirty.isEmpty()) {
+			if (!autoCommit) {
+				throw new IllegalStateException("Uncommitted changes, call commit() before traversal");
+			}
+			commit();
+		}
+	}
+	
+	/**
+	 * Appends an object to the bucket of its Z-order, opening one if needed
+	 * @param object Object to append, not in the collection
+	 */
+	private void link(ZSortable object) {
+		int zOrder = object.getZOrder();
+		Bucket bucket = bucketsByZ.get(zOrder);
+		if (bucket == null) {
+			bucket = openBucket(zOrder);
+		}
+		
+		object.setCurrentLink(bucket.append(object));
+		++size;
+	}
+	
+	/**
+	 * Unlinks an object, and closes its bucket if it is now empty
+	 * @param object Object to unlink, in the collection
+	 */
+	@SuppressWarnings("unchecked")
+	private void unlink(ZSortable object) {
+		// links are always created by one of our buckets
+		ExposedLinkedList<ZSortable>.ExposedLink link =
+			(ExposedLinkedList<ZSortable>.ExposedLink)object.getCurrentLink();
+		link.unlink();
+		object.setCurrentLink(null);
+		--size;
+		
+		Bucket bucket = (Bucket)link.getList();
+		if (bucket.isEmpty()) {
+			closeBucket(bucket);
+		}
+	}
+	
+	/**
+	 * Adds objects that are known to be not in a collection, skipping
+	 * nulls and objects given twice
+	 * @param objects Objects to add
+	 */
+	private void splice(Collection<? extends ZSortable> objects) {
+		Bucket bucket = null;
+		for (ZSortable object : objects) {
+			if (object == null || object.getCurrentLink() != null) {
+				continue;
+			}
+			
+			int zOrder = object.getZOrder();
+			if (bucket == null || bucket.Z != zOrder) {
+				// a new run
+				bucket = bucketsByZ.get(zOrder);
+				if (bucket == null) {
+					bucket = openBucket(zOrder);
+				}
+			}
+			object.setCurrentLink(bucket.append(object));
+			++size;
+		}
+	}
+	
+	/**
+	 * @param z Z-order
+	 * @return Link of the first open bucket with a Z-order that is greater
+	 *         than or equals to z, or null if there is none
+	 */
+	private ExposedLinkedList<Bucket>.ExposedLink ceilingBucket(int z) {
+		ExposedLinkedList<Bucket>.ExposedLink floor = floorBucket(z);
+		if (floor == null) {
+			return buckets.getHead();
+		}
+		return floor.object.Z == z ? floor : floor.next;
+	}
+	
+	/**
+	 * @param z Z-order
+	 * @return Link of the last open bucket with a Z-order that is less than
+	 *         or equals to z, or null if there is none
+	 */
+	private ExposedLinkedList<Bucket>.ExposedLink floorBucket(int z) {
+		Bucket bucket = bucketsByZ.get(z);
+		if (bucket != null) {
+			return bucket.Link;
+		}
+		
+		long lower = occupied.lower(z);
+		return lower == IntRadixSet.NONE ? null : bucketsByZ.get((int)lower).Link;
+	}
+	
+	/**
+	 * Opens a new bucket for a Z-order, right after the bucket preceding it
+	 * @param zOrder Bucket's Z-order, with no bucket yet
+	 * @return The new bucket
+	 */
+	private Bucket openBucket(int zOrder) {
+		long lower = occupied.lower(zOrder);
+		ExposedLinkedList<Bucket>.ExposedLink previous =
+			lower == IntRadixSet.NONE ? null : bucketsByZ.get((int)lower).Link;
+		
+		Bucket bucket = new Bucket(zOrder);
+		bucket.Link = buckets.insertAfter(previous, bucket);
+		bucketsByZ.put(zOrder, bucket);
+		occupied.add(zOrder);
+		return bucket;
+	}
+	
+	/**
+	 * Closes an empty bucket
+	 * @param bucket Bucket to close
+	 */
+	private void closeBucket(Bucket bucket) {
+		bucket.Link.unlink();
+		bucketsByZ.remove(bucket.Z);
+		occupied.remove(bucket.Z);
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * A list that remembers which Z-order it holds and its link in the buckets list
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private static class Bucket extends ExposedLinkedList<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** Bucket's Z-order */
+		public final int Z;
+		
+		/** Bucket's link in the buckets list */
+		public ExposedLinkedList<Bucket>.ExposedLink Link;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Initializes an empty bucket
+		 * @param z Bucket's Z-order
+		 */
+		public Bucket(int z) {
+			this.Z = z;
+		}
+	}
+	
+	/**
+	 * Auxiliary class that wraps the open buckets within a Z-range and exposes an iterator
+	 * of exposed lists over {@link ZSortable}
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class MyBucketsIterable implements ReverseIterable<ExposedLinkedList<ZSortable>> {
+		
+		/* --- Fields --- */
+		
+		/** Lowest Z-order in range */
+		private final int zLow;
+		
+		/** Highest Z-order in range */
+		private final int zHigh;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param zLow Lowest Z-order in range
+		 * @param zHigh Highest Z-order in range
+		 */
+		public MyBucketsIterable(int zLow, int zHigh) {
+			this.zLow = zLow;
+			this.zHigh = zHigh;
+		}
+		
+		/* --- ReverseIterable Methods --- */
+	
+		/**
+		 * @see ReverseIterable#iterator()
+		 */
+		@Override
+		public Iterator<ExposedLinkedList<ZSortable>> iterator() {
+			return new Iterator<ExposedLinkedList<ZSortable>>() {
+				
+				ExposedLinkedList<Bucket>.ExposedLink bucket = zLow > zHigh ? null : ceilingBucket(zLow);
+				
+				@Override
+				public boolean hasNext() {
+					return bucket != null && bucket.object.Z <= zHigh;
+				}
+
+				@Override
+				public ExposedLinkedList<ZSortable> next() {
+					Bucket result = bucket.object;
+					bucket = bucket.next;
+					return result;
+				}
+
+				@Override
+				public void remove() {
+					// not implemented
+				}
+			};
+		}
+
+		/**
+		 * @see ReverseIterable#reverseIterator()
+		 */
+		@Override
+		public Iterator<ExposedLinkedList<ZSortable>> reverseIterator() {
+			return new Iterator<ExposedLinkedList<ZSortable>>() {
+				
+				ExposedLinkedList<Bucket>.ExposedLink bucket = zLow > zHigh ? null : floorBucket(zHigh);
+				
+				@Override
+				public boolean hasNext() {
+					return bucket != null && bucket.object.Z >= zLow;
+				}
+
+				@Override
+				public ExposedLinkedList<ZSortable> next() {
+					Bucket result = bucket.object;
+					bucket = bucket.prev;
+					return result;
+				}
+
+				@Override
+				public void remove() {
+					// not implemented
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Spliterator over a run of consecutive buckets
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class MySpliterator extends BucketSpliterator {
+		
+		/* --- Fields --- */
+		
+		/** Next bucket to yield */
+		private ExposedLinkedList<Bucket>.ExposedLink bucket;
+		
+		/** Number of buckets left in range */
+		private int count;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param bucket First bucket in range
+		 * @param count Number of buckets in range
+		 * @param estimate Estimated number of objects in range
+		 */
+		public MySpliterator(ExposedLinkedList<Bucket>.ExposedLink bucket, int count, long estimate) {
+			super(estimate);
+			this.bucket = bucket;
+			this.count = count;
+		}
+		
+		/* --- BucketSpliterator Methods --- */
+		
+		/**
+		 * @see {@link BucketSpliterator#nextBucket()}
+		 */
+		@Override
+		protected ExposedLinkedList<ZSortable> nextBucket() {
+			if (bucket == null || count == 0) {
+				return null;
+			}
+			
+			Bucket result = bucket.object;
+			bucket = bucket.next;
+			--count;
+			return result;
+		}
+		
+		/**
+		 * Splits at the middle bucket, walking the lower half of the buckets to
+		 * count their objects
+		 * 
+		 * @see {@link BucketSpliterator#splitPrefix()}
+		 */
+		@Override
+		protected BucketSpliterator splitPrefix() {
+			if (count < 2) {
+				return null;
+			}
+			
+			ExposedLinkedList<Bucket>.ExposedLink first = bucket;
+			int half = count >> 1;
+			long objects = 0;
+			for (int i = 0 ; i < half ; ++i) {
+				objects += bucket.object.size();
+				bucket = bucket.next;
+			}
+			
+			count -= half;
+			return new MySpliterator(first, half, objects);
+		}
+	}
+}
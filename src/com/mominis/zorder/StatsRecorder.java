@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+/**
+ * Receives the events a collection reports to its {@link ZCollectionStats}.
+ * 
+ * Collections report to {@link #NONE} until statistics are attached. Its methods
+ * are empty, so as long as no collection has statistics attached the calls are
+ * inlined away by the JIT, together with the counting feeding them.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ interface StatsRecorder {
+	
+	/** Ignores all events */
+	public static final StatsRecorder NONE = new StatsRecorder() {
+		
+		@Override
+		public void added(int count) {
+			// ignored
+		}
+		
+		@Override
+		public void removed(int count) {
+			// ignored
+		}
+		
+		@Override
+		public void changed(int count) {
+			// ignored
+		}
+		
+		@Override
+		public void searched(int buckets) {
+			// ignored
+		}
+		
+		@Override
+		public void traversed(int buckets, int objects) {
+			// ignored
+		}
+	};
+	
+	/**
+	 * Objects were added
+	 * @param count Number of objects
+	 */
+	public void added(int count);
+	
+	/**
+	 * Objects were removed
+	 * @param count Number of objects
+	 */
+	public void removed(int count);
+	
+	/**
+	 * Objects were moved to their Z-order
+	 * @param count Number of objects
+	 */
+	public void changed(int count);
+	
+	/**
+	 * A bucket was searched for among the buckets opened after a predetermined one
+	 * @param buckets Number of buckets searched
+	 */
+	public void searched(int buckets);
+	
+	/**
+	 * A forEach traversal ended
+	 * @param buckets Number of buckets visited
+	 * @param objects Number of objects visited
+	 */
+	public void traversed(int buckets, int objects);
+}
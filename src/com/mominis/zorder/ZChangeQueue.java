@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+/**
+ * A bounded, lock-free queue of add/remove/change requests for a {@link ZCollection}
+ * that may only be modified by its owning thread (e.g. the game thread).
+ * 
+ * Any thread may offer requests. The owner applies them with {@link #drainAndApply()},
+ * which coalesces repeated changes of the same object: changes are applied with
+ * {@link ZCollection#markDirty(ZSortable)} and a single {@link ZCollection#commit()}, so
+ * every object is moved at most once, to its Z-order at the time of the drain.
+ * 
+ * The queue is a ring of slots, each with a sequence number telling whether it
+ * is free to write or ready to read. Producers claim slots by advancing the
+ * tail with a CAS, and nothing is allocated once the owner's collection has
+ * reached its steady state.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ZChangeQueue {
+	
+	/* --- Constants --- */
+	
+	/** Request to add an object */
+	private static final byte ADD = 0;
+	
+	/** Request to remove an object */
+	private static final byte REMOVE = 1;
+	
+	/** Request to change an object's Z-order */
+	private static final byte CHANGE = 2;
+	
+	/* --- Fields --- */
+	
+	/** Collection the requests are applied to */
+	private final ZCollection collection;
+	
+	/** Number of slots - a power of two */
+	private final int capacity;
+	
+	/** Slot index mask */
+	private final int mask;
+	
+	/** Object of every slot's request */
+	private final ZSortable[] objects;
+	
+	/** Kind of every slot's request */
+	private final byte[] requests;
+	
+	/**
+	 * Sequence of every slot. A slot at position p may be written when its sequence
+	 * is p, and read once its sequence is p + 1. Publishes the slot's request.
+	 */
+	private final AtomicLongArray sequences;
+	
+	/** Position of the next slot to claim by producers */
+	private final AtomicLong tail;
+	
+	/** Position of the next slot to read, by the owner only */
+	private long head;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes an empty queue.
+	 * 
+	 * @param collection Collection to apply requests to
+	 * @param capacity Max. number of requests waiting to be applied, rounded up to a power of two
+	 * @throws IllegalArgumentException If the capacity is not positive
+	 */
+	public ZChangeQueue(ZCollection collection, int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException(
+				String.format("Invalid capacity: %d, should be > 0 and <= %d", capacity, 1 << 30));
+		}
+		
+		int slots = 1;
+		while (slots < capacity) {
+			slots <<= 1;
+		}
+		
+		this.collection = collection;
+		this.capacity = slots;
+		this.mask = slots - 1;
+		objects = new ZSortable[slots];
+		requests = new byte[slots];
+		sequences = new AtomicLongArray(slots);
+		for (int i = 0 ; i < slots ; ++i) {
+			sequences.set(i, i);
+		}
+		tail = new AtomicLong();
+		head = 0;
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * Requests to add an object. Safe to call from any thread.
+	 * @param object Object to add
+	 * @return false if the queue is full and the request was not queued
+	 */
+	public boolean offerAdd(ZSortable object) {
+		return offer(ADD, object);
+	}
+	
+	/**
+	 * Requests to remove an object. Safe to call from any thread.
+	 * @param object Object to remove
+	 * @return false if the queue is full and the request was not queued
+	 */
+	public boolean offerRemove(ZSortable object) {
+		return offer(REMOVE, object);
+	}
+	
+	/**
+	 * Requests to move an object to its Z-order, which should be set before
+	 * calling. Safe to call from any thread.
+	 * @param object Object whose Z-order has changed
+	 * @return false if the queue is full and the request was not queued
+	 */
+	public boolean offerChange(ZSortable object) {
+		return offer(CHANGE, object);
+	}
+	
+	/**
+	 * @return Max. number of requests waiting to be applied
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Applies the queued requests to the collection, in the order they were queued.
+	 * Call from the thread that owns the collection only.
+	 * 
+	 * Requests queued while draining may be left for the next call, and at most
+	 * {@link #capacity()} requests are applied per call. Changes of objects that are
+	 * not in the collection by the time they're applied are ignored.
+	 * 
+	 * If a request fails, the exception is thrown, and the requests after it stay
+	 * queued. Changes applied before it stay marked in the collection, and are moved
+	 * by its next commit.
+	 * 
+	 * @return Number of requests applied
+	 * @throws AlreadyInCollectionException If an object to add is already in a collection
+	 * @throws IllegalArgumentException If the Z-order of an object to add or change is invalid
+	 */
+	public int drainAndApply() throws AlreadyInCollectionException {
+		int applied = 0;
+		while (applied < capacity) {
+			int slot = (int)head & mask;
+			if (sequences.get(slot) != head + 1) {
+				// empty, or the next slot's producer hasn't written it yet
+				break;
+			}
+			
+			ZSortable object = objects[slot];
+			byte request = requests[slot];
+			objects[slot] = null;
+			sequences.lazySet(slot, head + capacity);
+			++head;
+			++applied;
+			
+			switch (request) {
+			case ADD:
+				collection.add(object);
+				break;
+			case REMOVE:
+				collection.remove(object);
+				break;
+			default:
+				collection.markDirty(object);
+				break;
+			}
+		}
+		
+		collection.commit();
+		return applied;
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Claims a slot and writes a request to it
+	 * @param request Kind of request
+	 * @param object Object of the request
+	 * @return false if the queue is full
+	 */
+	private boolean offer(byte request, ZSortable object) {
+		long position = tail.get();
+		while (true) {
+			long sequence = sequences.get((int)position & mask);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = tail.get();
+			} else if (sequence < position) {
+				// the slot still holds a request from the last lap
+				return false;
+			} else {
+				// another producer claimed it
+				position = tail.get();
+			}
+		}
+		
+		int slot = (int)position & mask;
+		objects[slot] = object;
+		requests[slot] = request;
+		sequences.lazySet(slot, position + 1);
+		return true;
+	}
+}
@@ -22,7 +22,12 @@
  */
 package com.mominis.zorder;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.mominis.zorder.except.AlreadyInCollectionException;
 
@@ -52,28 +57,220 @@ public interface ZCollection {
 	public void add(ZSortable object) throws AlreadyInCollectionException;
 	
 	/**
-	 * Removes the given object from the collection
+	 * Removes the given object from the collection.
+	 * Objects that are not in the collection, including objects in another collection, are ignored.
+	 * 
 	 * @param object Object to remove
 	 */
 	public void remove(ZSortable object);
 	
 	/**
-	 * Notify the collection that the object's Z-order has been changed
+	 * Notify the collection that the object's Z-order has been changed.
+	 * Objects that are not in a collection are added, objects in another collection are ignored.
+	 * 
 	 * @param object Object to the change Z-order of
 	 * @throws IllegalArgumentException If the object's Z-order is invalid
 	 */
 	public void change(ZSortable object);
 	
 	/**
-	 * Iterate sortables in back-to-front order
+	 * Adds many objects to the collection at once, e.g. when loading a level.
+	 * 
+	 * All objects are checked once up front, and the bucket of every run of consecutive
+	 * objects with the same Z-order is looked up once, so objects given grouped by Z-order
+	 * (e.g. layer by layer) load fastest. Objects with the same Z-order keep their
+	 * relative order.
+	 * 
+	 * All objects are checked before the collection is modified, so if an exception
+	 * is thrown the collection is left untouched. Null objects are ignored, and
+	 * an object given more than once is added once.
+	 * 
+	 * @param objects Objects to add
+	 * @throws AlreadyInCollectionException Thrown when one of the objects has been already added to a collection.
+	 * @throws IllegalArgumentException If one of the objects' Z-order is invalid
+	 */
+	public void addAll(Collection<? extends ZSortable> objects) throws AlreadyInCollectionException;
+	
+	/**
+	 * Removes many objects from the collection at once, e.g. when unloading a level.
+	 * 
+	 * Null objects and objects that are not in the collection are ignored.
+	 * 
+	 * @param objects Objects to remove
+	 */
+	public void removeAll(Collection<? extends ZSortable> objects);
+	
+	/**
+	 * Notify the collection that the Z-order of many objects has been changed.
+	 * 
+	 * Equivalent to {@link #removeAll(Collection)} followed by {@link #addAll(Collection)},
+	 * but all Z-orders are checked first, so if an exception is thrown the collection is left
+	 * untouched. Objects that were not in a collection are added, objects in another
+	 * collection are ignored.
+	 * 
+	 * @param objects Objects to the change Z-order of
+	 * @throws IllegalArgumentException If one of the objects' Z-order is invalid
+	 */
+	public void changeAll(Collection<? extends ZSortable> objects);
+	
+	/**
+	 * Deferred version of {@link #change(ZSortable)}: records that the object's Z-order
+	 * may have changed, without moving it. The object is moved by the next {@link #commit()}.
+	 * 
+	 * Marking an object more than once before committing costs nothing extra.
+	 * Objects that are not in the collection are ignored.
+	 * 
+	 * @param object Object to mark
+	 */
+	public void markDirty(ZSortable object);
+	
+	/**
+	 * Moves every object marked by {@link #markDirty(ZSortable)} to its current Z-order,
+	 * once. Objects that ended up at the Z-order they were at are left untouched, and
+	 * objects removed after being marked are ignored.
+	 * 
+	 * @throws IllegalArgumentException If one of the marked objects' Z-order is invalid. The marks
+	 *                                  are dropped, and no object is moved.
+	 */
+	public void commit();
+	
+	/**
+	 * Chooses what iterating and visiting do while there are uncommitted marks.
+	 * 
+	 * @param autoCommit true (the default) to {@link #commit()} before traversal, false to throw
+	 *                   IllegalStateException instead
+	 */
+	public void setAutoCommit(boolean autoCommit);
+	
+	/**
+	 * @return Number of objects in the collection, in constant time
+	 */
+	public int size();
+	
+	/**
+	 * @return Whether there are no objects in the collection
+	 */
+	public boolean isEmpty();
+	
+	/**
+	 * Counts the objects at a Z-order, e.g. to decide whether to skip a layer.
+	 * 
+	 * @param zOrder Z-order to look at
+	 * @return Number of objects with exactly that Z-order
+	 */
+	public int countAt(int zOrder);
+	
+	/**
+	 * Iterate sortables in back-to-front order.
+	 * 
+	 * The iterator's remove() removes the last sortable yielded from the collection
+	 * in constant time, and iteration goes on.
+	 * 
 	 * @return Back-to-front iterator
 	 */
 	public Iterator<ZSortable> backToFrontIterator();
 	
 	/**
-	 * Iterate sortables in front-to-back order
+	 * Iterate sortables in front-to-back order.
+	 * 
+	 * The iterator's remove() removes the last sortable yielded from the collection
+	 * in constant time, and iteration goes on.
+	 * 
 	 * @return Front-to-back iterator
 	 */
 	public Iterator<ZSortable> frontToBackIterator();
 	
+	/**
+	 * Visits sortables in back-to-front order, without allocating.
+	 * 
+	 * The visited object may be removed from the collection by the action.
+	 * 
+	 * @param action Action to perform on every sortable
+	 */
+	public void forEachBackToFront(Consumer<? super ZSortable> action);
+	
+	/**
+	 * Visits sortables in front-to-back order, without allocating.
+	 * 
+	 * The visited object may be removed from the collection by the action.
+	 * 
+	 * @param action Action to perform on every sortable
+	 */
+	public void forEachFrontToBack(Consumer<? super ZSortable> action);
+	
+	/**
+	 * Iterate sortables with a Z-order between zLow and zHigh (inclusive) in back-to-front order.
+	 * 
+	 * The cost is proportional to the number of sortables in range, rather than
+	 * in the whole collection.
+	 * 
+	 * @param zLow Lowest Z-order to visit
+	 * @param zHigh Highest Z-order to visit
+	 * @return Back-to-front iterator, empty if zLow > zHigh
+	 */
+	public Iterator<ZSortable> backToFrontIterator(int zLow, int zHigh);
+	
+	/**
+	 * Iterate sortables with a Z-order between zLow and zHigh (inclusive) in front-to-back order.
+	 * 
+	 * @param zLow Lowest Z-order to visit
+	 * @param zHigh Highest Z-order to visit
+	 * @return Front-to-back iterator, empty if zLow > zHigh
+	 * @see #backToFrontIterator(int, int)
+	 */
+	public Iterator<ZSortable> frontToBackIterator(int zLow, int zHigh);
+	
+	/**
+	 * Visits sortables with a Z-order between zLow and zHigh (inclusive) in back-to-front
+	 * order, without allocating.
+	 * 
+	 * The visited object may be removed from the collection by the action.
+	 * 
+	 * @param zLow Lowest Z-order to visit
+	 * @param zHigh Highest Z-order to visit
+	 * @param action Action to perform on every sortable in range
+	 * @see #backToFrontIterator(int, int)
+	 */
+	public void forEachBackToFront(int zLow, int zHigh, Consumer<? super ZSortable> action);
+	
+	/**
+	 * Visits sortables with a Z-order between zLow and zHigh (inclusive) in front-to-back
+	 * order, without allocating.
+	 * 
+	 * The visited object may be removed from the collection by the action.
+	 * 
+	 * @param zLow Lowest Z-order to visit
+	 * @param zHigh Highest Z-order to visit
+	 * @param action Action to perform on every sortable in range
+	 * @see #backToFrontIterator(int, int)
+	 */
+	public void forEachFrontToBack(int zLow, int zHigh, Consumer<? super ZSortable> action);
+	
+	/**
+	 * Splits sortables in back-to-front order on bucket boundaries, so they can be
+	 * processed in parallel.
+	 * 
+	 * The spliterator is {@link Spliterator#ORDERED}, and estimates its size from the
+	 * number of objects in the collection. The collection must not be modified
+	 * while the spliterator is in use.
+	 * 
+	 * @return Back-to-front spliterator
+	 */
+	public Spliterator<ZSortable> spliterator();
+	
+	/**
+	 * @return Sequential stream of the sortables in back-to-front order
+	 * @see #spliterator()
+	 */
+	public default Stream<ZSortable> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * @return Parallel stream of the sortables, with back-to-front encounter order
+	 * @see #spliterator()
+	 */
+	public default Stream<ZSortable> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Collection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the collections, for finding out which collection
+ * and which Z-orders made a frame slow from a recording, without a profiler.
+ * 
+ * Events are created, begun and dropped on every operation they cover. While no
+ * recording takes them they are never committed, and the JIT does away with them.
+ * Fields are only filled in for events that are about to be committed.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+/* package */ final class ZCollectionEvents {
+	
+	/* --- Constants --- */
+	
+	/** Category of all events */
+	private static final String CATEGORY = "Z-Order";
+	
+	/**
+	 * Searches among fewer buckets opened after a predetermined one take a handful
+	 * of steps, and are not reported
+	 */
+	public static final int SLOW_SEARCH_BUCKETS = 32;
+	
+	/* --- Constructor --- */
+	
+	private ZCollectionEvents() {
+		// static only
+	}
+	
+	/* --- Package Methods --- */
+	
+	/**
+	 * @param collection Collection reporting an event
+	 * @return A name telling the collection apart from others
+	 */
+	/* package */ static String describe(Object collection) {
+		return collection.getClass().getSimpleName() + '@' + Integer.toHexString(System.identityHashCode(collection));
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * A forEach traversal of a Z-order range
+	 * 
+	 * @author itayd
+	 *
+	 */
+	@Name("com.mominis.zorder.Traversal")
+	@Label("Z-Order Traversal")
+	@Category(CATEGORY)
+	@Description("A forEach traversal over a range of Z-orders")
+	@StackTrace(false)
+	/* package */ static final class Traversal extends Event {
+		
+		/* --- Fields --- */
+		
+		@Label("Collection")
+		public String Collection;
+		
+		@Label("Front To Back")
+		public boolean FrontToBack;
+		
+		@Label("Low Z-Order")
+		public int ZLow;
+		
+		@Label("High Z-Order")
+		public int ZHigh;
+		
+		@Label("Buckets Visited")
+		public int Buckets;
+		
+		@Label("Objects Visited")
+		public int Objects;
+		
+		/* --- Public Methods --- */
+		
+		/**
+		 * Fills in the event
+		 * @param collection Traversed collection
+		 * @param frontToBack Direction of the traversal
+		 * @param zLow Lower bound of the traversal
+		 * @param zHigh Upper bound of the traversal
+		 * @param buckets Number of buckets visited
+		 * @param objects Number of objects visited
+		 */
+		public void set(Object collection, boolean frontToBack, int zLow, int zHigh, int buckets, int objects) {
+			this.Collection = describe(collection);
+			this.FrontToBack = frontToBack;
+			this.ZLow = zLow;
+			this.ZHigh = zHigh;
+			this.Buckets = buckets;
+			this.Objects = objects;
+		}
+	}
+	
+	/**
+	 * A bulk operation - addAll(), removeAll(), changeAll() or commit()
+	 * 
+	 * @author itayd
+	 *
+	 */
+	@Name("com.mominis.zorder.BulkOperation")
+	@Label("Z-Order Bulk Operation")
+	@Category(CATEGORY)
+	@Description("Objects added, removed or moved at once")
+	/* package */ static final class BulkOperation extends Event {
+		
+		/* --- Fields --- */
+		
+		@Label("Collection")
+		public String Collection;
+		
+		@Label("Operation")
+		public String Operation;
+		
+		@Label("Objects")
+		@Description("Number of objects added, removed or moved")
+		public int Objects;
+		
+		@Label("Low Z-Order")
+		@Description("Lowest Z-order of the objects given")
+		public int ZLow;
+		
+		@Label("High Z-Order")
+		@Description("Highest Z-order of the objects given")
+		public int ZHigh;
+		
+		/* --- Public Methods --- */
+		
+		/**
+		 * Fills in the event. Goes over the objects again to find their Z-orders.
+		 * @param collection Operated collection
+		 * @param operation Name of the operation
+		 * @param count Number of objects added, removed or moved
+		 * @param objects Objects given to the operation
+		 */
+		public void set(Object collection, String operation, int count, Collection<? extends ZSortable> objects) {
+			int zLow = Integer.MAX_VALUE;
+			int zHigh = Integer.MIN_VALUE;
+			for (ZSortable object : objects) {
+				if (object != null) {
+					zLow = Math.min(zLow, object.getZOrder());
+					zHigh = Math.max(zHigh, object.getZOrder());
+				}
+			}
+			
+			this.Collection = describe(collection);
+			this.Operation = operation;
+			this.Objects = count;
+			this.ZLow = zLow;
+			this.ZHigh = zHigh;
+		}
+	}
+	
+	/**
+	 * A search among many buckets opened after a predetermined one
+	 * 
+	 * @author itayd
+	 *
+	 */
+	@Name("com.mominis.zorder.SlowBucketSearch")
+	@Label("Z-Order Slow Bucket Search")
+	@Category(CATEGORY)
+	@Description("A search for a bucket among many buckets opened for non-predetermined Z-orders")
+	/* package */ static final class SlowBucketSearch extends Event {
+		
+		/* --- Fields --- */
+		
+		@Label("Collection")
+		public String Collection;
+		
+		@Label("Z-Order")
+		@Description("Z-order searched for")
+		public int Z;
+		
+		@Label("Anchor Z-Order")
+		@Description("Z-order of the predetermined bucket the searched buckets follow")
+		public int AnchorZ;
+		
+		@Label("Buckets")
+		@Description("Number of buckets searched")
+		public int Buckets;
+		
+		/* --- Public Methods --- */
+		
+		/**
+		 * Fills in the event
+		 * @param collection Searched collection
+		 * @param z Z-order searched for
+		 * @param anchorZ Z-order of the predetermined bucket
+		 * @param buckets Number of buckets searched
+		 */
+		public void set(Object collection, int z, int anchorZ, int buckets) {
+			this.Collection = describe(collection);
+			this.Z = z;
+			this.AnchorZ = anchorZ;
+			this.Buckets = buckets;
+		}
+	}
+	
+	/**
+	 * A bucket opened for, or closed after, a non-predetermined Z-order
+	 * 
+	 * @author itayd
+	 *
+	 */
+	@Name("com.mominis.zorder.Bucket")
+	@Label("Z-Order Bucket Opened/Closed")
+	@Category(CATEGORY)
+	@Description("A bucket opened for a non-predetermined Z-order, or closed when it emptied")
+	@StackTrace(false)
+	/* package */ static final class Bucket extends Event {
+		
+		/* --- Fields --- */
+		
+		@Label("Collection")
+		public String Collection;
+		
+		@Label("Opened")
+		@Description("Whether the bucket was opened, rather than closed")
+		public boolean Opened;
+		
+		@Label("Z-Order")
+		public int Z;
+		
+		@Label("Anchor Z-Order")
+		@Description("Z-order of the predetermined bucket the bucket follows")
+		public int AnchorZ;
+		
+		@Label("Dynamic Buckets")
+		@Description("Number of buckets opened for non-predetermined Z-orders afterwards")
+		public int DynamicBuckets;
+		
+		/* --- Public Methods --- */
+		
+		/**
+		 * Fills in the event
+		 * @param collection Collection of the bucket
+		 * @param opened Whether the bucket was opened
+		 * @param z Z-order of the bucket
+		 * @param anchorZ Z-order of the predetermined bucket
+		 * @param dynamicBuckets Number of non-predetermined buckets afterwards
+		 */
+		public void set(Object collection, boolean opened, int z, int anchorZ, int dynamicBuckets) {
+			this.Collection = describe(collection);
+			this.Opened = opened;
+			this.Z = z;
+			this.AnchorZ = anchorZ;
+			this.DynamicBuckets = dynamicBuckets;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Arrays;
+
+/**
+ * Operational statistics of a collection, for finding out why frames spike.
+ * 
+ * Attach to a collection with e.g. {@link FixedPointZCollection#setStats(ZCollectionStats)}.
+ * The collection then counts its operations, the searches among buckets opened
+ * for non-predetermined Z-orders and its forEach traversals. Bucket figures and
+ * the estimated memory retained are brought up to date by the collection's
+ * getStats(). Without statistics attached, a collection pays next to nothing.
+ * 
+ * Reading is cheap enough to do every frame. Like the collections, statistics
+ * are not thread-safe.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ZCollectionStats implements StatsRecorder {
+	
+	/* --- Constants --- */
+	
+	/**
+	 * Number of bins of the search histogram. Bin 0 counts searches among no
+	 * buckets, bin b > 0 searches among 2^(b-1) to 2^b - 1 buckets, which take
+	 * about b steps.
+	 */
+	public static final int SEARCH_BINS = 32;
+	
+	/** Estimated bytes of an object's link */
+	/* package */ static final int LINK_BYTES = 32;
+	
+	/* --- Fields --- */
+	
+	/** Number of objects added */
+	private long adds;
+	
+	/** Number of objects removed */
+	private long removes;
+	
+	/** Number of objects changed */
+	private long changes;
+	
+	/** Number of searches per bin */
+	private final long[] searches;
+	
+	/** Number of forEach traversals */
+	private long traversals;
+	
+	/** Total number of buckets visited by forEach traversals */
+	private long bucketsVisited;
+	
+	/** Total number of objects visited by forEach traversals */
+	private long objectsVisited;
+	
+	/** Number of buckets visited by the last forEach traversal */
+	private int lastBucketsVisited;
+	
+	/** Number of objects visited by the last forEach traversal */
+	private int lastObjectsVisited;
+	
+	/** Number of buckets, as of the last sample */
+	private int buckets;
+	
+	/** Number of empty buckets, as of the last sample */
+	private int emptyBuckets;
+	
+	/** Number of buckets opened for non-predetermined Z-orders, as of the last sample */
+	private int dynamicBuckets;
+	
+	/** Estimated bytes retained by the collection, as of the last sample */
+	private long retainedBytes;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Initializes statistics with all counters at zero
+	 */
+	public ZCollectionStats() {
+		searches = new long[SEARCH_BINS];
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @return Number of objects added, including by addAll()
+	 */
+	public long getAdds() {
+		return adds;
+	}
+	
+	/**
+	 * @return Number of objects removed, including by removeAll() and iterators
+	 */
+	public long getRemoves() {
+		return removes;
+	}
+	
+	/**
+	 * @return Number of objects changed, including by changeAll() and commit()
+	 */
+	public long getChanges() {
+		return changes;
+	}
+	
+	/**
+	 * @param bin Histogram bin, between 0 and {@link #SEARCH_BINS} (exclusive)
+	 * @return Number of searches among buckets opened for non-predetermined Z-orders in that bin
+	 * @see #SEARCH_BINS
+	 */
+	public long getSearches(int bin) {
+		return searches[bin];
+	}
+	
+	/**
+	 * @return Number of forEach traversals
+	 */
+	public long getTraversals() {
+		return traversals;
+	}
+	
+	/**
+	 * @return Total number of buckets visited by forEach traversals
+	 */
+	public long getBucketsVisited() {
+		return bucketsVisited;
+	}
+	
+	/**
+	 * @return Total number of objects visited by forEach traversals
+	 */
+	public long getObjectsVisited() {
+		return objectsVisited;
+	}
+	
+	/**
+	 * @return Number of buckets visited by the last forEach traversal
+	 */
+	public int getLastBucketsVisited() {
+		return lastBucketsVisited;
+	}
+	
+	/**
+	 * @return Number of objects visited by the last forEach traversal
+	 */
+	public int getLastObjectsVisited() {
+		return lastObjectsVisited;
+	}
+	
+	/**
+	 * @return Number of buckets
+	 */
+	public int getBuckets() {
+		return buckets;
+	}
+	
+	/**
+	 * @return Number of empty buckets
+	 */
+	public int getEmptyBuckets() {
+		return emptyBuckets;
+	}
+	
+	/**
+	 * @return Share of the buckets that are empty, between 0 and 1
+	 */
+	public double getEmptyBucketRatio() {
+		return buckets == 0 ? 0 : (double)emptyBuckets / buckets;
+	}
+	
+	/**
+	 * @return Number of buckets opened for non-predetermined Z-orders
+	 */
+	public int getDynamicBuckets() {
+		return dynamicBuckets;
+	}
+	
+	/**
+	 * @return Estimated bytes retained by the collection, assuming compressed references
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes;
+	}
+	
+	/**
+	 * Zeroes the counters, e.g. at the start of every frame. Bucket figures are kept.
+	 */
+	public void reset() {
+		adds = 0;
+		removes = 0;
+		changes = 0;
+		Arrays.fill(searches, 0);
+		traversals = 0;
+		bucketsVisited = 0;
+		objectsVisited = 0;
+		lastBucketsVisited = 0;
+		lastObjectsVisited = 0;
+	}
+	
+	/* --- StatsRecorder Methods --- */
+	
+	/**
+	 * @see {@link StatsRecorder#added(int)}
+	 */
+	@Override
+	public void added(int count) {
+		adds += count;
+	}
+	
+	/**
+	 * @see {@link StatsRecorder#removed(int)}
+	 */
+	@Override
+	public void removed(int count) {
+		removes += count;
+	}
+	
+	/**
+	 * @see {@link StatsRecorder#changed(int)}
+	 */
+	@Override
+	public void changed(int count) {
+		changes += count;
+	}
+	
+	/**
+	 * @see {@link StatsRecorder#searched(int)}
+	 */
+	@Override
+	public void searched(int buckets) {
+		++searches[32 - Integer.numberOfLeadingZeros(buckets)];
+	}
+	
+	/**
+	 * @see {@link StatsRecorder#traversed(int, int)}
+	 */
+	@Override
+	public void traversed(int buckets, int objects) {
+		++traversals;
+		bucketsVisited += buckets;
+		objectsVisited += objects;
+		lastBucketsVisited = buckets;
+		lastObjectsVisited = objects;
+	}
+	
+	/* --- Package Methods --- */
+	
+	/**
+	 * Brings the bucket figures up to date
+	 * @param buckets Number of buckets
+	 * @param emptyBuckets Number of empty buckets
+	 * @param dynamicBuckets Number of buckets opened for non-predetermined Z-orders
+	 * @param retainedBytes Estimated bytes retained by the collection
+	 */
+	/* package */ void sample(int buckets, int emptyBuckets, int dynamicBuckets, long retainedBytes) {
+		this.buckets = buckets;
+		this.emptyBuckets = emptyBuckets;
+		this.dynamicBuckets = dynamicBuckets;
+		this.retainedBytes = retainedBytes;
+	}
+}
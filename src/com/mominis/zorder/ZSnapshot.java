@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, Z-ordered view of a collection's objects at the time it was
+ * published, e.g. by {@link SimpleZCollection#publishSnapshot()}.
+ * 
+ * The objects of every Z-level are kept in a compact array. Arrays of levels
+ * that didn't change between two snapshots are shared by them, so only the
+ * objects of the levels that changed are copied. Publishing a frame still
+ * builds a new array of all occupied levels, taking O(k + z/64) for k occupied
+ * levels out of z, on top of copying the changed levels.
+ * 
+ * A snapshot is safe to traverse from any thread without locking while the
+ * collection keeps changing. The objects themselves are not copied - reading
+ * their state is up to the caller.
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public final class ZSnapshot {
+	
+	/* --- Constants --- */
+	
+	/** A snapshot of an empty collection */
+	/* package */ static final ZSnapshot EMPTY = new ZSnapshot(new ZSortable[0][], 0);
+	
+	/* --- Fields --- */
+	
+	/** Objects of every non-empty Z-level, in back-to-front order */
+	private final ZSortable[][] levels;
+	
+	/** Total number of objects */
+	private final int size;
+	
+	/* --- Constructor --- */
+	
+	/**
+	 * Constructor
+	 * @param levels Objects of every non-empty Z-level, in back-to-front order. Not copied, and must not be modified.
+	 * @param size Total number of objects
+	 */
+	/* package */ ZSnapshot(ZSortable[][] levels, int size) {
+		this.levels = levels;
+		this.size = size;
+	}
+	
+	/* --- Public Methods --- */
+	
+	/**
+	 * @return Number of objects in the snapshot
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return Whether the snapshot has no objects
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Visits the objects in back-to-front order, without allocating
+	 * @param action Action to perform on every object
+	 */
+	public void forEachBackToFront(Consumer<? super ZSortable> action) {
+		for (ZSortable[] level : levels) {
+			for (ZSortable object : level) {
+				action.accept(object);
+			}
+		}
+	}
+	
+	/**
+	 * Visits the objects in front-to-back order, without allocating
+	 * @param action Action to perform on every object
+	 */
+	public void forEachFrontToBack(Consumer<? super ZSortable> action) {
+		for (int i = levels.length - 1 ; i >= 0 ; --i) {
+			ZSortable[] level = levels[i];
+			for (int j = level.length - 1 ; j >= 0 ; --j) {
+				action.accept(level[j]);
+			}
+		}
+	}
+	
+	/**
+	 * Iterate objects in back-to-front order
+	 * @return Back-to-front iterator
+	 */
+	public Iterator<ZSortable> backToFrontIterator() {
+		return new SnapshotIterator(false);
+	}
+	
+	/**
+	 * Iterate objects in front-to-back order
+	 * @return Front-to-back iterator
+	 */
+	public Iterator<ZSortable> frontToBackIterator() {
+		return new SnapshotIterator(true);
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * Iterates the levels' arrays, either back-to-front or front-to-back
+	 * 
+	 * @author itayd
+	 *
+	 */
+	private class SnapshotIterator implements Iterator<ZSortable> {
+		
+		/* --- Fields --- */
+		
+		/** whether to scan front-to-back */
+		private final boolean reverse;
+		
+		/** Index of the current level, in scan order */
+		private int level;
+		
+		/** Index of the next object in the current level, in scan order */
+		private int index;
+		
+		/* --- Constructor --- */
+		
+		/**
+		 * Constructor
+		 * @param reverse Whether to scan front-to-back
+		 */
+		public SnapshotIterator(boolean reverse) {
+			this.reverse = reverse;
+		}
+		
+		/* --- Iterator<ZSortable> Methods --- */
+		
+		/**
+		 * @see {@link Iterator#hasNext()}
+		 */
+		@Override
+		public boolean hasNext() {
+			// levels are never empty, so only the end of a level has to be skipped
+			if (level < levels.length && index == levels[levelIndex()].length) {
+				++level;
+				index = 0;
+			}
+			return level < levels.length;
+		}
+		
+		/**
+		 * @see {@link Iterator#next()}
+		 */
+		@Override
+		public ZSortable next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			ZSortable[] objects = levels[levelIndex()];
+			int i = index++;
+			return objects[reverse ? objects.length - 1 - i : i];
+		}
+		
+		/**
+		 * Not supported, snapshots are immutable.
+		 */
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		/* --- Private Methods --- */
+		
+		/**
+		 * @return Index of the current level in the levels array
+		 */
+		private int levelIndex() {
+			return reverse ? levels.length - 1 - level : level;
+		}
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.mominis.zorder.AdaptiveZCollection.Strategy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link SimpleZCollectionTests} against {@link AdaptiveZCollection},
+ * and checks its choice of strategy and its migrations
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class AdaptiveZCollectionTests extends SimpleZCollectionTests {
+	
+	private static final int OBJECTS = 1000;
+	
+	private AdaptiveZCollection adaptive;
+	
+	@Override
+	protected ZCollection createCollection() {
+		adaptive = new AdaptiveZCollection(MAX_Z);
+		return adaptive;
+	}
+	
+	@Test
+	public void leavesSimpleForZOrdersOutOfRange() throws Exception {
+		List<SimpleObject> objects = populate(OBJECTS, MAX_Z + 1, 1);
+		assertSame(Strategy.SIMPLE, adaptive.getStrategy());
+		
+		SimpleObject outside = new SimpleObject("outside");
+		outside.setZOrder(-5);
+		adaptive.add(outside);
+		objects.add(outside);
+		
+		// the object goes to the new collection, the rest move a step per commit
+		assertSame(Strategy.SIMPLE, adaptive.getStrategy());
+		assertSame(Strategy.SPARSE, adaptive.getMigrationTarget());
+		checkOrder(objects);
+		finishMigration(objects);
+		assertSame(Strategy.SPARSE, adaptive.getStrategy());
+		
+		// marking does too, and so do Z-orders above the range during the migration
+		adaptive = new AdaptiveZCollection(MAX_Z);
+		underTest = adaptive;
+		objects = populate(OBJECTS, MAX_Z + 1, 1);
+		objects.get(0).setZOrder(MAX_Z + 1);
+		adaptive.markDirty(objects.get(0));
+		assertSame(Strategy.SPARSE, adaptive.getMigrationTarget());
+		checkOrder(objects);
+		
+		adaptive.commit();
+		SimpleObject above = new SimpleObject("above");
+		above.setZOrder(MAX_Z + 2);
+		adaptive.add(above);
+		objects.add(above);
+		objects.get(1).setZOrder(MAX_Z + 3);
+		adaptive.change(objects.get(1));
+		above.setZOrder(MAX_Z / 2);
+		adaptive.markDirty(above);
+		checkOrder(objects);
+		finishMigration(objects);
+		assertSame(Strategy.SPARSE, adaptive.getStrategy());
+	}
+	
+	@Test
+	public void migrationKeepsOrder() throws Exception {
+		List<SimpleObject> objects = populate(OBJECTS, MAX_Z + 1, 1);
+		List<ZSortable> expected = new ArrayList<ZSortable>();
+		adaptive.forEachBackToFront(expected::add);
+		
+		adaptive.migrateTo(Strategy.FIXED_POINT);
+		int commits = 0;
+		while (adaptive.getMigrationTarget() != null) {
+			adaptive.commit();
+			++commits;
+			
+			List<ZSortable> visited = new ArrayList<ZSortable>();
+			adaptive.forEachBackToFront(visited::add);
+			assertEquals(expected, visited);
+			checkOrder(objects);
+		}
+		
+		assertSame(Strategy.FIXED_POINT, adaptive.getStrategy());
+		assertTrue(commits > 1);
+		assertTrue(commits <= OBJECTS / AdaptiveZCollection.MIGRATION_STEP + 1);
+	}
+	
+	@Test
+	public void changesDuringMigrationCrossTheBoundary() throws Exception {
+		List<SimpleObject> objects = populate(OBJECTS, MAX_Z + 1, 1);
+		adaptive.migrateTo(Strategy.SPARSE);
+		
+		while (adaptive.getMigrationTarget() != null) {
+			adaptive.commit();
+			
+			// move some objects right away, mark others, add and remove some
+			for (int i = 0 ; i < 20 ; ++i) {
+				SimpleObject object = objects.get(rand.nextInt(objects.size()));
+				object.setZOrder(rand.nextInt(MAX_Z + 1));
+				if (rand.nextBoolean()) {
+					adaptive.change(object);
+				} else {
+					adaptive.markDirty(object);
+				}
+			}
+			SimpleObject added = new SimpleObject("added");
+			added.setZOrder(rand.nextInt(MAX_Z + 1));
+			adaptive.add(added);
+			objects.add(added);
+			adaptive.remove(objects.remove(rand.nextInt(objects.size())));
+			
+			checkOrder(objects);
+			for (int z = 0 ; z <= MAX_Z ; ++z) {
+				int count = 0;
+				for (SimpleObject object : objects) {
+					if (object.getZOrder() == z) {
+						++count;
+					}
+				}
+				assertEquals(count, adaptive.countAt(z));
+			}
+		}
+		
+		assertSame(Strategy.SPARSE, adaptive.getStrategy());
+		checkOrder(objects);
+	}
+	
+	@Test
+	public void migrationToSimpleIsGivenUp() throws Exception {
+		adaptive = new AdaptiveZCollection(MAX_Z, Strategy.SPARSE);
+		underTest = adaptive;
+		List<SimpleObject> objects = populate(OBJECTS, MAX_Z + 1, 1);
+		
+		adaptive.migrateTo(Strategy.SIMPLE);
+		adaptive.commit();
+		assertSame(Strategy.SIMPLE, adaptive.getMigrationTarget());
+		
+		SimpleObject outside = new SimpleObject("outside");
+		outside.setZOrder(MAX_Z + 1);
+		adaptive.add(outside);
+		objects.add(outside);
+		checkOrder(objects);
+		
+		// given up once the migration gets to it
+		while (adaptive.getMigrationTarget() != null) {
+			adaptive.commit();
+		}
+		assertSame(Strategy.SPARSE, adaptive.getStrategy());
+		checkOrder(objects);
+	}
+	
+	@Test
+	public void migratedObjectMarkedAboveSimpleRange() throws Exception {
+		adaptive = new AdaptiveZCollection(MAX_Z, Strategy.SPARSE);
+		underTest = adaptive;
+		List<SimpleObject> objects = populate(OBJECTS, MAX_Z + 1, 1);
+		
+		adaptive.migrateTo(Strategy.SIMPLE);
+		adaptive.commit();
+		assertSame(Strategy.SIMPLE, adaptive.getMigrationTarget());
+		
+		// already moved to the SimpleZCollection
+		SimpleObject migrated = null;
+		for (SimpleObject object : objects) {
+			if (object.getZOrder() == 0) {
+				migrated = object;
+				break;
+			}
+		}
+		migrated.setZOrder(MAX_Z + 5);
+		adaptive.markDirty(migrated);
+		adaptive.commit();
+		checkOrder(objects);
+		
+		while (adaptive.getMigrationTarget() != null) {
+			adaptive.commit();
+		}
+		assertSame(Strategy.SPARSE, adaptive.getStrategy());
+		checkOrder(objects);
+	}
+	
+	@Test
+	public void picksStrategyFromZOrders() throws Exception {
+		int maxZ = 100;
+		adaptive = new AdaptiveZCollection(maxZ, Strategy.SPARSE);
+		underTest = adaptive;
+		
+		// fixed-point Z-orders, occupying every predetermined bucket
+		List<SimpleObject> objects = populate(OBJECTS, maxZ + 1, FixedPointZCollection.PIVOT);
+		runFrames(objects, maxZ + 1, FixedPointZCollection.PIVOT);
+		assertSame(Strategy.FIXED_POINT, adaptive.getStrategy());
+		checkOrder(objects);
+		
+		// crowded between two predetermined buckets
+		runFrames(objects, FixedPointZCollection.PIVOT - 1, 1);
+		assertSame(Strategy.SPARSE, adaptive.getStrategy());
+		checkOrder(objects);
+		
+		// within range
+		runFrames(objects, maxZ + 1, 1);
+		assertSame(Strategy.SIMPLE, adaptive.getStrategy());
+		checkOrder(objects);
+	}
+	
+	@Test
+	public void picksFixedPointForFewPredeterminedZOrders() throws Exception {
+		int maxZ = 1000;
+		adaptive = new AdaptiveZCollection(maxZ, Strategy.SPARSE);
+		underTest = adaptive;
+		
+		// a few of many predetermined buckets, which are only opened once used
+		List<SimpleObject> objects = populate(OBJECTS, 4, FixedPointZCollection.PIVOT);
+		runFrames(objects, 4, FixedPointZCollection.PIVOT);
+		assertSame(Strategy.FIXED_POINT, adaptive.getStrategy());
+		checkOrder(objects);
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Adds objects at random Z-orders
+	 * @param count Number of objects
+	 * @param levels Number of Z-orders to pick from
+	 * @param step Difference between consecutive Z-orders
+	 * @return Added objects
+	 */
+	private List<SimpleObject> populate(int count, int levels, int step) throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < count ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(rand.nextInt(levels) * step);
+			objects.add(object);
+		}
+		adaptive.addAll(objects);
+		return objects;
+	}
+	
+	/**
+	 * Changes objects in turn to random Z-orders and commits, frame by frame, until a migration
+	 * ends or enough evaluations pass without one
+	 * @param objects Objects in the collection
+	 * @param levels Number of Z-orders to pick from
+	 * @param step Difference between consecutive Z-orders
+	 */
+	private void runFrames(List<SimpleObject> objects, int levels, int step) {
+		int frames = AdaptiveZCollection.EVALUATION_FRAMES * (AdaptiveZCollection.STABLE_EVALUATIONS + 2);
+		Strategy before = adaptive.getStrategy();
+		for (int i = 0 ; i < frames || adaptive.getMigrationTarget() != null ; ++i) {
+			for (int j = 0 ; j < 50 ; ++j) {
+				SimpleObject object = objects.get((i * 50 + j) % objects.size());
+				object.setZOrder(rand.nextInt(levels) * step);
+				adaptive.change(object);
+			}
+			adaptive.commit();
+			
+			if (adaptive.getStrategy() != before && adaptive.getMigrationTarget() == null) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Commits until the migration is done, a step per commit
+	 * @param objects Objects expected in the collection
+	 */
+	private void finishMigration(List<SimpleObject> objects) {
+		int commits = 0;
+		while (adaptive.getMigrationTarget() != null) {
+			adaptive.commit();
+			++commits;
+			checkOrder(objects);
+		}
+		assertTrue(commits <= objects.size() / AdaptiveZCollection.MIGRATION_STEP + 1);
+	}
+	
+	/**
+	 * Checks that all traversals visit the objects in the same order, by Z-order
+	 * @param objects Objects expected in the collection
+	 */
+	private void checkOrder(List<SimpleObject> objects) {
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		adaptive.forEachBackToFront(visited::add);
+		assertEquals(objects.size(), visited.size());
+		assertEquals(objects.size(), adaptive.size());
+		assertTrue(visited.containsAll(objects));
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() <= visited.get(i).getZOrder());
+		}
+		
+		List<ZSortable> iterated = new ArrayList<ZSortable>();
+		for (Iterator<ZSortable> iter = adaptive.backToFrontIterator() ; iter.hasNext() ; ) {
+			iterated.add(iter.next());
+		}
+		assertEquals(visited, iterated);
+		assertEquals(visited, adaptive.parallelStream().collect(Collectors.toList()));
+		
+		List<ZSortable> reversed = new ArrayList<ZSortable>();
+		adaptive.forEachFrontToBack(reversed::add);
+		Collections.reverse(reversed);
+		assertEquals(visited, reversed);
+		
+		for (int i = 0 ; i < 10 ; ++i) {
+			int zLow = rand.nextInt(MAX_Z + 10) - 6;
+			int zHigh = zLow + rand.nextInt(MAX_Z);
+			List<ZSortable> expected = new ArrayList<ZSortable>();
+			for (ZSortable object : visited) {
+				if (object.getZOrder() >= zLow && object.getZOrder() <= zHigh) {
+					expected.add(object);
+				}
+			}
+			
+			List<ZSortable> inRange = new ArrayList<ZSortable>();
+			adaptive.forEachBackToFront(zLow, zHigh, inRange::add);
+			assertEquals(expected, inRange);
+			
+			inRange.clear();
+			for (Iterator<ZSortable> iter = adaptive.frontToBackIterator(zLow, zHigh) ; iter.hasNext() ; ) {
+				inRange.add(iter.next());
+			}
+			Collections.reverse(inRange);
+			assertEquals(expected, inRange);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link SimpleZCollectionTests} against {@link ConcurrentZCollection},
+ * and changes it from several threads at once
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ConcurrentZCollectionTests extends SimpleZCollectionTests {
+	
+	private static final int THREADS = 4;
+	
+	private static final int OBJECTS_PER_THREAD = 500;
+	
+	@Override
+	protected ZCollection createCollection() {
+		return new ConcurrentZCollection(MAX_Z);
+	}
+	
+	@Test
+	public void concurrentChangesKeepOrder() throws Exception {
+		final List<List<SimpleObject>> owned = populate();
+		
+		runConcurrently(new AtomicBoolean(), thread -> {
+			Random random = new Random(thread);
+			for (int i = 0 ; i < 20000 ; ++i) {
+				SimpleObject object = owned.get(thread).get(random.nextInt(OBJECTS_PER_THREAD));
+				object.setZOrder(random.nextInt(MAX_Z + 1));
+				if (i % 100 == 0) {
+					underTest.remove(object);
+					underTest.add(object);
+				} else {
+					underTest.change(object);
+				}
+			}
+		});
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(THREADS * OBJECTS_PER_THREAD, visited.size());
+		assertEquals(visited.size(), underTest.size());
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() <= visited.get(i).getZOrder());
+		}
+		for (int z = 0 ; z <= MAX_Z ; ++z) {
+			int expected = 0;
+			for (ZSortable object : visited) {
+				if (object.getZOrder() == z) {
+					++expected;
+				}
+			}
+			assertEquals(expected, underTest.countAt(z));
+		}
+	}
+	
+	@Test
+	public void sharedObjectsAreLinkedOnce() throws Exception {
+		final List<SimpleObject> shared = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 64 ; ++i) {
+			SimpleObject object = new SimpleObject("shared" + i);
+			object.setZOrder(rand.nextInt(MAX_Z + 1));
+			shared.add(object);
+		}
+		underTest.addAll(shared);
+		
+		// every thread moves, removes and re-adds the same objects
+		runConcurrently(new AtomicBoolean(), thread -> {
+			Random random = new Random(thread);
+			for (int i = 0 ; i < 20000 ; ++i) {
+				SimpleObject object = shared.get(random.nextInt(shared.size()));
+				if (i % 10 == 0) {
+					underTest.remove(object);
+				} else {
+					object.setZOrder(random.nextInt(MAX_Z + 1));
+					underTest.change(object);
+				}
+			}
+		});
+		
+		// threads may have raced on setZOrder(), so move every object to its final Z-order
+		underTest.changeAll(shared);
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(shared.size(), visited.size());
+		assertEquals(shared.size(), underTest.size());
+		assertTrue(visited.containsAll(shared));
+		int counted = 0;
+		for (int z = 0 ; z <= MAX_Z ; ++z) {
+			counted += underTest.countAt(z);
+		}
+		assertEquals(shared.size(), counted);
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() <= visited.get(i).getZOrder());
+		}
+	}
+	
+	@Test
+	public void traversalSeesUnchangedObjectsOnce() throws Exception {
+		final List<List<SimpleObject>> owned = populate();
+		final AtomicBoolean done = new AtomicBoolean();
+		
+		// the first thread only traverses, the rest keep changing their objects
+		runConcurrently(done, thread -> {
+			if (thread != 0) {
+				Random random = new Random(thread);
+				while (!done.get()) {
+					SimpleObject object = owned.get(thread).get(random.nextInt(OBJECTS_PER_THREAD));
+					object.setZOrder(random.nextInt(MAX_Z + 1));
+					underTest.change(object);
+				}
+				return;
+			}
+			
+			for (int i = 0 ; i < 200 ; ++i) {
+				List<ZSortable> visited = new ArrayList<ZSortable>();
+				underTest.forEachBackToFront(object -> {
+					if (owned.get(0).contains(object)) {
+						visited.add(object);
+					}
+				});
+				assertEquals(OBJECTS_PER_THREAD, visited.size());
+				for (int j = 1 ; j < visited.size() ; ++j) {
+					assertTrue(visited.get(j - 1).getZOrder() <= visited.get(j).getZOrder());
+				}
+			}
+			done.set(true);
+		});
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Adds objects owned by every thread
+	 * @return Objects of every thread
+	 */
+	private List<List<SimpleObject>> populate() throws Exception {
+		List<List<SimpleObject>> owned = new ArrayList<List<SimpleObject>>();
+		for (int i = 0 ; i < THREADS ; ++i) {
+			List<SimpleObject> objects = new ArrayList<SimpleObject>();
+			for (int j = 0 ; j < OBJECTS_PER_THREAD ; ++j) {
+				SimpleObject object = new SimpleObject("object" + i + "." + j);
+				object.setZOrder(rand.nextInt(MAX_Z + 1));
+				objects.add(object);
+			}
+			underTest.addAll(objects);
+			owned.add(objects);
+		}
+		return owned;
+	}
+	
+	/**
+	 * Runs a task on every thread, and waits for all of them
+	 * @param done Set when any task fails, so the others stop
+	 * @param task Task, given the thread's index
+	 */
+	private void runConcurrently(AtomicBoolean done, ThreadTask task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0 ; i < THREADS ; ++i) {
+				final int thread = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						try {
+							task.run(thread);
+						} catch (Throwable e) {
+							done.set(true);
+							throw e;
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/* --- Inner Classes --- */
+	
+	/**
+	 * Work done by one of the threads
+	 */
+	private interface ThreadTask {
+		void run(int thread) throws Exception;
+	}
+}
@@ -22,30 +22,49 @@
  */
 package com.mominis.zorder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
-import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 
 /**
+ * Runs the {@link SimpleZCollectionTests} against {@link FixedPointZCollection},
+ * and checks its pivot, regions and non-integer Z-orders
  * 
  * @author Itay Duvdevani (MoMinis Ltd.)
  *
  */
-public class FixedPointZCollectionTests {
+public class FixedPointZCollectionTests extends SimpleZCollectionTests {
 	
-	private static final int MAX_Z = 10;
+	@Override
+	protected ZCollection createCollection() {
+		return new FixedPointZCollection(MAX_Z);
+	}
+	
+	@Override
+	protected int getMinZ() {
+		return -MAX_Z * FixedPointZCollection.PIVOT;
+	}
 	
-	private Random rand;
-	private ZCollection underTest;
+	@Override
+	protected int getMaxZ() {
+		return MAX_Z * FixedPointZCollection.PIVOT;
+	}
 	
-	@Before
-	public void setUp() throws Exception {
-		rand = new Random(System.nanoTime());
-		underTest = new FixedPointZCollection(MAX_Z);
+	/**
+	 * @return Either a fine-grained Z-order around the quick-access range, or
+	 *         one anywhere in the bounds
+	 */
+	@Override
+	protected int nextZ() {
+		return rand.nextBoolean() ? rand.nextInt(3 * MAX_Z) - MAX_Z : super.nextZ();
 	}
 
 	@Test
@@ -274,4 +293,404 @@ public class FixedPointZCollectionTests {
 		
 		assertFalse(iter.hasNext());
 	}
+	
+	@Test
+	public void forEachMatchesIterators() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		SimpleObject object3 = new SimpleObject("object3");
+		SimpleObject object4 = new SimpleObject("object4");
+		
+		object1.setZOrder(Integer.MAX_VALUE);
+		object2.setZOrder(FixedPointZCollection.PIVOT / 2);
+		object3.setZOrder(FixedPointZCollection.PIVOT);
+		object4.setZOrder(-FixedPointZCollection.PIVOT);
+		underTest.add(object1);
+		underTest.add(object2);
+		underTest.add(object3);
+		underTest.add(object4);
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(4, visited.size());
+		assertSame(object4, visited.get(0));
+		assertSame(object2, visited.get(1));
+		assertSame(object3, visited.get(2));
+		assertSame(object1, visited.get(3));
+		
+		visited.clear();
+		underTest.forEachFrontToBack(visited::add);
+		assertEquals(4, visited.size());
+		assertSame(object1, visited.get(0));
+		assertSame(object3, visited.get(1));
+		assertSame(object2, visited.get(2));
+		assertSame(object4, visited.get(3));
+	}
+	
+	@Test
+	public void emptyBucketsAreReclaimed() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		SimpleObject object3 = new SimpleObject("object3");
+		
+		object1.setZOrder(FixedPointZCollection.PIVOT / 2);
+		object2.setZOrder(object1.getZOrder());
+		object3.setZOrder(-FixedPointZCollection.PIVOT / 2);
+		collection.add(object1);
+		collection.add(object2);
+		collection.add(object3);
+		assertEquals(2, collection.getDynamicBucketCount());
+		
+		// bucket stays while not empty
+		collection.remove(object1);
+		assertEquals(2, collection.getDynamicBucketCount());
+		
+		// animate the Z-orders
+		for (int i = 1 ; i < FixedPointZCollection.PIVOT ; ++i) {
+			object2.setZOrder(i);
+			collection.change(object2);
+			object3.setZOrder(-i);
+			collection.change(object3);
+		}
+		assertEquals(2, collection.getDynamicBucketCount());
+		
+		// pivot buckets are never reclaimed
+		object2.setZOrder(FixedPointZCollection.PIVOT);
+		collection.change(object2);
+		collection.remove(object3);
+		assertEquals(0, collection.getDynamicBucketCount());
+		
+		collection.add(object1);
+		Iterator<ZSortable> iter = collection.backToFrontIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object1, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object2, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void customPivotPredeterminesItsMultiples() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z, 16);
+		assertEquals(16, collection.getPivot());
+		
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = MAX_Z ; i >= 0 ; --i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(i * 16);
+			objects.add(object);
+		}
+		collection.addAll(objects);
+		assertEquals(0, collection.getDynamicBucketCount());
+		
+		SimpleObject between = new SimpleObject("between");
+		between.setZOrder(FixedPointZCollection.PIVOT);
+		collection.add(between);
+		assertEquals(1, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size() + 1);
+		
+		try {
+			new FixedPointZCollection(MAX_Z, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new FixedPointZCollection(MAX_Z, Integer.MAX_VALUE / MAX_Z + 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void autoTuneFollowsZOrdersInUse() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		collection.setAutoTune(true);
+		
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 100 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(i < 2 ? -7 : i < 4 ? 123 : (i % (MAX_Z + 1)) * 250);
+			objects.add(object);
+		}
+		collection.addAll(objects);
+		
+		// predetermined Z-orders are re-spaced by 250, leaving only the rare Z-orders dynamic
+		runFrames(collection, objects, 250);
+		assertEquals(250, collection.getPivot());
+		assertEquals(2, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+		
+		// and follow the Z-orders as they drift
+		runFrames(collection, objects, 40);
+		assertEquals(40, collection.getPivot());
+		assertEquals(2, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+		
+		// until turned off
+		collection.setAutoTune(false);
+		runFrames(collection, objects, 30);
+		assertEquals(40, collection.getPivot());
+		checkOrder(collection, objects.size());
+	}
+	
+	@Test
+	public void autoTuneFollowsNegativeZOrders() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z, 100);
+		collection.setAutoTune(true);
+		
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 100 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(i < 2 ? 7 : i < 4 ? -123 : (i % (MAX_Z + 1)) * -250);
+			objects.add(object);
+		}
+		collection.addAll(objects);
+		
+		// the region below 0 is re-spaced by 250, as positive Z-orders would be
+		runFrames(collection, objects, -250);
+		assertEquals(250, collection.getPivot());
+		assertEquals(2, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+		
+		// and follows the Z-orders as they drift
+		runFrames(collection, objects, -40);
+		assertEquals(40, collection.getPivot());
+		assertEquals(2, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+	}
+	
+	@Test
+	public void predeterminedBucketsOpenOnFirstUse() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		int pivot = FixedPointZCollection.PIVOT;
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int z : new int[] { 3 * pivot + 1, pivot / 2, 5 * pivot / 2, 7 * pivot / 2, 3 * pivot / 2 }) {
+			SimpleObject object = new SimpleObject("object" + z);
+			object.setZOrder(z);
+			objects.add(object);
+		}
+		collection.addAll(objects);
+		assertEquals(5, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+		
+		// the predetermined bucket takes over the buckets after it
+		SimpleObject predetermined = new SimpleObject("predetermined");
+		predetermined.setZOrder(2 * pivot);
+		collection.add(predetermined);
+		assertEquals(5, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size() + 1);
+		
+		List<ZSortable> expected = new ArrayList<ZSortable>();
+		collection.forEachBackToFront(expected::add);
+		assertSame(predetermined, expected.get(2));
+		assertEquals(expected, collection.parallelStream().collect(Collectors.toList()));
+		assertEquals(1, collection.countAt(5 * pivot / 2));
+		assertEquals(0, collection.countAt(pivot));
+		
+		// and stays open, the others close
+		collection.removeAll(objects);
+		collection.remove(predetermined);
+		assertEquals(0, collection.getDynamicBucketCount());
+		assertEquals(0, collection.countAt(2 * pivot));
+		for (SimpleObject object : objects) {
+			collection.add(object);
+		}
+		assertEquals(5, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+	}
+	
+	@Test
+	public void regionsPredetermineZOrdersOutOfRange() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 1 ; i <= MAX_Z + 1 ; ++i) {
+			SimpleObject below = new SimpleObject("below" + i);
+			below.setZOrder(-i * FixedPointZCollection.PIVOT);
+			objects.add(below);
+			SimpleObject above = new SimpleObject("above" + i);
+			above.setZOrder((MAX_Z + i) * FixedPointZCollection.PIVOT);
+			objects.add(above);
+		}
+		Collections.shuffle(objects, rand);
+		for (SimpleObject object : objects) {
+			collection.add(object);
+		}
+		assertEquals(0, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size());
+		
+		// regions are limited, Z-orders beyond them open buckets
+		SimpleObject first = new SimpleObject("first");
+		first.setZOrder(-(MAX_Z + 2) * FixedPointZCollection.PIVOT);
+		SimpleObject last = new SimpleObject("last");
+		last.setZOrder((2 * MAX_Z + 2) * FixedPointZCollection.PIVOT);
+		SimpleObject between = new SimpleObject("between");
+		between.setZOrder(-FixedPointZCollection.PIVOT / 2);
+		collection.addAll(Arrays.asList(first, last, between));
+		assertEquals(3, collection.getDynamicBucketCount());
+		checkOrder(collection, objects.size() + 3);
+		assertEquals(1, collection.countAt(between.getZOrder()));
+		
+		List<ZSortable> expected = new ArrayList<ZSortable>();
+		collection.forEachBackToFront(expected::add);
+		assertSame(first, expected.get(0));
+		assertSame(last, expected.get(expected.size() - 1));
+		assertEquals(expected, collection.parallelStream().collect(Collectors.toList()));
+		
+		// region buckets are predetermined, and stay open
+		collection.removeAll(objects);
+		collection.remove(between);
+		assertEquals(2, collection.getDynamicBucketCount());
+		checkOrder(collection, 2);
+	}
+	
+	@Test
+	public void extremeZOrdersWithPivotOne() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z, 1);
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int z : new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0, MAX_Z + 1,
+			Integer.MAX_VALUE - 1, Integer.MAX_VALUE }) {
+			SimpleObject object = new SimpleObject("object" + z);
+			object.setZOrder(z);
+			objects.add(object);
+		}
+		Collections.shuffle(objects, rand);
+		for (SimpleObject object : objects) {
+			collection.add(object);
+		}
+		checkOrder(collection, objects.size());
+		assertEquals(1, collection.countAt(Integer.MIN_VALUE));
+		assertEquals(1, collection.countAt(Integer.MAX_VALUE));
+		
+		List<ZSortable> all = new ArrayList<ZSortable>();
+		collection.forEachBackToFront(all::add);
+		assertEquals(Integer.MIN_VALUE, all.get(0).getZOrder());
+		assertEquals(Integer.MAX_VALUE, all.get(all.size() - 1).getZOrder());
+		
+		collection.removeAll(objects);
+		checkOrder(collection, 0);
+	}
+	
+	/**
+	 * Cycles all but the first four objects through the multiples of a spacing,
+	 * traversing the collection every frame
+	 */
+	private static void runFrames(FixedPointZCollection collection, List<SimpleObject> objects, int spacing) {
+		for (int frame = 0 ; frame < 100 ; ++frame) {
+			for (int i = 4 ; i < objects.size() ; ++i) {
+				SimpleObject object = objects.get(i);
+				object.setZOrder(((i + frame) % (MAX_Z + 1)) * spacing);
+				collection.change(object);
+			}
+			collection.forEachBackToFront(object -> { });
+		}
+	}
+	
+	private static void checkOrder(ZCollection collection, int size) {
+		List<ZSortable> all = new ArrayList<ZSortable>();
+		collection.forEachBackToFront(all::add);
+		assertEquals(size, all.size());
+		assertEquals(size, collection.size());
+		for (int i = 1 ; i < all.size() ; ++i) {
+			assertTrue(all.get(i - 1).getZOrder() <= all.get(i).getZOrder());
+		}
+		for (ZSortable object : all) {
+			assertTrue(collection.countAt(object.getZOrder()) > 0);
+		}
+	}
+	
+	@Test
+	public void manyFineGrainedZOrdersStaySorted() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		int range = (MAX_Z + 6) * FixedPointZCollection.PIVOT;
+		SimpleObject[] objects = new SimpleObject[500];
+		
+		for (int i = 0 ; i < objects.length ; ++i) {
+			objects[i] = new SimpleObject("object" + i);
+			objects[i].setZOrder(rand.nextInt(range) - 3 * FixedPointZCollection.PIVOT);
+			collection.add(objects[i]);
+		}
+		
+		// shuffle Z-orders around, removing some of the objects
+		for (int i = 0 ; i < objects.length * 4 ; ++i) {
+			SimpleObject object = objects[rand.nextInt(objects.length)];
+			if (object.getCurrentLink() == null) {
+				collection.add(object);
+			} else if (rand.nextInt(4) == 0) {
+				collection.remove(object);
+			} else {
+				object.setZOrder(rand.nextInt(range) - 3 * FixedPointZCollection.PIVOT);
+				collection.change(object);
+			}
+		}
+		
+		int expected = 0;
+		for (SimpleObject object : objects) {
+			if (object.getCurrentLink() != null) {
+				++expected;
+			}
+		}
+		
+		int count = 0;
+		int lastZ = Integer.MIN_VALUE;
+		Iterator<ZSortable> iter = collection.backToFrontIterator();
+		while (iter.hasNext()) {
+			int z = iter.next().getZOrder();
+			assertTrue(z >= lastZ);
+			lastZ = z;
+			++count;
+		}
+		assertEquals(expected, count);
+	}
+	
+	@Test
+	public void spliteratorSplitsDownToSingleBuckets() throws Exception {
+		// all following the first bucket, beyond the negative region, with empty
+		// predetermined buckets opened in between
+		for (int i = 0 ; i < 1000 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(-(MAX_Z + 2) * FixedPointZCollection.PIVOT - rand.nextInt(100));
+			underTest.add(object);
+		}
+		for (int i = 0 ; i <= MAX_Z ; ++i) {
+			SimpleObject object = new SimpleObject("predetermined" + i);
+			object.setZOrder(i * FixedPointZCollection.PIVOT);
+			underTest.add(object);
+			underTest.remove(object);
+		}
+		
+		List<ZSortable> expected = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(expected::add);
+		
+		// keep splitting the prefix, until it holds a single Z-order
+		List<Spliterator<ZSortable>> parts = new ArrayList<Spliterator<ZSortable>>();
+		Spliterator<ZSortable> current = underTest.spliterator();
+		Spliterator<ZSortable> prefix = current.trySplit();
+		while (prefix != null) {
+			assertTrue(prefix.estimateSize() > 0);
+			assertTrue(current.estimateSize() > 0);
+			parts.add(0, current);
+			current = prefix;
+			prefix = current.trySplit();
+		}
+		parts.add(0, current);
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		for (Spliterator<ZSortable> part : parts) {
+			int from = visited.size();
+			part.forEachRemaining(visited::add);
+			assertTrue(visited.size() > from);
+			
+			if (part == current) {
+				// the last prefix can't be split, as all of its objects are in one bucket
+				for (ZSortable object : visited) {
+					assertEquals(expected.get(0).getZOrder(), object.getZOrder());
+				}
+			}
+		}
+		assertEquals(expected, visited);
+		assertEquals(expected, underTest.parallelStream().collect(Collectors.toList()));
+	}
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link SimpleZCollectionTests} against a growable {@link SimpleZCollection}
+ * that starts with a single level, and checks its growth
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class GrowableSimpleZCollectionTests extends SimpleZCollectionTests {
+	
+	private SimpleZCollection growable;
+	
+	@Override
+	protected ZCollection createCollection() {
+		growable = new SimpleZCollection(0);
+		growable.setGrowable(true);
+		return growable;
+	}
+	
+	@Test
+	public void growsByDoubling() throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int z = 0 ; z <= 100 ; ++z) {
+			SimpleObject object = new SimpleObject("object" + z);
+			object.setZOrder(z);
+			growable.add(object);
+			objects.add(object);
+			assertEquals(0, (growable.getMaxZ() + 1) & growable.getMaxZ());
+		}
+		assertEquals(127, growable.getMaxZ());
+		
+		// a far Z-order grows to it right away
+		SimpleObject far = new SimpleObject("far");
+		far.setZOrder(1000);
+		growable.add(far);
+		objects.add(far);
+		assertEquals(1000, growable.getMaxZ());
+		
+		// and so do Z-orders below 0
+		SimpleObject negative = new SimpleObject("negative");
+		negative.setZOrder(-3);
+		growable.add(negative);
+		objects.add(0, negative);
+		assertEquals(1000 - 2 * 1001 + 1, growable.getMinZ());
+		assertEquals(1000, growable.getMaxZ());
+		checkOrder(objects);
+		assertEquals(1, growable.countAt(-3));
+		assertEquals(0, growable.countAt(-4));
+	}
+	
+	@Test
+	public void bulkOperationsGrow() throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 200 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(rand.nextInt(50));
+			objects.add(object);
+		}
+		growable.addAll(objects);
+		checkOrder(sorted(objects));
+		
+		for (SimpleObject object : objects) {
+			object.setZOrder(rand.nextInt(400) - 200);
+		}
+		growable.changeAll(objects);
+		checkOrder(sorted(objects));
+		
+		for (SimpleObject object : objects) {
+			object.setZOrder(rand.nextInt(4000));
+			growable.markDirty(object);
+		}
+		growable.commit();
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		growable.forEachBackToFront(visited::add);
+		assertEquals(objects.size(), visited.size());
+		assertTrue(visited.containsAll(objects));
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() <= visited.get(i).getZOrder());
+		}
+	}
+	
+	@Test
+	public void shrinkReleasesEmptyLevels() throws Exception {
+		growable = new SimpleZCollection(-5, 5);
+		growable.setGrowable(true);
+		
+		SimpleObject low = new SimpleObject("low");
+		low.setZOrder(-100);
+		SimpleObject middle = new SimpleObject("middle");
+		middle.setZOrder(0);
+		SimpleObject high = new SimpleObject("high");
+		high.setZOrder(100);
+		growable.add(middle);
+		growable.add(high);
+		growable.add(low);
+		growable.publishSnapshot();
+		
+		// keeps occupied levels
+		high.setZOrder(20);
+		growable.change(high);
+		growable.shrink();
+		assertEquals(-100, growable.getMinZ());
+		assertEquals(20, growable.getMaxZ());
+		checkOrder(sorted(Arrays.asList(low, middle, high)));
+		
+		// but never the levels it was constructed with
+		growable.remove(low);
+		growable.remove(high);
+		growable.shrink();
+		assertEquals(-5, growable.getMinZ());
+		assertEquals(5, growable.getMaxZ());
+		checkOrder(Arrays.asList(middle));
+		
+		// snapshots follow the moved levels
+		List<ZSortable> snapshot = new ArrayList<ZSortable>();
+		growable.publishSnapshot().forEachBackToFront(snapshot::add);
+		assertEquals(Arrays.asList(middle), snapshot);
+		
+		// and so does growing again
+		growable.add(low);
+		snapshot.clear();
+		growable.publishSnapshot().forEachBackToFront(snapshot::add);
+		assertEquals(Arrays.asList(low, middle), snapshot);
+	}
+	
+	@Test
+	public void fixedCollectionsRejectZOrdersOutOfRange() throws Exception {
+		growable.setGrowable(false);
+		SimpleObject object = new SimpleObject("object");
+		object.setZOrder(1);
+		try {
+			growable.add(object);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertTrue(growable.isEmpty());
+		
+		try {
+			new SimpleZCollection(1, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		
+		try {
+			new SimpleZCollection(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * @param objects Objects to sort
+	 * @return The objects, sorted by Z-order and otherwise in the same order
+	 */
+	private static List<SimpleObject> sorted(List<SimpleObject> objects) {
+		List<SimpleObject> sorted = new ArrayList<SimpleObject>(objects);
+		sorted.sort((a, b) -> Integer.compare(a.getZOrder(), b.getZOrder()));
+		return sorted;
+	}
+	
+	/**
+	 * Checks that all traversals visit the objects in the given order
+	 * @param objects Objects expected in the collection, in order
+	 */
+	private void checkOrder(List<SimpleObject> objects) {
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		growable.forEachBackToFront(visited::add);
+		assertEquals(objects, visited);
+		assertEquals(objects.size(), growable.size());
+		
+		List<ZSortable> iterated = new ArrayList<ZSortable>();
+		for (Iterator<ZSortable> iter = growable.backToFrontIterator() ; iter.hasNext() ; ) {
+			iterated.add(iter.next());
+		}
+		assertEquals(visited, iterated);
+		assertEquals(visited, growable.parallelStream().collect(Collectors.toList()));
+		
+		List<ZSortable> reversed = new ArrayList<ZSortable>();
+		growable.forEachFrontToBack(reversed::add);
+		Collections.reverse(reversed);
+		assertEquals(visited, reversed);
+	}
+}
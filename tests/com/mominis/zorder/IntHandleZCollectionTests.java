@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class IntHandleZCollectionTests {
+	
+	protected static final int MAX_Z = 10;
+	
+	protected Random rand;
+	protected IntHandleZCollection underTest;
+	
+	@Before
+	public void setUp() throws Exception {
+		rand = new Random(System.nanoTime());
+		underTest = new IntHandleZCollection(MAX_Z, 2);
+	}
+
+	@Test
+	public void addOneBackToFront() throws Exception {
+		int z = rand.nextInt(MAX_Z + 1);
+		underTest.add(7, z);
+		
+		assertTrue(underTest.contains(7));
+		assertEquals(z, underTest.getZOrder(7));
+		assertEquals(Arrays.asList(7), visitBackToFront());
+	}
+	
+	@Test
+	public void removeOneBackToFront() throws Exception {
+		underTest.add(3, rand.nextInt(MAX_Z + 1));
+		underTest.remove(3);
+		
+		assertFalse(underTest.contains(3));
+		assertTrue(visitBackToFront().isEmpty());
+	}
+	
+	@Test(expected = AlreadyInCollectionException.class)
+	public void addTwice() throws Exception {
+		underTest.add(0, 0);
+		underTest.add(0, 1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidZOrder() throws Exception {
+		underTest.add(0, MAX_Z + 1);
+	}
+	
+	@Test
+	public void negativeHandlesCannotBeLinked() throws Exception {
+		try {
+			underTest.add(-1, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			underTest.change(-1, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertTrue(underTest.isEmpty());
+	}
+	
+	@Test
+	public void changePreservesOrder() throws Exception {
+		underTest.add(1, 2);
+		underTest.add(2, 2);
+		underTest.add(3, 0);
+		underTest.add(4, MAX_Z);
+		
+		// move away and back
+		underTest.change(1, 5);
+		underTest.change(1, 2);
+		
+		assertEquals(Arrays.asList(3, 2, 1, 4), visitBackToFront());
+		
+		List<Integer> visited = new ArrayList<Integer>();
+		underTest.forEachFrontToBack(visited::add);
+		assertEquals(Arrays.asList(4, 1, 2, 3), visited);
+	}
+	
+	@Test
+	public void releasedHandlesAreRecycled() throws Exception {
+		int handle1 = underTest.allocate();
+		int handle2 = underTest.allocate();
+		assertNotEquals(handle1, handle2);
+		
+		underTest.add(handle1, 1);
+		underTest.add(handle2, 1);
+		underTest.release(handle1);
+		
+		assertFalse(underTest.contains(handle1));
+		assertEquals(Arrays.asList(handle2), visitBackToFront());
+		assertEquals(handle1, underTest.allocate());
+		assertEquals(Math.max(handle1, handle2) + 1, underTest.allocate());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void releasingTwice() throws Exception {
+		int handle = underTest.allocate();
+		underTest.allocate();
+		underTest.release(handle);
+		underTest.release(handle);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void releasingUnallocatedHandle() throws Exception {
+		underTest.allocate();
+		underTest.release(1000);
+	}
+	
+	@Test
+	public void releasedHandlesCannotBeLinked() throws Exception {
+		int handle = underTest.allocate();
+		underTest.release(handle);
+		assertEquals(-2, underTest.getZOrder(handle));
+		
+		try {
+			underTest.add(handle, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			underTest.change(handle, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertTrue(underTest.isEmpty());
+		
+		assertEquals(handle, underTest.allocate());
+		assertEquals(-1, underTest.getZOrder(handle));
+		underTest.add(handle, 5);
+		assertEquals(Arrays.asList(handle), visitBackToFront());
+		assertEquals(5, underTest.getZOrder(handle));
+	}
+	
+	@Test
+	public void releasedHandleCanBeReleasedAgainOnceAllocated() throws Exception {
+		int handle = underTest.allocate();
+		underTest.release(handle);
+		assertEquals(handle, underTest.allocate());
+		
+		underTest.add(handle, 1);
+		underTest.release(handle);
+		assertFalse(underTest.contains(handle));
+		assertEquals(handle, underTest.allocate());
+	}
+	
+	@Test
+	public void removingWhileVisiting() throws Exception {
+		for (int i = 0 ; i < 100 ; ++i) {
+			underTest.add(underTest.allocate(), rand.nextInt(MAX_Z + 1));
+		}
+		
+		underTest.forEachBackToFront(underTest::release);
+		assertTrue(visitBackToFront().isEmpty());
+	}
+	
+	private List<Integer> visitBackToFront() {
+		List<Integer> visited = new ArrayList<Integer>();
+		underTest.forEachBackToFront(visited::add);
+		return visited;
+	}
+	
+	@Test
+	public void sizeAndCountsFollowChanges() throws Exception {
+		assertTrue(underTest.isEmpty());
+		
+		underTest.add(1, 3);
+		underTest.add(2, 3);
+		assertEquals(2, underTest.size());
+		assertEquals(2, underTest.countAt(3));
+		
+		underTest.change(2, MAX_Z);
+		assertEquals(2, underTest.size());
+		assertEquals(1, underTest.countAt(3));
+		assertEquals(1, underTest.countAt(MAX_Z));
+		assertEquals(0, underTest.countAt(-1));
+		assertEquals(0, underTest.countAt(MAX_Z + 1));
+		
+		underTest.remove(1);
+		underTest.remove(2);
+		assertEquals(0, underTest.countAt(3));
+		assertTrue(underTest.isEmpty());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class IntRadixSetTests {
+	
+	@Test
+	public void extremeValues() {
+		IntRadixSet underTest = new IntRadixSet();
+		assertEquals(IntRadixSet.NONE, underTest.lower(Integer.MAX_VALUE));
+		
+		assertTrue(underTest.add(Integer.MIN_VALUE));
+		assertTrue(underTest.add(-1));
+		assertTrue(underTest.add(0));
+		assertTrue(underTest.add(Integer.MAX_VALUE));
+		assertFalse(underTest.add(0));
+		assertEquals(4, underTest.size());
+		
+		assertEquals(IntRadixSet.NONE, underTest.lower(Integer.MIN_VALUE));
+		assertEquals(Integer.MIN_VALUE, underTest.lower(-1));
+		assertEquals(-1, underTest.lower(0));
+		assertEquals(0, underTest.lower(Integer.MAX_VALUE));
+		
+		assertTrue(underTest.remove(-1));
+		assertFalse(underTest.remove(-1));
+		assertFalse(underTest.contains(-1));
+		assertEquals(Integer.MIN_VALUE, underTest.lower(0));
+	}
+	
+	@Test
+	public void matchesTreeSet() {
+		Random rand = new Random(System.nanoTime());
+		IntRadixSet underTest = new IntRadixSet();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		
+		for (int i = 0 ; i < 20000 ; ++i) {
+			// mix clustered and spread out values
+			int value = rand.nextBoolean() ? rand.nextInt(2000) - 1000 : rand.nextInt();
+			if (rand.nextInt(3) == 0) {
+				assertEquals(expected.remove(value), underTest.remove(value));
+			} else {
+				assertEquals(expected.add(value), underTest.add(value));
+			}
+			
+			int probe = rand.nextBoolean() ? rand.nextInt(2000) - 1000 : rand.nextInt();
+			Integer lower = expected.lower(probe);
+			assertEquals(lower == null ? IntRadixSet.NONE : lower.longValue(), underTest.lower(probe));
+		}
+		assertEquals(expected.size(), underTest.size());
+	}
+}
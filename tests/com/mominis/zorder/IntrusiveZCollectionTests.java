@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class IntrusiveZCollectionTests {
+	
+	private static final int MAX_Z = 10;
+	
+	private Random rand;
+	private IntrusiveZCollection<SimpleIntrusiveObject> underTest;
+	
+	@Before
+	public void setUp() throws Exception {
+		rand = new Random(System.nanoTime());
+		underTest = new IntrusiveZCollection<SimpleIntrusiveObject>(MAX_Z);
+	}
+
+	@Test
+	public void addOneBackToFront() throws Exception {
+		SimpleIntrusiveObject object = new SimpleIntrusiveObject("object");
+		int z = Math.abs(rand.nextInt()) % (MAX_Z + 1);
+		
+		object.setZOrder(z);
+		underTest.add(object);
+		
+		Iterator<SimpleIntrusiveObject> iter = underTest.backToFrontIterator();
+		assertNotNull(iter);
+		assertTrue(iter.hasNext());
+		assertSame(object, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void removeOneBackToFront() throws Exception {
+		SimpleIntrusiveObject object = new SimpleIntrusiveObject("object");
+		int z = Math.abs(rand.nextInt()) % (MAX_Z + 1);
+		
+		object.setZOrder(z);
+		underTest.add(object);
+		underTest.remove(object);
+		
+		assertFalse(object.isInCollection());
+		assertFalse(underTest.backToFrontIterator().hasNext());
+	}
+	
+	@Test(expected = AlreadyInCollectionException.class)
+	public void addTwice() throws Exception {
+		SimpleIntrusiveObject object = new SimpleIntrusiveObject("object");
+		underTest.add(object);
+		underTest.add(object);
+	}
+	
+	@Test
+	public void multipleInSameBucketPreserveOrder() throws Exception {
+		SimpleIntrusiveObject object1 = new SimpleIntrusiveObject("object1");
+		SimpleIntrusiveObject object2 = new SimpleIntrusiveObject("object2");
+		SimpleIntrusiveObject object3 = new SimpleIntrusiveObject("object3");
+		
+		// choose two different z levels
+		int z1 = Math.abs(rand.nextInt()) % (MAX_Z + 1);
+		int z2 = Math.abs(rand.nextInt()) % (MAX_Z + 1);
+		while (z2 == z1) {
+			z2 = Math.abs(rand.nextInt()) % (MAX_Z + 1);
+		}
+		
+		object1.setZOrder(z1);
+		object2.setZOrder(z1);
+		object3.setZOrder(z1);
+		underTest.add(object1);
+		underTest.add(object2);
+		underTest.add(object3);
+		
+		// move the middle one away and back
+		object2.setZOrder(z2);
+		underTest.change(object2);
+		object2.setZOrder(z1);
+		underTest.change(object2);
+		
+		Iterator<SimpleIntrusiveObject> iter = underTest.backToFrontIterator();
+		assertSame(object1, iter.next());
+		assertSame(object3, iter.next());
+		assertSame(object2, iter.next());
+		assertFalse(iter.hasNext());
+		
+		iter = underTest.frontToBackIterator();
+		assertSame(object2, iter.next());
+		assertSame(object3, iter.next());
+		assertSame(object1, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void forEachMatchesIterators() throws Exception {
+		List<SimpleIntrusiveObject> expected = new ArrayList<SimpleIntrusiveObject>();
+		for (int i = 0 ; i <= MAX_Z ; ++i) {
+			SimpleIntrusiveObject object = new SimpleIntrusiveObject("object" + i);
+			object.setZOrder(MAX_Z - i);
+			underTest.add(object);
+			expected.add(0, object);
+		}
+		
+		List<SimpleIntrusiveObject> visited = new ArrayList<SimpleIntrusiveObject>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(expected, visited);
+		
+		// removing while visiting
+		visited.clear();
+		underTest.forEachFrontToBack(object -> {
+			visited.add(object);
+			underTest.remove(object);
+		});
+		assertEquals(MAX_Z + 1, visited.size());
+		assertSame(expected.get(MAX_Z), visited.get(0));
+		assertFalse(underTest.backToFrontIterator().hasNext());
+	}
+	
+	@Test
+	public void sizeAndCountsFollowChanges() throws Exception {
+		assertTrue(underTest.isEmpty());
+		
+		SimpleIntrusiveObject object1 = new SimpleIntrusiveObject("object1");
+		SimpleIntrusiveObject object2 = new SimpleIntrusiveObject("object2");
+		object1.setZOrder(3);
+		object2.setZOrder(3);
+		underTest.add(object1);
+		underTest.add(object2);
+		assertEquals(2, underTest.size());
+		assertEquals(2, underTest.countAt(3));
+		
+		object2.setZOrder(MAX_Z);
+		underTest.change(object2);
+		assertEquals(2, underTest.size());
+		assertEquals(1, underTest.countAt(3));
+		assertEquals(1, underTest.countAt(MAX_Z));
+		assertEquals(0, underTest.countAt(-1));
+		assertEquals(0, underTest.countAt(MAX_Z + 1));
+		
+		underTest.remove(object1);
+		underTest.remove(object2);
+		assertEquals(0, underTest.countAt(3));
+		assertTrue(underTest.isEmpty());
+	}
+	
+	@Test
+	public void objectsOfAnotherCollectionAreIgnored() throws Exception {
+		IntrusiveZCollection<SimpleIntrusiveObject> other = new IntrusiveZCollection<SimpleIntrusiveObject>(MAX_Z);
+		SimpleIntrusiveObject object1 = new SimpleIntrusiveObject("object1");
+		SimpleIntrusiveObject object2 = new SimpleIntrusiveObject("object2");
+		object1.setZOrder(3);
+		object2.setZOrder(3);
+		underTest.add(object1);
+		underTest.add(object2);
+		
+		other.remove(object1);
+		object2.setZOrder(5);
+		other.change(object2);
+		assertTrue(other.isEmpty());
+		assertEquals(0, other.countAt(3));
+		assertEquals(0, other.countAt(5));
+		
+		// still linked where they were
+		assertEquals(2, underTest.size());
+		assertEquals(2, underTest.countAt(3));
+		List<SimpleIntrusiveObject> visited = new ArrayList<SimpleIntrusiveObject>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(Arrays.asList(object1, object2), visited);
+		
+		underTest.change(object2);
+		assertEquals(1, underTest.countAt(5));
+		underTest.remove(object1);
+		underTest.remove(object2);
+		assertTrue(underTest.isEmpty());
+		
+		// free to move to the other collection now
+		other.change(object1);
+		assertEquals(1, other.size());
+	}
+	
+	@Test
+	public void iteratorRemovesCurrent() throws Exception {
+		List<SimpleIntrusiveObject> kept = new ArrayList<SimpleIntrusiveObject>();
+		for (int i = 0 ; i < 100 ; ++i) {
+			SimpleIntrusiveObject object = new SimpleIntrusiveObject("object" + i);
+			object.setZOrder(rand.nextInt(MAX_Z + 1));
+			underTest.add(object);
+		}
+		
+		int visited = 0;
+		Iterator<SimpleIntrusiveObject> iter = underTest.backToFrontIterator();
+		while (iter.hasNext()) {
+			SimpleIntrusiveObject object = iter.next();
+			if (++visited % 2 == 0) {
+				iter.remove();
+				assertFalse(object.isInCollection());
+			} else {
+				kept.add(object);
+			}
+		}
+		
+		assertEquals(100, visited);
+		assertEquals(kept.size(), underTest.size());
+		List<SimpleIntrusiveObject> remaining = new ArrayList<SimpleIntrusiveObject>();
+		underTest.forEachBackToFront(remaining::add);
+		assertEquals(kept, remaining);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class OccupancyBitmapTests {
+	
+	@Test
+	public void emptyBitmap() {
+		OccupancyBitmap underTest = new OccupancyBitmap(200);
+		assertEquals(-1, underTest.nextSetBit(0));
+		assertEquals(-1, underTest.previousSetBit(199));
+	}
+	
+	@Test
+	public void acrossWords() {
+		OccupancyBitmap underTest = new OccupancyBitmap(200);
+		underTest.set(0);
+		underTest.set(63);
+		underTest.set(64);
+		underTest.set(199);
+		
+		assertEquals(0, underTest.nextSetBit(0));
+		assertEquals(63, underTest.nextSetBit(1));
+		assertEquals(64, underTest.nextSetBit(64));
+		assertEquals(199, underTest.nextSetBit(65));
+		assertEquals(-1, underTest.nextSetBit(200));
+		
+		assertEquals(199, underTest.previousSetBit(199));
+		assertEquals(64, underTest.previousSetBit(198));
+		assertEquals(63, underTest.previousSetBit(63));
+		assertEquals(0, underTest.previousSetBit(62));
+		assertEquals(-1, underTest.previousSetBit(-1));
+		
+		underTest.clear(64);
+		assertFalse(underTest.get(64));
+		assertTrue(underTest.get(63));
+		assertEquals(199, underTest.nextSetBit(64));
+		assertEquals(63, underTest.previousSetBit(198));
+	}
+}
@@ -22,12 +22,23 @@
  */
 package com.mominis.zorder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.mominis.zorder.except.AlreadyInCollectionException;
+
 import static org.junit.Assert.*;
 
 /**
@@ -45,7 +56,43 @@ public class SimpleZCollectionTests {
 	@Before
 	public void setUp() throws Exception {
 		rand = new Random(System.nanoTime());
-		underTest = new SimpleZCollection(MAX_Z);
+		underTest = createCollection();
+	}
+	
+	/**
+	 * @return A new, empty collection to test
+	 */
+	protected ZCollection createCollection() {
+		return new SimpleZCollection(MAX_Z);
+	}
+	
+	/**
+	 * @return Lowest Z-order the tests should use
+	 */
+	protected int getMinZ() {
+		return 0;
+	}
+	
+	/**
+	 * @return Highest Z-order the tests should use
+	 */
+	protected int getMaxZ() {
+		return MAX_Z;
+	}
+	
+	/**
+	 * @return The Z-order half way between {@link #getMinZ()} and {@link #getMaxZ()}
+	 */
+	protected int getMidZ() {
+		return (int)(((long)getMinZ() + getMaxZ()) >> 1);
+	}
+	
+	/**
+	 * @return A random Z-order, between {@link #getMinZ()} and {@link #getMaxZ()}
+	 *         unless overridden
+	 */
+	protected int nextZ() {
+		return (int)(getMinZ() + (long)(rand.nextDouble() * ((long)getMaxZ() - getMinZ() + 1)));
 	}
 
 	@Test
@@ -204,4 +251,453 @@ public class SimpleZCollectionTests {
 		assertSame(object1, iter.next());
 		assertFalse(iter.hasNext());
 	}
+	
+	@Test
+	public void forEachMatchesIterators() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		SimpleObject object3 = new SimpleObject("object3");
+		
+		object1.setZOrder(MAX_Z);
+		object2.setZOrder(0);
+		object3.setZOrder(0);
+		underTest.add(object1);
+		underTest.add(object2);
+		underTest.add(object3);
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(3, visited.size());
+		assertSame(object2, visited.get(0));
+		assertSame(object3, visited.get(1));
+		assertSame(object1, visited.get(2));
+		
+		visited.clear();
+		underTest.forEachFrontToBack(visited::add);
+		assertEquals(3, visited.size());
+		assertSame(object1, visited.get(0));
+		assertSame(object3, visited.get(1));
+		assertSame(object2, visited.get(2));
+	}
+	
+	@Test
+	public void forEachAllowsRemoval() throws Exception {
+		for (int i = 0 ; i <= MAX_Z ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(i);
+			underTest.add(object);
+		}
+		
+		underTest.forEachBackToFront(underTest::remove);
+		
+		assertFalse(underTest.backToFrontIterator().hasNext());
+	}
+	
+	@Test
+	public void emptiedLevelsAreSkipped() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		SimpleObject object3 = new SimpleObject("object3");
+		
+		object1.setZOrder(0);
+		object2.setZOrder(MAX_Z / 2);
+		object3.setZOrder(MAX_Z);
+		underTest.add(object1);
+		underTest.add(object2);
+		underTest.add(object3);
+		
+		underTest.remove(object2);
+		object1.setZOrder(MAX_Z);
+		underTest.change(object1);
+		
+		Iterator<ZSortable> iter = underTest.backToFrontIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object3, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object1, iter.next());
+		assertFalse(iter.hasNext());
+		
+		iter = underTest.frontToBackIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object1, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object3, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void addAllKeepsOrderWithinZOrder() throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 200 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(nextZ());
+			objects.add(object);
+		}
+		objects.add(null);
+		objects.add(objects.get(0));
+		
+		underTest.addAll(objects);
+		
+		List<ZSortable> expected = new ArrayList<ZSortable>(objects.subList(0, 200));
+		expected.sort(Comparator.comparingInt(ZSortable::getZOrder));
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(expected, visited);
+		
+		underTest.removeAll(objects);
+		assertFalse(underTest.backToFrontIterator().hasNext());
+	}
+	
+	@Test
+	public void addAllFailsWithoutAdding() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		
+		object1.setZOrder(nextZ());
+		object2.setZOrder(nextZ());
+		underTest.add(object2);
+		
+		try {
+			underTest.addAll(Arrays.asList(object1, object2));
+			fail();
+		} catch (AlreadyInCollectionException e) {
+			// expected
+		}
+		
+		assertNull(object1.getCurrentLink());
+		Iterator<ZSortable> iter = underTest.backToFrontIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object2, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void changeAllResorts() throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 100 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(nextZ());
+			objects.add(object);
+		}
+		underTest.addAll(objects.subList(0, 50));
+		
+		for (SimpleObject object : objects) {
+			object.setZOrder(nextZ());
+		}
+		underTest.changeAll(objects);
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachFrontToBack(visited::add);
+		assertEquals(objects.size(), visited.size());
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() >= visited.get(i).getZOrder());
+		}
+	}
+	
+	@Test
+	public void commitMovesMarkedObjects() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		
+		object1.setZOrder(getMinZ());
+		object2.setZOrder(getMaxZ() - 1);
+		underTest.add(object1);
+		underTest.add(object2);
+		
+		// several changes in one frame
+		object1.setZOrder(getMidZ());
+		underTest.markDirty(object1);
+		object1.setZOrder(getMaxZ());
+		underTest.markDirty(object1);
+		underTest.commit();
+		
+		Iterator<ZSortable> iter = underTest.backToFrontIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object2, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object1, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void commitSkipsUnmovedAndRemovedObjects() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		
+		object1.setZOrder(getMinZ());
+		object2.setZOrder(getMaxZ() - 1);
+		underTest.add(object1);
+		underTest.add(object2);
+		Unlinkable link = object1.getCurrentLink();
+		
+		// back at the original Z-order by the end of the frame
+		object1.setZOrder(getMidZ());
+		underTest.markDirty(object1);
+		object1.setZOrder(getMinZ());
+		
+		underTest.markDirty(object2);
+		underTest.remove(object2);
+		underTest.commit();
+		
+		assertSame(link, object1.getCurrentLink());
+		assertNull(object2.getCurrentLink());
+		Iterator<ZSortable> iter = underTest.backToFrontIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object1, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void traversalCommitsUnlessAutoCommitIsOff() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		
+		object1.setZOrder(getMinZ());
+		object2.setZOrder(getMaxZ() - 1);
+		underTest.add(object1);
+		underTest.add(object2);
+		
+		underTest.setAutoCommit(false);
+		object1.setZOrder(getMaxZ());
+		underTest.markDirty(object1);
+		try {
+			underTest.forEachBackToFront(o -> { });
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		
+		underTest.setAutoCommit(true);
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(Arrays.asList(object2, object1), visited);
+	}
+	
+	@Test
+	public void rangeTraversalMatchesFilteredTraversal() throws Exception {
+		for (int i = 0 ; i < 200 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(nextZ());
+			underTest.add(object);
+		}
+		
+		List<ZSortable> all = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(all::add);
+		
+		for (int i = 0 ; i < 50 ; ++i) {
+			// ranges may start or end a little outside of the bounds
+			int zLow = nextZ() + rand.nextInt(5) - 2;
+			int zHigh = nextZ() + rand.nextInt(5) - 2;
+			
+			List<ZSortable> expected = new ArrayList<ZSortable>();
+			for (ZSortable object : all) {
+				if (object.getZOrder() >= zLow && object.getZOrder() <= zHigh) {
+					expected.add(object);
+				}
+			}
+			
+			List<ZSortable> visited = new ArrayList<ZSortable>();
+			underTest.forEachBackToFront(zLow, zHigh, visited::add);
+			assertEquals(expected, visited);
+			
+			visited.clear();
+			Iterator<ZSortable> iter = underTest.backToFrontIterator(zLow, zHigh);
+			while (iter.hasNext()) {
+				visited.add(iter.next());
+			}
+			assertEquals(expected, visited);
+			
+			Collections.reverse(expected);
+			visited.clear();
+			underTest.forEachFrontToBack(zLow, zHigh, visited::add);
+			assertEquals(expected, visited);
+			
+			visited.clear();
+			iter = underTest.frontToBackIterator(zLow, zHigh);
+			while (iter.hasNext()) {
+				visited.add(iter.next());
+			}
+			assertEquals(expected, visited);
+		}
+	}
+	
+	@Test
+	public void streamsKeepBackToFrontOrder() throws Exception {
+		for (int i = 0 ; i < 1000 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(nextZ());
+			underTest.add(object);
+		}
+		
+		List<ZSortable> expected = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(expected::add);
+		
+		assertEquals(expected, underTest.stream().collect(Collectors.toList()));
+		assertEquals(expected, underTest.parallelStream().collect(Collectors.toList()));
+		
+		// a split covers a prefix of the elements
+		Spliterator<ZSortable> suffix = underTest.spliterator();
+		assertEquals(expected.size(), suffix.estimateSize());
+		Spliterator<ZSortable> prefix = suffix.trySplit();
+		assertNotNull(prefix);
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		prefix.forEachRemaining(visited::add);
+		suffix.forEachRemaining(visited::add);
+		assertEquals(expected, visited);
+	}
+	
+	@Test
+	public void spliteratorSplitsClusteredZOrders() throws Exception {
+		// all objects in the two highest Z-orders
+		for (int i = 0 ; i < 100 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(getMaxZ() - i % 2);
+			underTest.add(object);
+		}
+		
+		List<ZSortable> expected = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(expected::add);
+		
+		Spliterator<ZSortable> suffix = underTest.spliterator();
+		Spliterator<ZSortable> prefix = suffix.trySplit();
+		assertNotNull(prefix);
+		assertEquals(50, prefix.estimateSize());
+		assertEquals(50, suffix.estimateSize());
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		prefix.forEachRemaining(visited::add);
+		assertEquals(expected.subList(0, 50), visited);
+		suffix.forEachRemaining(visited::add);
+		assertEquals(expected, visited);
+	}
+	
+	@Test
+	public void sizeAndCountsFollowChanges() throws Exception {
+		assertTrue(underTest.isEmpty());
+		
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 100 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(nextZ());
+			objects.add(object);
+		}
+		underTest.addAll(objects.subList(0, 50));
+		for (SimpleObject object : objects.subList(50, 100)) {
+			underTest.add(object);
+		}
+		for (int i = 0 ; i < 30 ; ++i) {
+			SimpleObject object = objects.get(i);
+			object.setZOrder(nextZ());
+			underTest.change(object);
+		}
+		for (SimpleObject object : objects.subList(70, 100)) {
+			underTest.remove(object);
+		}
+		
+		assertFalse(underTest.isEmpty());
+		assertEquals(70, underTest.size());
+		Set<Integer> zOrders = new TreeSet<Integer>();
+		for (SimpleObject object : objects) {
+			zOrders.add(object.getZOrder());
+		}
+		if (getMinZ() > Integer.MIN_VALUE) {
+			zOrders.add(getMinZ() - 1);
+		}
+		if (getMaxZ() < Integer.MAX_VALUE) {
+			zOrders.add(getMaxZ() + 1);
+		}
+		for (int z : zOrders) {
+			int expected = 0;
+			for (SimpleObject object : objects.subList(0, 70)) {
+				if (object.getZOrder() == z) {
+					++expected;
+				}
+			}
+			assertEquals(expected, underTest.countAt(z));
+		}
+		
+		underTest.removeAll(objects);
+		assertTrue(underTest.isEmpty());
+		assertEquals(0, underTest.size());
+	}
+	
+	@Test
+	public void objectsOfAnotherCollectionAreIgnored() throws Exception {
+		ZCollection other = createCollection();
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		int z = nextZ();
+		object1.setZOrder(z);
+		object2.setZOrder(z);
+		underTest.add(object1);
+		underTest.add(object2);
+		
+		other.remove(object1);
+		other.change(object2);
+		other.changeAll(Arrays.asList(object1, object2));
+		other.markDirty(object1);
+		other.commit();
+		assertTrue(other.isEmpty());
+		assertEquals(0, other.countAt(z));
+		assertFalse(other.backToFrontIterator().hasNext());
+		
+		// still linked where they were
+		assertEquals(2, underTest.size());
+		assertEquals(2, underTest.countAt(z));
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(Arrays.asList(object1, object2), visited);
+		
+		underTest.removeAll(visited);
+		assertTrue(underTest.isEmpty());
+		other.add(object1);
+		assertEquals(1, other.size());
+	}
+	
+	@Test
+	public void iteratorRemovesCurrent() throws Exception {
+		for (int i = 0 ; i < 200 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(nextZ());
+			underTest.add(object);
+		}
+		
+		for (boolean backToFront : new boolean[] { true, false }) {
+			List<ZSortable> all = new ArrayList<ZSortable>();
+			underTest.forEachBackToFront(all::add);
+			if (!backToFront) {
+				Collections.reverse(all);
+			}
+			
+			// remove every other object, and every object of the first Z-order seen
+			List<ZSortable> visited = new ArrayList<ZSortable>();
+			List<ZSortable> kept = new ArrayList<ZSortable>();
+			Iterator<ZSortable> iter = backToFront ? underTest.backToFrontIterator() : underTest.frontToBackIterator();
+			while (iter.hasNext() && iter.hasNext()) {
+				ZSortable object = iter.next();
+				visited.add(object);
+				if (visited.size() % 2 == 0 || object.getZOrder() == all.get(0).getZOrder()) {
+					iter.remove();
+					assertNull(object.getCurrentLink());
+					try {
+						iter.remove();
+						fail();
+					} catch (IllegalStateException e) {
+						// expected
+					}
+				} else {
+					kept.add(object);
+				}
+			}
+			
+			assertEquals(all, visited);
+			assertEquals(kept.size(), underTest.size());
+			if (!backToFront) {
+				Collections.reverse(kept);
+			}
+			List<ZSortable> remaining = new ArrayList<ZSortable>();
+			underTest.forEachBackToFront(remaining::add);
+			assertEquals(kept, remaining);
+		}
+	}
 }
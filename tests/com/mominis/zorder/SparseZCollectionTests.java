@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link SimpleZCollectionTests} against {@link SparseZCollection},
+ * and checks it with Z-orders spread over the whole int range
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class SparseZCollectionTests extends SimpleZCollectionTests {
+	
+	private SparseZCollection sparse;
+	
+	@Override
+	protected ZCollection createCollection() {
+		sparse = new SparseZCollection();
+		return sparse;
+	}
+	
+	@Override
+	protected int getMinZ() {
+		return Integer.MIN_VALUE;
+	}
+	
+	@Override
+	protected int getMaxZ() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Test
+	public void addOneBackToFront() throws Exception {
+		SimpleObject object = new SimpleObject("object");
+		
+		object.setZOrder(rand.nextInt());
+		underTest.add(object);
+		
+		Iterator<ZSortable> iter = underTest.backToFrontIterator();
+		assertNotNull(iter);
+		assertTrue(iter.hasNext());
+		assertSame(object, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void removeOneBackToFront() throws Exception {
+		SimpleObject object = new SimpleObject("object");
+		
+		object.setZOrder(rand.nextInt());
+		underTest.add(object);
+		underTest.remove(object);
+		
+		assertFalse(underTest.backToFrontIterator().hasNext());
+		assertEquals(0, sparse.getBucketCount());
+	}
+	
+	@Test
+	public void extremeZOrders() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		SimpleObject object3 = new SimpleObject("object3");
+		SimpleObject object4 = new SimpleObject("object4");
+		
+		object1.setZOrder(Integer.MAX_VALUE);
+		object2.setZOrder(Integer.MIN_VALUE);
+		object3.setZOrder(0);
+		object4.setZOrder(Integer.MIN_VALUE);
+		underTest.add(object1);
+		underTest.add(object2);
+		underTest.add(object3);
+		underTest.add(object4);
+		
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachBackToFront(visited::add);
+		assertEquals(4, visited.size());
+		assertSame(object2, visited.get(0));
+		assertSame(object4, visited.get(1));
+		assertSame(object3, visited.get(2));
+		assertSame(object1, visited.get(3));
+		
+		Iterator<ZSortable> iter = underTest.frontToBackIterator();
+		assertTrue(iter.hasNext());
+		assertSame(object1, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object3, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object4, iter.next());
+		assertTrue(iter.hasNext());
+		assertSame(object2, iter.next());
+		assertFalse(iter.hasNext());
+	}
+	
+	@Test
+	public void manyZOrdersStaySorted() throws Exception {
+		SimpleObject[] objects = new SimpleObject[1000];
+		
+		for (int i = 0 ; i < objects.length ; ++i) {
+			objects[i] = new SimpleObject("object" + i);
+			objects[i].setZOrder(nextZ());
+			underTest.add(objects[i]);
+		}
+		
+		// shuffle Z-orders around, removing some of the objects
+		for (int i = 0 ; i < objects.length * 4 ; ++i) {
+			SimpleObject object = objects[rand.nextInt(objects.length)];
+			if (object.getCurrentLink() == null) {
+				underTest.add(object);
+			} else if (rand.nextInt(4) == 0) {
+				underTest.remove(object);
+			} else {
+				object.setZOrder(nextZ());
+				underTest.change(object);
+			}
+		}
+		
+		int expected = 0;
+		for (SimpleObject object : objects) {
+			if (object.getCurrentLink() != null) {
+				++expected;
+			}
+		}
+		
+		final List<ZSortable> visited = new ArrayList<ZSortable>();
+		underTest.forEachFrontToBack(visited::add);
+		assertEquals(expected, visited.size());
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() >= visited.get(i).getZOrder());
+		}
+	}
+	
+	/**
+	 * @return Either a clustered or a spread out Z-order
+	 */
+	@Override
+	protected int nextZ() {
+		return rand.nextBoolean() ? rand.nextInt(100) - 50 : rand.nextInt();
+	}
+}
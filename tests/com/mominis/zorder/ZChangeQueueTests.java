@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ZChangeQueueTests {
+	
+	private static final int MAX_Z = 10;
+	
+	private Random rand;
+	private ZCollection collection;
+	private ZChangeQueue underTest;
+	
+	@Before
+	public void setUp() throws Exception {
+		rand = new Random(System.nanoTime());
+		collection = new SimpleZCollection(MAX_Z);
+		underTest = new ZChangeQueue(collection, 16);
+	}
+	
+	@Test
+	public void requestsAreAppliedOnDrain() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		object1.setZOrder(MAX_Z);
+		object2.setZOrder(0);
+		
+		assertTrue(underTest.offerAdd(object1));
+		assertTrue(underTest.offerAdd(object2));
+		assertTrue(collection.isEmpty());
+		
+		assertEquals(2, underTest.drainAndApply());
+		assertEquals(Arrays.asList(object2, object1), visitBackToFront());
+		
+		object2.setZOrder(MAX_Z);
+		assertTrue(underTest.offerChange(object2));
+		assertTrue(underTest.offerRemove(object1));
+		assertEquals(2, underTest.drainAndApply());
+		assertEquals(Arrays.asList(object2), visitBackToFront());
+		
+		assertEquals(0, underTest.drainAndApply());
+	}
+	
+	@Test
+	public void repeatedChangesAreCoalesced() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		object1.setZOrder(0);
+		object2.setZOrder(MAX_Z);
+		collection.add(object1);
+		collection.add(object2);
+		Unlinkable link = object2.getCurrentLink();
+		
+		for (int i = 0 ; i < 5 ; ++i) {
+			object1.setZOrder(i);
+			assertTrue(underTest.offerChange(object1));
+			assertTrue(underTest.offerChange(object2));
+		}
+		object1.setZOrder(MAX_Z);
+		
+		assertEquals(10, underTest.drainAndApply());
+		assertEquals(Arrays.asList(object2, object1), visitBackToFront());
+		
+		// never moved, as its Z-order didn't change
+		assertSame(link, object2.getCurrentLink());
+	}
+	
+	@Test
+	public void fullQueueRejectsRequests() throws Exception {
+		assertEquals(16, underTest.capacity());
+		assertEquals(8, new ZChangeQueue(collection, 5).capacity());
+		
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 16 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(rand.nextInt(MAX_Z + 1));
+			objects.add(object);
+			assertTrue(underTest.offerAdd(object));
+		}
+		assertFalse(underTest.offerAdd(new SimpleObject("overflow")));
+		
+		assertEquals(16, underTest.drainAndApply());
+		assertEquals(16, collection.size());
+		
+		// slots are reused once drained
+		for (SimpleObject object : objects) {
+			assertTrue(underTest.offerRemove(object));
+		}
+		assertEquals(16, underTest.drainAndApply());
+		assertTrue(collection.isEmpty());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCapacity() throws Exception {
+		new ZChangeQueue(collection, 0);
+	}
+	
+	@Test
+	public void producersRaceWithOwner() throws Exception {
+		collection = new FixedPointZCollection(MAX_Z);
+		underTest = new ZChangeQueue(collection, 64);
+		
+		final int producers = 4;
+		final int changes = 20000;
+		final List<List<SimpleObject>> owned = new ArrayList<List<SimpleObject>>();
+		for (int i = 0 ; i < producers ; ++i) {
+			List<SimpleObject> objects = new ArrayList<SimpleObject>();
+			for (int j = 0 ; j < 50 ; ++j) {
+				SimpleObject object = new SimpleObject("object" + i + "." + j);
+				object.setZOrder(rand.nextInt(MAX_Z + 1));
+				collection.add(object);
+				objects.add(object);
+			}
+			owned.add(objects);
+		}
+		
+		final AtomicInteger running = new AtomicInteger(producers);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0 ; i < producers ; ++i) {
+			final int producer = i;
+			Thread thread = new Thread(() -> {
+				try {
+					Random random = new Random(producer);
+					for (int j = 0 ; j < changes ; ++j) {
+						SimpleObject object = owned.get(producer).get(random.nextInt(50));
+						object.setZOrder(random.nextInt(MAX_Z + 1));
+						while (!underTest.offerChange(object)) {
+							Thread.yield();
+						}
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		int applied = 0;
+		while (running.get() > 0) {
+			applied += underTest.drainAndApply();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		applied += underTest.drainAndApply();
+		
+		assertNull(failure.get());
+		assertEquals(producers * changes, applied);
+		List<ZSortable> visited = visitBackToFront();
+		assertEquals(producers * 50, visited.size());
+		for (int i = 1 ; i < visited.size() ; ++i) {
+			assertTrue(visited.get(i - 1).getZOrder() <= visited.get(i).getZOrder());
+		}
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * @return Objects of the collection, back-to-front
+	 */
+	private List<ZSortable> visitBackToFront() {
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		collection.forEachBackToFront(visited::add);
+		return visited;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ZCollectionEventsTests {
+	
+	private static final int MAX_Z = 10;
+	
+	private Recording recording;
+	
+	@Before
+	public void setUp() throws Exception {
+		recording = new Recording();
+		recording.enable(ZCollectionEvents.Traversal.class);
+		recording.enable(ZCollectionEvents.BulkOperation.class);
+		recording.enable(ZCollectionEvents.SlowBucketSearch.class);
+		recording.enable(ZCollectionEvents.Bucket.class);
+		recording.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		recording.close();
+	}
+	
+	@Test
+	public void recordsTraversalsAndBulkOperations() throws Exception {
+		SimpleZCollection collection = new SimpleZCollection(MAX_Z);
+		List<SimpleObject> objects = objects(3, 9, 3);
+		collection.addAll(objects);
+		collection.forEachFrontToBack(2, 8, object -> { });
+		
+		objects.get(0).setZOrder(7);
+		collection.markDirty(objects.get(0));
+		collection.commit();
+		collection.removeAll(objects);
+		
+		List<RecordedEvent> bulk = events("com.mominis.zorder.BulkOperation");
+		assertEquals(3, bulk.size());
+		checkBulk(bulk.get(0), collection, "addAll", 3, 3, 9);
+		checkBulk(bulk.get(1), collection, "commit", 1, 7, 7);
+		checkBulk(bulk.get(2), collection, "removeAll", 3, 3, 9);
+		
+		List<RecordedEvent> traversals = events("com.mominis.zorder.Traversal");
+		assertEquals(1, traversals.size());
+		RecordedEvent traversal = traversals.get(0);
+		assertEquals(ZCollectionEvents.describe(collection), traversal.getString("Collection"));
+		assertTrue(traversal.getBoolean("FrontToBack"));
+		assertEquals(2, traversal.getInt("ZLow"));
+		assertEquals(8, traversal.getInt("ZHigh"));
+		assertEquals(1, traversal.getInt("Buckets"));
+		assertEquals(2, traversal.getInt("Objects"));
+	}
+	
+	@Test
+	public void recordsBucketsAndSlowSearches() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		int count = ZCollectionEvents.SLOW_SEARCH_BUCKETS + 1;
+		
+		// every object opens a bucket after the predetermined bucket of 0, opened first
+		SimpleObject zero = new SimpleObject("zero");
+		zero.setZOrder(0);
+		collection.add(zero);
+		SimpleObject[] objects = new SimpleObject[count];
+		for (int i = 0 ; i < count ; ++i) {
+			objects[i] = new SimpleObject("object" + i);
+			objects[i].setZOrder(i + 1);
+			collection.add(objects[i]);
+		}
+		collection.remove(objects[0]);
+		
+		List<RecordedEvent> buckets = events("com.mominis.zorder.Bucket");
+		assertEquals(count + 1, buckets.size());
+		for (int i = 0 ; i < count ; ++i) {
+			assertTrue(buckets.get(i).getBoolean("Opened"));
+			assertEquals(i + 1, buckets.get(i).getInt("Z"));
+			assertEquals(0, buckets.get(i).getInt("AnchorZ"));
+			assertEquals(i + 1, buckets.get(i).getInt("DynamicBuckets"));
+		}
+		RecordedEvent closed = buckets.get(count);
+		assertFalse(closed.getBoolean("Opened"));
+		assertEquals(1, closed.getInt("Z"));
+		assertEquals(count - 1, closed.getInt("DynamicBuckets"));
+		
+		// only the last object searched among enough buckets
+		List<RecordedEvent> searches = events("com.mominis.zorder.SlowBucketSearch");
+		assertEquals(1, searches.size());
+		assertEquals(ZCollectionEvents.describe(collection), searches.get(0).getString("Collection"));
+		assertEquals(count, searches.get(0).getInt("Z"));
+		assertEquals(0, searches.get(0).getInt("AnchorZ"));
+		assertEquals(ZCollectionEvents.SLOW_SEARCH_BUCKETS, searches.get(0).getInt("Buckets"));
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * @param zOrders Z-orders of the objects
+	 * @return An object per Z-order
+	 */
+	private static List<SimpleObject> objects(int... zOrders) {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < zOrders.length ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(zOrders[i]);
+			objects.add(object);
+		}
+		return objects;
+	}
+	
+	/**
+	 * Stops the recording and reads its events of a type
+	 * @param name Name of the event type
+	 * @return Events of the type, in the order they were committed
+	 */
+	private List<RecordedEvent> events(String name) throws Exception {
+		if (recording.getState() == RecordingState.RUNNING) {
+			recording.stop();
+		}
+		Path file = Files.createTempFile("zorder", ".jfr");
+		try {
+			recording.dump(file);
+			List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				if (event.getEventType().getName().equals(name)) {
+					events.add(event);
+				}
+			}
+			events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+			return events;
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	private static void checkBulk(RecordedEvent event, ZCollection collection, String operation,
+		int objects, int zLow, int zHigh) {
+		
+		assertEquals(ZCollectionEvents.describe(collection), event.getString("Collection"));
+		assertEquals(operation, event.getString("Operation"));
+		assertEquals(objects, event.getInt("Objects"));
+		assertEquals(zLow, event.getInt("ZLow"));
+		assertEquals(zHigh, event.getInt("ZHigh"));
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ZCollectionStatsTests {
+	
+	private static final int MAX_Z = 10;
+	
+	private ZCollectionStats stats;
+	
+	@Before
+	public void setUp() throws Exception {
+		stats = new ZCollectionStats();
+	}
+	
+	@Test
+	public void countsSimpleOperations() throws Exception {
+		SimpleZCollection collection = new SimpleZCollection(MAX_Z);
+		assertNull(collection.getStats());
+		collection.setStats(stats);
+		
+		List<SimpleObject> objects = populate(collection, 0, 3, 3, MAX_Z);
+		
+		// buckets are allocated for the levels used
+		assertSame(stats, collection.getStats());
+		assertEquals(3, stats.getBuckets());
+		assertEquals(0, stats.getEmptyBuckets());
+		assertEquals(0, stats.getDynamicBuckets());
+		assertTrue(stats.getRetainedBytes() > 4 * ZCollectionStats.LINK_BYTES);
+
+		
+		checkOperations(collection, objects, 3);
+		
+		collection.setStats(null);
+		collection.add(new SimpleObject("ignored"));
+		assertNull(collection.getStats());
+		assertEquals(0, stats.getAdds());
+	}
+	
+	@Test
+	public void countsFixedPointSearches() throws Exception {
+		FixedPointZCollection collection = new FixedPointZCollection(MAX_Z);
+		collection.setStats(stats);
+		
+		List<SimpleObject> objects = populate(collection, 1500, 1200, 1700, 1700);
+		
+		// opening 1500, 1200 and 1700 searched among 0, 1 and 2 buckets, the second 1700 is in the same run
+		assertEquals(1, stats.getSearches(0));
+		assertEquals(1, stats.getSearches(1));
+		assertEquals(1, stats.getSearches(2));
+		
+		// predetermined buckets are opened on first use, only the first and last buckets are empty
+		collection.getStats();
+		assertEquals(2 + 3, stats.getBuckets());
+		assertEquals(2, stats.getEmptyBuckets());
+		assertEquals(3, stats.getDynamicBuckets());
+		
+		// traversal walks the empty first and last buckets too
+		checkOperations(collection, objects, 2 + 3);
+	}
+	
+	@Test
+	public void countsSparseBuckets() throws Exception {
+		SparseZCollection collection = new SparseZCollection();
+		collection.setStats(stats);
+		
+		List<SimpleObject> objects = populate(collection, -5, 7, 7, 100000);
+		
+		collection.getStats();
+		assertEquals(3, stats.getBuckets());
+		assertEquals(0, stats.getEmptyBuckets());
+		assertEquals(3, stats.getDynamicBuckets());
+		
+		checkOperations(collection, objects, 3);
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * Adds an object per Z-order, the first one by itself and the rest at once
+	 * @param collection Collection to add to
+	 * @param zOrders Z-orders of the objects
+	 * @return Added objects
+	 */
+	private static List<SimpleObject> populate(ZCollection collection, int... zOrders) throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < zOrders.length ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(zOrders[i]);
+			objects.add(object);
+		}
+		
+		collection.add(objects.get(0));
+		collection.addAll(objects.subList(1, objects.size()));
+		return objects;
+	}
+	
+	/**
+	 * Runs operations on a collection of four objects, and checks that they're counted once
+	 * @param collection Collection with statistics attached
+	 * @param objects The collection's objects
+	 * @param buckets Number of buckets a traversal of the collection visits
+	 */
+	private void checkOperations(ZCollection collection, List<SimpleObject> objects, int buckets) throws Exception {
+		assertEquals(4, stats.getAdds());
+		
+		collection.forEachBackToFront(object -> { });
+		assertEquals(1, stats.getTraversals());
+		assertEquals(buckets, stats.getLastBucketsVisited());
+		assertEquals(4, stats.getLastObjectsVisited());
+		
+		// changes aren't counted as adds and removes
+		collection.change(objects.get(0));
+		collection.changeAll(objects.subList(1, 3));
+		collection.markDirty(objects.get(3));
+		objects.get(3).setZOrder(objects.get(0).getZOrder());
+		collection.commit();
+		assertEquals(4, stats.getChanges());
+		assertEquals(4, stats.getAdds());
+		assertEquals(0, stats.getRemoves());
+		
+		collection.remove(objects.get(0));
+		collection.removeAll(Arrays.asList(objects.get(1)));
+		Iterator<ZSortable> iter = collection.frontToBackIterator();
+		iter.next();
+		iter.remove();
+		assertEquals(3, stats.getRemoves());
+		
+		collection.forEachFrontToBack(object -> { });
+		assertEquals(2, stats.getTraversals());
+		assertEquals(1, stats.getLastObjectsVisited());
+		assertEquals(5, stats.getObjectsVisited());
+		
+		stats.reset();
+		assertEquals(0, stats.getAdds());
+		assertEquals(0, stats.getTraversals());
+		assertEquals(0, stats.getObjectsVisited());
+	}
+}
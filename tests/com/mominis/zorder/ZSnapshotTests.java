@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012, MoMinis Ltd.
+ * All rights reserved.
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact MoMinis at opensource@mominis.com or visit www.mominis.com if
+ * you need additional information or have any questions.
+ */
+package com.mominis.zorder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author Itay Duvdevani (MoMinis Ltd.)
+ *
+ */
+public class ZSnapshotTests {
+	
+	private static final int MAX_Z = 10;
+	
+	private Random rand;
+	private SimpleZCollection underTest;
+	
+	@Before
+	public void setUp() throws Exception {
+		rand = new Random(System.nanoTime());
+		underTest = new SimpleZCollection(MAX_Z);
+	}
+	
+	@Test
+	public void emptyUntilPublished() throws Exception {
+		SimpleObject object = new SimpleObject("object");
+		object.setZOrder(rand.nextInt(MAX_Z + 1));
+		underTest.add(object);
+		
+		assertTrue(underTest.getSnapshot().isEmpty());
+		assertFalse(underTest.getSnapshot().backToFrontIterator().hasNext());
+		
+		ZSnapshot snapshot = underTest.publishSnapshot();
+		assertSame(snapshot, underTest.getSnapshot());
+		assertEquals(1, snapshot.size());
+		assertEquals(Collections.singletonList(object), visitBackToFront(snapshot));
+	}
+	
+	@Test
+	public void snapshotMatchesCollection() throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 200 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(rand.nextInt(MAX_Z + 1));
+			underTest.add(object);
+			objects.add(object);
+		}
+		
+		for (int frame = 0 ; frame < 20 ; ++frame) {
+			ZSnapshot snapshot = underTest.publishSnapshot();
+			
+			List<ZSortable> expected = new ArrayList<ZSortable>();
+			underTest.forEachBackToFront(expected::add);
+			assertEquals(expected.size(), snapshot.size());
+			assertEquals(expected, visitBackToFront(snapshot));
+			
+			List<ZSortable> visited = new ArrayList<ZSortable>();
+			Iterator<ZSortable> iter = snapshot.backToFrontIterator();
+			while (iter.hasNext()) {
+				visited.add(iter.next());
+			}
+			assertEquals(expected, visited);
+			
+			Collections.reverse(expected);
+			visited.clear();
+			snapshot.forEachFrontToBack(visited::add);
+			assertEquals(expected, visited);
+			
+			visited.clear();
+			iter = snapshot.frontToBackIterator();
+			while (iter.hasNext()) {
+				visited.add(iter.next());
+			}
+			assertEquals(expected, visited);
+			
+			// touch a few levels, removing and re-adding some objects
+			for (int i = 0 ; i < 5 ; ++i) {
+				SimpleObject object = objects.get(rand.nextInt(objects.size()));
+				object.setZOrder(rand.nextInt(MAX_Z + 1));
+				underTest.markDirty(object);
+			}
+			SimpleObject object = objects.get(rand.nextInt(objects.size()));
+			underTest.remove(object);
+			if (frame % 2 == 0) {
+				underTest.add(object);
+			}
+		}
+	}
+	
+	@Test
+	public void snapshotsAreImmutable() throws Exception {
+		SimpleObject object1 = new SimpleObject("object1");
+		SimpleObject object2 = new SimpleObject("object2");
+		object1.setZOrder(0);
+		object2.setZOrder(MAX_Z);
+		underTest.add(object1);
+		underTest.add(object2);
+		
+		ZSnapshot snapshot = underTest.publishSnapshot();
+		assertSame(snapshot, underTest.publishSnapshot());
+		
+		object1.setZOrder(MAX_Z);
+		underTest.change(object1);
+		underTest.remove(object2);
+		
+		assertEquals(2, snapshot.size());
+		List<ZSortable> visited = visitBackToFront(snapshot);
+		assertSame(object1, visited.get(0));
+		assertSame(object2, visited.get(1));
+		
+		ZSnapshot next = underTest.publishSnapshot();
+		assertNotSame(snapshot, next);
+		assertEquals(Collections.singletonList(object1), visitBackToFront(next));
+	}
+	
+	@Test
+	public void renderThreadTraversesWhileChanging() throws Exception {
+		List<SimpleObject> objects = new ArrayList<SimpleObject>();
+		for (int i = 0 ; i < 500 ; ++i) {
+			SimpleObject object = new SimpleObject("object" + i);
+			object.setZOrder(rand.nextInt(MAX_Z + 1));
+			underTest.add(object);
+			objects.add(object);
+		}
+		underTest.publishSnapshot();
+		
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread render = new Thread(() -> {
+			try {
+				while (!done.get()) {
+					// Z-orders keep changing, so only the number of objects is stable
+					ZSnapshot snapshot = underTest.getSnapshot();
+					int[] count = new int[1];
+					snapshot.forEachBackToFront(object -> ++count[0]);
+					assertEquals(500, count[0]);
+					assertEquals(500, snapshot.size());
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		render.start();
+		
+		try {
+			for (int frame = 0 ; frame < 2000 ; ++frame) {
+				for (int i = 0 ; i < 20 ; ++i) {
+					SimpleObject object = objects.get(rand.nextInt(objects.size()));
+					object.setZOrder(rand.nextInt(MAX_Z + 1));
+					underTest.change(object);
+				}
+				underTest.publishSnapshot();
+			}
+		} finally {
+			done.set(true);
+			render.join();
+		}
+		assertNull(failure.get());
+	}
+	
+	/* --- Private Methods --- */
+	
+	/**
+	 * @param snapshot Snapshot to visit
+	 * @return Objects of the snapshot, back-to-front
+	 */
+	private static List<ZSortable> visitBackToFront(ZSnapshot snapshot) {
+		List<ZSortable> visited = new ArrayList<ZSortable>();
+		snapshot.forEachBackToFront(visited::add);
+		return visited;
+	}
+}